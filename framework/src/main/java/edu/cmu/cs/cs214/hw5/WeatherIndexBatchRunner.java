@@ -0,0 +1,229 @@
+package edu.cmu.cs.cs214.hw5;
+
+import edu.cmu.cs.cs214.hw5.batch.BatchJob;
+import edu.cmu.cs.cs214.hw5.batch.OutputFormat;
+import edu.cmu.cs.cs214.hw5.core.DaemonThreadFactory;
+import edu.cmu.cs.cs214.hw5.core.DataPlugin;
+import edu.cmu.cs.cs214.hw5.core.InputEntry;
+import edu.cmu.cs.cs214.hw5.core.PipelineMetrics;
+import edu.cmu.cs.cs214.hw5.core.ProcessedWeatherData;
+import edu.cmu.cs.cs214.hw5.core.ProgressListener;
+import edu.cmu.cs.cs214.hw5.core.WeatherIndexFrameworkData;
+import edu.cmu.cs.cs214.hw5.core.WeatherIndexPipeline;
+import edu.cmu.cs.cs214.hw5.core.WeatherIndexProcessor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Main class to run the pipeline headless on a batch job (see BatchJob): loads data with a data plugin for every
+ * load of the job, generates the weather indices and writes the processed data of all cities to the output file,
+ * in the order of the loads. The final PipelineMetrics are printed at the end.
+ *
+ * No display plugin and no GUI class is loaded, and java.awt.headless is set, so AWT is never initialized. The
+ * exit status is 0 if all loads succeeded, 1 if any load failed and 2 if the job could not run.
+ */
+public class WeatherIndexBatchRunner {
+    private static final int EXIT_LOAD_FAILED = 1;
+    private static final int EXIT_INVALID_JOB = 2;
+    private static final long IDLE_THREAD_KEEP_ALIVE_SEC = 30;
+
+    /**
+     * Main function to run a batch job
+     * @param args path of the job spec
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if(args.length != 1) {
+            System.err.println("Usage: WeatherIndexBatchRunner JOB.properties");
+            System.exit(EXIT_INVALID_JOB);
+        }
+        int status;
+        try {
+            status = run(BatchJob.read(Paths.get(args[0])));
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            System.err.println("Fail to run batch job " + args[0] + ": " + e.getMessage());
+            status = EXIT_INVALID_JOB;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Run a batch job
+     * @param job job to run
+     * @return exit status, 0 if all loads succeeded, 1 if any load failed
+     * @throws IOException if the output can not be written
+     * @throws IllegalArgumentException if no data plugin has the name of the job
+     */
+    public static int run(BatchJob job) throws IOException {
+        DataPlugin prototype = findDataPlugin(job.getDataPluginName());
+        PipelineMetrics metrics = PipelineMetrics.shared();
+        WeatherIndexProcessor indexProcessor = new WeatherIndexProcessor(job.getParallelism());
+        ThreadPoolExecutor loadExecutor = loadExecutor(job.getLoadParallelism());
+        OutputFormat format = job.getFormat();
+        AtomicInteger cityCnt = new AtomicInteger();
+        int failedCnt = 0;
+        long start = System.nanoTime();
+        try {
+            List<Future<String>> loads = new ArrayList<>();
+            for(int i=0; i<job.getLoadCount(); i++) {
+                int load = i;
+                loads.add(loadExecutor.submit(() -> runLoad(job, load, prototype, indexProcessor, metrics, cityCnt)));
+            }
+
+            /* write to a temporary file, so a failed job does not leave a partial output; created like the output
+               itself would be (unlike Files.createTempFile, which makes it readable by the owner only) */
+            Path output = job.getOutput().toAbsolutePath();
+            Path tmp = output.resolveSibling(output.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                    writer.write(format.header());
+                    boolean first = true;
+                    for(Future<String> load: loads) {
+                        String rows = await(load);
+                        if(rows == null) {
+                            failedCnt++;
+                        } else if(!rows.isEmpty()) {
+                            writer.write(first ? rows : format.separator() + rows);
+                            first = false;
+                        }
+                    }
+                    writer.write(format.footer());
+                }
+                Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } finally {
+            loadExecutor.shutdownNow();
+            indexProcessor.shutdown();
+        }
+
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        System.out.printf("Processed %d cities of %d loads (%d failed) in %.1fs into %s%n", cityCnt.get(),
+            job.getLoadCount(), failedCnt, (System.nanoTime() - start) / 1e9, job.getOutput());
+        System.out.println(snapshot);
+        if(job.getMetricsOutput() != null) {
+            Files.write(job.getMetricsOutput(), (snapshot.toJson() + System.lineSeparator())
+                .getBytes(StandardCharsets.UTF_8));
+        }
+        return failedCnt == 0 ? 0 : EXIT_LOAD_FAILED;
+    }
+
+    /**
+     * Load and process one load of the job
+     * @return rows of the loaded cities in the output format, joined by its separator
+     */
+    private static String runLoad(BatchJob job, int load, DataPlugin prototype, WeatherIndexProcessor indexProcessor,
+                                  PipelineMetrics metrics, AtomicInteger cityCnt) {
+        /* each load has its own plugin instance, plugins keep their input entries */
+        DataPlugin dataPlugin = newInstance(prototype);
+        List<InputEntry> inputEntries = new ArrayList<>();
+        List<String> warnings = Collections.synchronizedList(new ArrayList<>());
+        dataPlugin.onRegister(new WeatherIndexFrameworkData() {
+            @Override
+            public void setDataInputEntries(List<InputEntry> dataInputEntries) {
+                inputEntries.clear();
+                inputEntries.addAll(dataInputEntries);
+            }
+
+            @Override
+            public List<InputEntry> getDataInputEntries() {
+                return inputEntries;
+            }
+
+            @Override
+            public PipelineMetrics getMetrics() {
+                return metrics;
+            }
+
+            @Override
+            public void reportWarning(String message) {
+                warnings.add(message);
+            }
+        });
+        inputEntries.clear();
+        inputEntries.addAll(dataPlugin.getInputEntries());
+        String description = job.setInputValues(load, inputEntries);
+        List<ProcessedWeatherData> processedData;
+        try {
+            processedData = WeatherIndexPipeline.loadAndProcess(dataPlugin, inputEntries, indexProcessor, metrics,
+                new ProgressListener() { });
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new IllegalStateException("Fail to load " + description + ": " + e.getMessage(), e);
+        }
+        for(String warning: warnings) {
+            System.err.println("Warning, " + description + ": " + warning);
+        }
+        cityCnt.addAndGet(processedData.size());
+        OutputFormat format = job.getFormat();
+        StringBuilder rows = new StringBuilder();
+        for(ProcessedWeatherData processedWeatherData: processedData) {
+            if(rows.length() > 0) {
+                rows.append(format.separator());
+            }
+            rows.append(format.row(processedWeatherData));
+        }
+        return rows.toString();
+    }
+
+    /**
+     * @return rows of a load, null if it failed
+     */
+    private static String await(Future<String> load) {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch job interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            System.err.println(cause.getMessage() == null ? cause.toString() : cause.getMessage());
+            return null;
+        }
+    }
+
+    private static DataPlugin findDataPlugin(String name) {
+        List<String> names = new ArrayList<>();
+        for(DataPlugin plugin: ServiceLoader.load(DataPlugin.class)) {
+            if(plugin.getName().equalsIgnoreCase(name) || plugin.getClass().getName().equals(name)) {
+                return plugin;
+            }
+            names.add(plugin.getName());
+        }
+        throw new IllegalArgumentException("No data plugin " + name + ", available plugins are " + names);
+    }
+
+    private static DataPlugin newInstance(DataPlugin prototype) {
+        try {
+            return prototype.getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Fail to create data plugin " + prototype.getName(), e);
+        }
+    }
+
+    private static ThreadPoolExecutor loadExecutor(int parallelism) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, IDLE_THREAD_KEEP_ALIVE_SEC,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory("batch-load"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,212 @@
+package edu.cmu.cs.cs214.hw5.batch;
+
+import edu.cmu.cs.cs214.hw5.core.InputEntry;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Spec of a batch job, read from a properties file:
+ * <pre>
+ * dataPlugin=NAME              name (or class name) of the data plugin, required
+ * input.N=VALUE                value of the N-th input entry of the plugin (from 0), for every load
+ * input.LABEL=VALUE            value of the input entry with the label (spaces escaped as "\ "), for every load
+ * inputs.file=PATH             optional file with one load per line: the comma separated values of the first
+ *                              input entries (other entries take their input.* value), "#" starts a comment
+ * inputs.separator=SEPARATOR   separator of the values in inputs.file, "," by default
+ * output=PATH                  file the processed data is written to, required
+ * format=csv|json              format of the output, by default json for a .json output and csv otherwise
+ * parallelism=N                threads generating indices, number of processors by default
+ * loadParallelism=N            loads running at the same time, parallelism by default
+ * metrics=PATH                 optional file the final PipelineMetrics snapshot is written to as json
+ * </pre>
+ * Paths are relative to the directory of the spec file. Without inputs.file the job makes a single load.
+ */
+public class BatchJob {
+    private static final String INPUT_PREFIX = "input.";
+
+    private final String dataPluginName;
+    private final Map<String, String> inputValues;
+    private final List<List<String>> loads;
+    private final Path output;
+    private final OutputFormat format;
+    private final int parallelism;
+    private final int loadParallelism;
+    private final Path metricsOutput;
+
+    private BatchJob(Properties spec, Path baseDir) throws IOException {
+        dataPluginName = required(spec, "dataPlugin");
+        inputValues = new HashMap<>();
+        for(String key: spec.stringPropertyNames()) {
+            if(key.startsWith(INPUT_PREFIX)) {
+                inputValues.put(key.substring(INPUT_PREFIX.length()).toLowerCase(Locale.ROOT), spec.getProperty(key));
+            }
+        }
+        String inputsFile = spec.getProperty("inputs.file");
+        if(inputsFile == null) {
+            loads = Collections.singletonList(Collections.emptyList());
+        } else {
+            loads = readLoads(baseDir.resolve(inputsFile.trim()), spec.getProperty("inputs.separator", ","));
+        }
+        output = baseDir.resolve(required(spec, "output"));
+        String formatName = spec.getProperty("format");
+        format = formatName == null ? OutputFormat.byFileName(output.getFileName().toString())
+            : OutputFormat.byName(formatName.trim());
+        parallelism = positive(spec, "parallelism", Runtime.getRuntime().availableProcessors());
+        loadParallelism = positive(spec, "loadParallelism", parallelism);
+        String metrics = spec.getProperty("metrics");
+        metricsOutput = metrics == null ? null : baseDir.resolve(metrics.trim());
+    }
+
+    /**
+     * Read a job spec
+     *
+     * @param path path of the properties file
+     * @return the job
+     * @throws IOException if the spec or its inputs file can not be read
+     * @throws IllegalArgumentException if a required property is missing or a property is invalid
+     */
+    public static BatchJob read(Path path) throws IOException {
+        Properties spec = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            spec.load(reader);
+        }
+        Path baseDir = path.toAbsolutePath().getParent();
+        return new BatchJob(spec, baseDir);
+    }
+
+    /**
+     * @return name (or class name) of the data plugin
+     */
+    public String getDataPluginName() {
+        return dataPluginName;
+    }
+
+    /**
+     * @return number of loads of the job
+     */
+    public int getLoadCount() {
+        return loads.size();
+    }
+
+    /**
+     * Set the values of the input entries of a load
+     *
+     * @param load index of the load
+     * @param inputEntries input entries of a data plugin
+     * @return description of the load values, for error messages
+     * @throws IllegalArgumentException if the load has more values than the plugin has input entries
+     */
+    public String setInputValues(int load, List<InputEntry> inputEntries) {
+        List<String> values = loads.get(load);
+        if(values.size() > inputEntries.size()) {
+            throw new IllegalArgumentException("Load " + values + " has more values than the "
+                + inputEntries.size() + " input entries of the plugin");
+        }
+        List<String> description = new ArrayList<>();
+        for(int i=0; i<inputEntries.size(); i++) {
+            InputEntry inputEntry = inputEntries.get(i);
+            String value;
+            if(i < values.size()) {
+                value = values.get(i);
+            } else {
+                value = inputValues.get(Integer.toString(i));
+                if(value == null) {
+                    value = inputValues.get(inputEntry.getLabel().toLowerCase(Locale.ROOT));
+                }
+            }
+            inputEntry.setValue(value);
+            description.add(inputEntry.getLabel() + "=" + value);
+        }
+        return String.join(", ", description);
+    }
+
+    /**
+     * @return file the processed data is written to
+     */
+    public Path getOutput() {
+        return output;
+    }
+
+    /**
+     * @return format of the output
+     */
+    public OutputFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return number of threads generating indices
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return number of loads running at the same time
+     */
+    public int getLoadParallelism() {
+        return loadParallelism;
+    }
+
+    /**
+     * @return file the final metrics are written to, null if they are not written
+     */
+    public Path getMetricsOutput() {
+        return metricsOutput;
+    }
+
+    private static List<List<String>> readLoads(Path path, String separator) throws IOException {
+        List<List<String>> loads = new ArrayList<>();
+        for(String line: Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if(trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            List<String> values = new ArrayList<>();
+            for(String value: trimmed.split(Pattern.quote(separator), -1)) {
+                values.add(value.trim());
+            }
+            loads.add(values);
+        }
+        if(loads.isEmpty()) {
+            throw new IllegalArgumentException("No load in " + path);
+        }
+        return loads;
+    }
+
+    private static String required(Properties spec, String key) {
+        String value = spec.getProperty(key);
+        if(value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing property " + key);
+        }
+        return value.trim();
+    }
+
+    private static int positive(Properties spec, String key, int defaultValue) {
+        String value = spec.getProperty(key);
+        if(value == null) {
+            return defaultValue;
+        }
+        try {
+            int n = Integer.parseInt(value.trim());
+            if(n >= 1) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            /* reported below */
+        }
+        throw new IllegalArgumentException("Invalid " + key + " " + value);
+    }
+}
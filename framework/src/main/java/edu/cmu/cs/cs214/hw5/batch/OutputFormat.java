@@ -0,0 +1,151 @@
+package edu.cmu.cs.cs214.hw5.batch;
+
+import edu.cmu.cs.cs214.hw5.core.CityInfo;
+import edu.cmu.cs.cs214.hw5.core.JsonStrings;
+import edu.cmu.cs.cs214.hw5.core.ProcessedWeatherData;
+import edu.cmu.cs.cs214.hw5.core.WeatherIndexType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Formats of the output of a batch job. Each city is written as one row (csv) or object (json) with its city
+ * info, number of records and weather indices; an index that could not be generated is left empty (csv) or null
+ * (json).
+ */
+public enum OutputFormat {
+    CSV {
+        @Override
+        public String header() {
+            List<String> columns = new ArrayList<>(List.of("City", "State", "Latitude", "Longitude", "Records"));
+            for(WeatherIndexType indexType: INDEX_TYPES) {
+                columns.add(indexType.getDescription());
+            }
+            return String.join(",", columns) + System.lineSeparator();
+        }
+
+        @Override
+        public String row(ProcessedWeatherData processedWeatherData) {
+            CityInfo cityInfo = processedWeatherData.getRawWeatherData().getCityInfo();
+            List<String> fields = new ArrayList<>();
+            fields.add(quoteCsv(cityInfo.getCityName()));
+            fields.add(quoteCsv(cityInfo.getStateFullName()));
+            fields.add(Double.toString(cityInfo.getLatitude()));
+            fields.add(Double.toString(cityInfo.getLongitude()));
+            fields.add(Integer.toString(processedWeatherData.getRawWeatherData().getRecordCount()));
+            Map<WeatherIndexType, Double> indices = processedWeatherData.getWeatherIndexMap();
+            for(WeatherIndexType indexType: INDEX_TYPES) {
+                Double value = indices == null ? null : indices.get(indexType);
+                fields.add(value == null || value.isNaN() || value.isInfinite() ? "" : value.toString());
+            }
+            return String.join(",", fields) + System.lineSeparator();
+        }
+
+        @Override
+        public String separator() {
+            return "";
+        }
+
+        @Override
+        public String footer() {
+            return "";
+        }
+    },
+    JSON {
+        @Override
+        public String header() {
+            return "[" + System.lineSeparator();
+        }
+
+        @Override
+        public String row(ProcessedWeatherData processedWeatherData) {
+            CityInfo cityInfo = processedWeatherData.getRawWeatherData().getCityInfo();
+            StringBuilder sb = new StringBuilder("{\"city\":").append(JsonStrings.quote(cityInfo.getCityName()))
+                .append(",\"state\":").append(JsonStrings.quote(cityInfo.getStateFullName()))
+                .append(",\"latitude\":").append(jsonNumber(cityInfo.getLatitude()))
+                .append(",\"longitude\":").append(jsonNumber(cityInfo.getLongitude()))
+                .append(",\"records\":").append(processedWeatherData.getRawWeatherData().getRecordCount())
+                .append(",\"indices\":{");
+            Map<WeatherIndexType, Double> indices = processedWeatherData.getWeatherIndexMap();
+            String separator = "";
+            for(WeatherIndexType indexType: INDEX_TYPES) {
+                Double value = indices == null ? null : indices.get(indexType);
+                sb.append(separator).append(JsonStrings.quote(indexType.getDescription())).append(':')
+                    .append(value == null ? "null" : jsonNumber(value));
+                separator = ",";
+            }
+            return sb.append("}}").toString();
+        }
+
+        @Override
+        public String separator() {
+            return "," + System.lineSeparator();
+        }
+
+        @Override
+        public String footer() {
+            return System.lineSeparator() + "]" + System.lineSeparator();
+        }
+    };
+
+    private static final WeatherIndexType[] INDEX_TYPES = WeatherIndexType.values();
+
+    /**
+     * @return text written before the first row
+     */
+    public abstract String header();
+
+    /**
+     * @param processedWeatherData processed data of a city
+     * @return row of the city
+     */
+    public abstract String row(ProcessedWeatherData processedWeatherData);
+
+    /**
+     * @return text written between two rows
+     */
+    public abstract String separator();
+
+    /**
+     * @return text written after the last row
+     */
+    public abstract String footer();
+
+    /**
+     * @param name name of the format, case insensitive
+     * @return the format
+     * @throws IllegalArgumentException if there is no format of the name
+     */
+    public static OutputFormat byName(String name) {
+        for(OutputFormat format: values()) {
+            if(format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Invalid output format " + name);
+    }
+
+    /**
+     * @param fileName name of the output file
+     * @return JSON for a .json file, CSV otherwise
+     */
+    public static OutputFormat byFileName(String fileName) {
+        return fileName.toLowerCase(Locale.ROOT).endsWith(".json") ? JSON : CSV;
+    }
+
+    private static String quoteCsv(String value) {
+        if(value == null) {
+            return "";
+        }
+        if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String jsonNumber(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+    }
+}
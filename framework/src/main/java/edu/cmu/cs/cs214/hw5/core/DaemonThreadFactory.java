@@ -0,0 +1,33 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory of the pools of the framework and plugins: its threads are daemon threads, so an idle pool does
+ * not keep the JVM alive, and are named NAME-N with N counting the threads of the factory from 1.
+ */
+public final class DaemonThreadFactory implements ThreadFactory {
+    private final String name;
+    private final AtomicInteger threadCnt = new AtomicInteger();
+
+    /**
+     * Constructor
+     *
+     * @param name name of the threads, followed by their number
+     */
+    public DaemonThreadFactory(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param runnable task of the thread
+     * @return a new daemon thread
+     */
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, name + "-" + threadCnt.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -2,9 +2,11 @@ package edu.cmu.cs.cs214.hw5.core;
 
 import javax.swing.JPanel;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
- * display plugin interface
+ * display plugin interface. The framework calls generateGraph and readData on the event dispatch thread, and
+ * prepareGraph on a background thread.
  */
 public interface DisplayPlugin {
     /**
@@ -24,6 +26,22 @@ public interface DisplayPlugin {
     JPanel generateGraph(List<InputEntry> inputEntries,
                          List<ProcessedWeatherData> data) throws IllegalArgumentException, IllegalStateException;
 
+    /**
+     * Prepare the graph of generateGraph off the event dispatch thread: the work that creates no Swing component
+     * (e.g. building the chart) is done here, and the returned supplier creates the panel on the event dispatch
+     * thread. By default all the work is left to generateGraph.
+     *
+     * @param inputEntries list of input entries that is specified by getInputEntries with the user input being set.
+     * @param data         list of processed data used by this plugin
+     * @return supplier of the panel to be displayed on the GUI, called on the event dispatch thread
+     * @throws IllegalArgumentException if any user input is invalid
+     * @throws IllegalStateException    if any internal error happens during loading data
+     */
+    default Supplier<JPanel> prepareGraph(List<InputEntry> inputEntries, List<ProcessedWeatherData> data)
+        throws IllegalArgumentException, IllegalStateException {
+        return () -> generateGraph(inputEntries, data);
+    }
+
     /**
      * Gives information to plugin of the framework
      *
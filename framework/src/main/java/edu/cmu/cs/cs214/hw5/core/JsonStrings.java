@@ -0,0 +1,31 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+/**
+ * Quoting of strings in the json written by the framework (metrics snapshots, batch job output)
+ */
+public final class JsonStrings {
+    private JsonStrings() {
+    }
+
+    /**
+     * @param value string, may be null
+     * @return the string as a json string literal, with quotes, backslashes and control characters escaped, or
+     *         null if it is null
+     */
+    public static String quote(String value) {
+        if(value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for(char c: value.toCharArray()) {
+            if(c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if(c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,194 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets (in the style of HdrHistogram): values below
+ * 2^(SUB_BUCKET_BITS+1) have a bucket each, larger values share a bucket with values that have the same highest
+ * SUB_BUCKET_BITS+1 bits, so percentiles are within 1/2^SUB_BUCKET_BITS (about 3%) of the recorded values.
+ *
+ * Recording is lock free and allocation free, the sum is a striped counter and values of different buckets are
+ * counted in different slots, so recording threads rarely contend on a single field. Reads (see snapshot) may miss
+ * values recorded at the same time.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /* values below this have a bucket each */
+    private static final int LINEAR_BUCKETS = SUB_BUCKETS << 1;
+    private static final int LINEAR_BITS = SUB_BUCKET_BITS + 1;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (Long.SIZE - 1 - LINEAR_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record a latency
+     *
+     * @param nanos latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucketOf(value));
+        sum.add(value);
+        min.accumulate(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * @return copy of the recorded latencies
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for(int i=0; i<BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(counts, total, sum.sum(), total == 0 ? 0 : min.get(), max.get());
+    }
+
+    /**
+     * Clear the recorded latencies
+     */
+    public void reset() {
+        for(int i=0; i<BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        sum.reset();
+        min.reset();
+        max.reset();
+    }
+
+    private static int bucketOf(long value) {
+        if(value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return smallest value of a bucket
+     */
+    private static long lowestValueOf(int bucket) {
+        if(bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_BITS;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @return number of values in a bucket
+     */
+    private static long widthOf(int bucket) {
+        if(bucket < LINEAR_BUCKETS) {
+            return 1;
+        }
+        return 1L << ((bucket - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_BITS - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Immutable copy of the latencies recorded by a histogram
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * @return number of recorded latencies
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return sum of the recorded latencies in nanoseconds
+         */
+        public long getTotalNanos() {
+            return sum;
+        }
+
+        /**
+         * @return smallest recorded latency in nanoseconds, 0 if none is recorded
+         */
+        public long getMinNanos() {
+            return min;
+        }
+
+        /**
+         * @return largest recorded latency in nanoseconds, 0 if none is recorded
+         */
+        public long getMaxNanos() {
+            return max;
+        }
+
+        /**
+         * @return mean of the recorded latencies in nanoseconds, 0 if none is recorded
+         */
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile percentile, between 0 and 100
+         * @return latency in nanoseconds below or at which the percentile of the recorded latencies are, within the
+         * precision of the histogram, 0 if none is recorded
+         * @throws IllegalArgumentException if percentile is not between 0 and 100
+         */
+        public long getPercentileNanos(double percentile) {
+            if(!(percentile >= 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("Invalid percentile " + percentile);
+            }
+            if(count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for(int i=0; i<counts.length; i++) {
+                seen += counts[i];
+                if(seen >= rank) {
+                    /* middle of the bucket, within the recorded range */
+                    long value = lowestValueOf(i) + (widthOf(i) - 1) / 2;
+                    return Math.max(min, Math.min(value, max));
+                }
+            }
+            return max;
+        }
+
+        /**
+         * @param percentile percentile, between 0 and 100
+         * @return latency in milliseconds below or at which the percentile of the recorded latencies are
+         * @throws IllegalArgumentException if percentile is not between 0 and 100
+         */
+        public double getPercentileMillis(double percentile) {
+            return getPercentileNanos(percentile) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms", count,
+                getMeanNanos() / TimeUnit.MILLISECONDS.toNanos(1), getPercentileMillis(50), getPercentileMillis(90),
+                getPercentileMillis(99), max / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+}
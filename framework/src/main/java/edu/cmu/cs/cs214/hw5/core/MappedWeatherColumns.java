@@ -0,0 +1,107 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.OffsetDateTime;
+
+/**
+ * Read-only storage backed by the columns of a memory mapped weather data file (see WeatherDataFile). Reads go
+ * straight to the mapped pages, so the records are never copied onto the heap.
+ *
+ * The mapping stays valid after the file is replaced or deleted, but not if the file is truncated in place.
+ */
+class MappedWeatherColumns extends WeatherStorage {
+    private static final String READ_ONLY_ERR_MSG = "Weather data backed by a mapped file is read-only";
+    private static final WeatherMetric[] METRICS = WeatherMetric.values();
+
+    private final int size;
+    private final LongBuffer epochSeconds;
+    private final IntBuffer offsetSeconds;
+    /* indexed by metric ordinal, null if the metric is not stored */
+    private final DoubleBuffer[] metricValues;
+    /* null if weather state is not stored */
+    private final ByteBuffer stateOrdinals;
+
+    /**
+     * Constructor
+     *
+     * @param mapped content of the file
+     * @param layout validated layout of the file
+     */
+    MappedWeatherColumns(ByteBuffer mapped, WeatherDataFile.Layout layout) {
+        size = layout.count;
+        epochSeconds = section(mapped, layout.epochOffset, size * 8L).asLongBuffer();
+        offsetSeconds = section(mapped, layout.offsetOffset, size * 4L).asIntBuffer();
+        metricValues = new DoubleBuffer[METRICS.length];
+        for(WeatherMetric metric: METRICS) {
+            long offset = layout.metricOffsets[metric.ordinal()];
+            if(offset >= 0) {
+                metricValues[metric.ordinal()] = section(mapped, offset, size * 8L).asDoubleBuffer();
+            }
+        }
+        stateOrdinals = layout.stateOffset >= 0 ? section(mapped, layout.stateOffset, size) : null;
+    }
+
+    private static ByteBuffer section(ByteBuffer mapped, long offset, long length) {
+        ByteBuffer buf = mapped.duplicate();
+        buf.position((int) offset);
+        buf.limit((int) (offset + length));
+        return buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    WeatherStorage copy() {
+        return this;
+    }
+
+    @Override
+    void put(OffsetDateTime dateTime, WeatherRecord weatherRecord) {
+        throw new IllegalStateException(READ_ONLY_ERR_MSG);
+    }
+
+    @Override
+    void put(long epochSecond, int offset, double[] values, WeatherState weatherState) {
+        throw new IllegalStateException(READ_ONLY_ERR_MSG);
+    }
+
+    @Override
+    void putAll(WeatherStorage storage) {
+        throw new IllegalStateException(READ_ONLY_ERR_MSG);
+    }
+
+    /* duplicates, since callers may move the position of the buffers */
+
+    @Override
+    LongBuffer epochSecondColumn() {
+        return epochSeconds.duplicate();
+    }
+
+    @Override
+    IntBuffer offsetColumn() {
+        return offsetSeconds.duplicate();
+    }
+
+    @Override
+    DoubleBuffer metricColumn(WeatherMetric metric) {
+        DoubleBuffer values = metricValues[metric.ordinal()];
+        return values == null ? null : values.duplicate();
+    }
+
+    @Override
+    ByteBuffer stateColumn() {
+        return stateOrdinals == null ? null : stateOrdinals.duplicate();
+    }
+}
@@ -0,0 +1,77 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * Read-only view of the values of a numeric weather metric of a city
+ */
+public class MetricSeries extends WeatherSeries {
+    private final WeatherMetric weatherMetric;
+    /* null if the metric is not stored, all values are 0 in that case */
+    private final DoubleBuffer values;
+
+    /**
+     * Constructor
+     *
+     * @param weatherMetric numeric weather metric
+     * @param epochSeconds time column (epoch seconds)
+     * @param offsetSeconds zone offset column (seconds)
+     * @param values value column, null if the metric is not stored
+     * @param size number of records in the view
+     */
+    MetricSeries(WeatherMetric weatherMetric, LongBuffer epochSeconds, IntBuffer offsetSeconds, DoubleBuffer values,
+                 int size) {
+        super(epochSeconds, offsetSeconds, size);
+        this.weatherMetric = weatherMetric;
+        this.values = values;
+    }
+
+    /**
+     * @return weather metric of this series
+     */
+    public WeatherMetric getWeatherMetric() {
+        return weatherMetric;
+    }
+
+    /**
+     * Get the value of a record
+     *
+     * @param index index of the record
+     * @return value of the metric
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public double getValue(int index) {
+        Objects.checkIndex(index, size());
+        return values == null ? 0 : values.get(index);
+    }
+
+    /**
+     * @return values of the series in time order
+     */
+    public DoubleStream values() {
+        if(values == null) {
+            return DoubleStream.generate(() -> 0).limit(size());
+        }
+        if(values.hasArray()) {
+            return Arrays.stream(values.array(), values.arrayOffset(), values.arrayOffset() + size());
+        }
+        return IntStream.range(0, size()).mapToDouble(values::get);
+    }
+
+    /**
+     * @return string info of the series
+     */
+    @Override
+    public String toString() {
+        return "MetricSeries{" +
+            "weatherMetric=" + weatherMetric +
+            ", size=" + size() +
+            '}';
+    }
+}
@@ -0,0 +1,139 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.List;
+
+/**
+ * Java Flight Recorder events of the plugin calls of the framework pipeline, so latency in a recording can be
+ * related to a plugin and the size of its data. The events are enabled in a recording by default, e.g. with
+ * -XX:StartFlightRecording, and cost one object per call when no recording is running.
+ */
+public final class PipelineEvents {
+    private static final String CATEGORY = "Weather Index";
+
+    private PipelineEvents() {
+    }
+
+    /**
+     * Call of a plugin with the cities and records it handled
+     */
+    @Category({CATEGORY, "Pipeline"})
+    @StackTrace(false)
+    abstract static class PluginEvent extends Event {
+        @Label("Plugin")
+        @Description("Name of the plugin")
+        String plugin;
+
+        @Label("Cities")
+        @Description("Number of cities handled")
+        int cities;
+
+        @Label("Records")
+        @Description("Number of weather records handled")
+        long records;
+
+        @Label("Failed")
+        @Description("Whether the call threw")
+        boolean failed;
+
+        /**
+         * Set the fields and commit the event if the recording keeps it. Must be called after end.
+         *
+         * @param pluginName name of the plugin
+         * @param cityCount number of cities
+         * @param recordCount number of weather records
+         * @param isFailed whether the call threw
+         */
+        void commit(String pluginName, int cityCount, long recordCount, boolean isFailed) {
+            if(shouldCommit()) {
+                plugin = pluginName;
+                cities = cityCount;
+                records = recordCount;
+                failed = isFailed;
+                commit();
+            }
+        }
+
+        /**
+         * Commit the event with the size of raw data, counting its records only if the recording keeps it.
+         *
+         * @param pluginName name of the plugin
+         * @param data data handled by the call, null if the call threw
+         */
+        void commitRaw(String pluginName, List<RawWeatherData> data) {
+            if(shouldCommit()) {
+                long recordCnt = 0;
+                if(data != null) {
+                    for(RawWeatherData rawWeatherData: data) {
+                        recordCnt += rawWeatherData.getRecordCount();
+                    }
+                }
+                commit(pluginName, data == null ? 0 : data.size(), recordCnt, data == null);
+            }
+        }
+
+        /**
+         * Commit the event with the size of processed data, counting its records only if the recording keeps it.
+         *
+         * @param pluginName name of the plugin
+         * @param data data handled by the call
+         * @param isFailed whether the call threw
+         */
+        void commitProcessed(String pluginName, List<ProcessedWeatherData> data, boolean isFailed) {
+            if(shouldCommit()) {
+                long recordCnt = 0;
+                if(data != null) {
+                    for(ProcessedWeatherData processedWeatherData: data) {
+                        recordCnt += processedWeatherData.getRawWeatherData().getRecordCount();
+                    }
+                }
+                commit(pluginName, data == null ? 0 : data.size(), recordCnt, isFailed);
+            }
+        }
+    }
+
+    /**
+     * DataPlugin.loadData call
+     */
+    @Name("edu.cmu.cs.cs214.hw5.LoadData")
+    @Label("Load Data")
+    @Description("Data plugin loading the data of its input")
+    static class LoadData extends PluginEvent {
+    }
+
+    /**
+     * WeatherIndexGenerator construction and index generation of a city
+     */
+    @Name("edu.cmu.cs.cs214.hw5.GenerateIndex")
+    @Label("Generate Index")
+    @Description("Weather index generation of one city")
+    static class GenerateIndex extends PluginEvent {
+        @Label("City")
+        @Description("Name of the city")
+        String city;
+    }
+
+    /**
+     * DisplayPlugin.readData call
+     */
+    @Name("edu.cmu.cs.cs214.hw5.ReadData")
+    @Label("Read Data")
+    @Description("Display plugin reading the processed data")
+    static class ReadData extends PluginEvent {
+    }
+
+    /**
+     * DisplayPlugin.generateGraph call
+     */
+    @Name("edu.cmu.cs.cs214.hw5.GenerateGraph")
+    @Label("Generate Graph")
+    @Description("Display plugin generating its graph")
+    static class GenerateGraph extends PluginEvent {
+    }
+}
@@ -0,0 +1,365 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Metrics of the stages of the framework pipeline (loading data, generating indices, reading data into the display
+ * plugin and generating the graph): latency histogram, records and errors of each stage, errors of each plugin and
+ * bytes ingested from each data source. Counters are striped (LongAdder) and latencies are recorded in
+ * LatencyHistogram, so recording is cheap enough for every call.
+ *
+ * The metrics can be read with snapshot, or dumped periodically with startReporting. The shared metrics are dumped
+ * every N seconds with -Dmetrics.reportSec=N, as a log line on the standard output, or as a json line appended to
+ * the file set with -Dmetrics.file=PATH.
+ */
+public class PipelineMetrics {
+    private static final PipelineMetrics SHARED = new PipelineMetrics();
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<Stage, StageMetrics> stages = new EnumMap<>(Stage.class);
+    private final Map<String, LongAdder> pluginErrors = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> bytesIngested = new ConcurrentHashMap<>();
+    private ScheduledExecutorService reporter;
+
+    static {
+        long reportSec = Long.getLong("metrics.reportSec", 0);
+        if(reportSec > 0) {
+            String file = System.getProperty("metrics.file");
+            SHARED.startReporting(Duration.ofSeconds(reportSec),
+                file == null ? System.out::println : jsonAppender(Paths.get(file)));
+        }
+    }
+
+    /**
+     * Stages of the framework pipeline
+     */
+    public enum Stage {
+        LOAD_DATA("loadData"),
+        GENERATE_INDEX("generateIndex"),
+        READ_DATA("readData"),
+        GENERATE_GRAPH("generateGraph");
+
+        private final String name;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return name of the stage in reports
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Constructor
+     */
+    public PipelineMetrics() {
+        for(Stage stage: Stage.values()) {
+            stages.put(stage, new StageMetrics());
+        }
+    }
+
+    /**
+     * @return metrics shared by all frameworks and plugins of the process
+     */
+    public static PipelineMetrics shared() {
+        return SHARED;
+    }
+
+    /**
+     * Record a completed run of a stage
+     *
+     * @param stage stage that ran
+     * @param nanos duration of the run in nanoseconds
+     * @param records number of weather records handled by the run
+     */
+    public void recordStage(Stage stage, long nanos, long records) {
+        StageMetrics stageMetrics = stages.get(stage);
+        stageMetrics.latency.record(nanos);
+        stageMetrics.records.add(records);
+    }
+
+    /**
+     * Record a failed run of a stage
+     *
+     * @param stage stage that failed
+     * @param plugin name of the plugin that failed
+     */
+    public void recordError(Stage stage, String plugin) {
+        stages.get(stage).errors.increment();
+        pluginErrors.computeIfAbsent(String.valueOf(plugin), name -> new LongAdder()).increment();
+    }
+
+    /**
+     * Record bytes read from a data source (e.g. a csv file or a web API)
+     *
+     * @param source name of the data source
+     * @param bytes number of bytes read
+     */
+    public void recordBytesIngested(String source, long bytes) {
+        bytesIngested.computeIfAbsent(source, name -> new LongAdder()).add(bytes);
+    }
+
+    /**
+     * @return copy of the current metrics
+     */
+    public Snapshot snapshot() {
+        Map<Stage, StageSnapshot> stageSnapshots = new EnumMap<>(Stage.class);
+        for(Map.Entry<Stage, StageMetrics> entry: stages.entrySet()) {
+            StageMetrics stageMetrics = entry.getValue();
+            stageSnapshots.put(entry.getKey(), new StageSnapshot(stageMetrics.latency.snapshot(),
+                stageMetrics.records.sum(), stageMetrics.errors.sum()));
+        }
+        return new Snapshot(Instant.now(), stageSnapshots, sums(pluginErrors), sums(bytesIngested));
+    }
+
+    /**
+     * Clear all metrics
+     */
+    public void reset() {
+        for(StageMetrics stageMetrics: stages.values()) {
+            stageMetrics.latency.reset();
+            stageMetrics.records.reset();
+            stageMetrics.errors.reset();
+        }
+        pluginErrors.clear();
+        bytesIngested.clear();
+    }
+
+    /**
+     * Periodically pass a snapshot of the metrics to a sink, from a daemon thread
+     *
+     * @param period time between two snapshots
+     * @param sink receives the snapshots (e.g. System.out::println, or a json writer)
+     * @throws IllegalArgumentException if period is not positive
+     * @throws IllegalStateException if the metrics are already reported
+     */
+    public synchronized void startReporting(Duration period, Consumer<Snapshot> sink) {
+        if(period.isZero() || period.isNegative()) {
+            throw new IllegalArgumentException("Invalid report period " + period);
+        }
+        if(reporter != null) {
+            throw new IllegalStateException("Metrics are already reported");
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("pipeline-metrics-reporter"));
+        reporter.scheduleAtFixedRate(() -> sink.accept(snapshot()), period.toMillis(), period.toMillis(),
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop reporting the metrics, does nothing if they are not reported
+     */
+    public synchronized void stopReporting() {
+        if(reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * @param path file to append the snapshots to
+     * @return sink appending every snapshot as a json line to the file
+     */
+    public static Consumer<Snapshot> jsonAppender(Path path) {
+        return snapshot -> {
+            try {
+                Files.write(path, (snapshot.toJson() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Fail to write metrics to " + path + ": " + e.getMessage());
+            }
+        };
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> adders) {
+        Map<String, Long> sums = new TreeMap<>();
+        for(Map.Entry<String, LongAdder> entry: adders.entrySet()) {
+            sums.put(entry.getKey(), entry.getValue().sum());
+        }
+        return Collections.unmodifiableMap(sums);
+    }
+
+    /**
+     * Live metrics of a stage
+     */
+    private static class StageMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder records = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * Metrics of a stage at the time of a snapshot
+     */
+    public static class StageSnapshot {
+        private final LatencyHistogram.Snapshot latency;
+        private final long records;
+        private final long errors;
+
+        private StageSnapshot(LatencyHistogram.Snapshot latency, long records, long errors) {
+            this.latency = latency;
+            this.records = records;
+            this.errors = errors;
+        }
+
+        /**
+         * @return latencies of the completed runs
+         */
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return number of weather records handled by the completed runs
+         */
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * @return weather records handled per second while the stage ran, 0 if it did not run
+         */
+        public double getRecordsPerSecond() {
+            long nanos = latency.getTotalNanos();
+            return nanos == 0 ? 0 : records * NANOS_PER_SECOND / nanos;
+        }
+
+        /**
+         * @return number of failed runs
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        private String toJson() {
+            return String.format(Locale.ROOT, "{\"count\":%d,\"errors\":%d,\"records\":%d,\"recordsPerSecond\":%.1f,"
+                    + "\"meanMs\":%.3f,\"p50Ms\":%.3f,\"p90Ms\":%.3f,\"p99Ms\":%.3f,\"maxMs\":%.3f}",
+                latency.getCount(), errors, records, getRecordsPerSecond(), latency.getMeanNanos() / 1e6,
+                latency.getPercentileMillis(50), latency.getPercentileMillis(90), latency.getPercentileMillis(99),
+                latency.getMaxNanos() / 1e6);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s errors=%d records=%d (%.0f/s)", latency, errors, records, getRecordsPerSecond());
+        }
+    }
+
+    /**
+     * Metrics of the pipeline at a point of time
+     */
+    public static class Snapshot {
+        private final Instant timestamp;
+        private final Map<Stage, StageSnapshot> stages;
+        private final Map<String, Long> pluginErrors;
+        private final Map<String, Long> bytesIngested;
+
+        private Snapshot(Instant timestamp, Map<Stage, StageSnapshot> stages, Map<String, Long> pluginErrors,
+                         Map<String, Long> bytesIngested) {
+            this.timestamp = timestamp;
+            this.stages = stages;
+            this.pluginErrors = pluginErrors;
+            this.bytesIngested = bytesIngested;
+        }
+
+        /**
+         * @return time of the snapshot
+         */
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @param stage stage of the pipeline
+         * @return metrics of the stage
+         */
+        public StageSnapshot getStage(Stage stage) {
+            return stages.get(stage);
+        }
+
+        /**
+         * @return number of errors of each plugin name, sorted by name
+         */
+        public Map<String, Long> getPluginErrors() {
+            return pluginErrors;
+        }
+
+        /**
+         * @return bytes ingested from each data source, sorted by name
+         */
+        public Map<String, Long> getBytesIngested() {
+            return bytesIngested;
+        }
+
+        /**
+         * @return bytes ingested from all data sources
+         */
+        public long getTotalBytesIngested() {
+            long total = 0;
+            for(long bytes: bytesIngested.values()) {
+                total += bytes;
+            }
+            return total;
+        }
+
+        /**
+         * @return the snapshot as a single line json object
+         */
+        public String toJson() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"timestamp\":").append(JsonStrings.quote(timestamp.toString())).append(",\"stages\":{");
+            String separator = "";
+            for(Map.Entry<Stage, StageSnapshot> entry: stages.entrySet()) {
+                sb.append(separator).append(JsonStrings.quote(entry.getKey().getName())).append(':')
+                    .append(entry.getValue().toJson());
+                separator = ",";
+            }
+            sb.append("},\"pluginErrors\":").append(toJson(pluginErrors));
+            sb.append(",\"bytesIngested\":").append(toJson(bytesIngested));
+            return sb.append('}').toString();
+        }
+
+        private static String toJson(Map<String, Long> values) {
+            StringBuilder sb = new StringBuilder("{");
+            String separator = "";
+            for(Map.Entry<String, Long> entry: values.entrySet()) {
+                sb.append(separator).append(JsonStrings.quote(entry.getKey())).append(':').append(entry.getValue());
+                separator = ",";
+            }
+            return sb.append('}').toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Pipeline metrics at ").append(timestamp);
+            for(Map.Entry<Stage, StageSnapshot> entry: stages.entrySet()) {
+                sb.append(System.lineSeparator()).append("  ").append(entry.getKey().getName()).append(": ")
+                    .append(entry.getValue());
+            }
+            sb.append(System.lineSeparator()).append("  plugin errors: ").append(pluginErrors);
+            sb.append(System.lineSeparator()).append("  bytes ingested: ").append(bytesIngested);
+            return sb.toString();
+        }
+    }
+}
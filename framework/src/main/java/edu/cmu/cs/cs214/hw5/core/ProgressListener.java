@@ -0,0 +1,30 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+/**
+ * Observer interface for the framework to report the progress of loading and processing data.
+ * Methods may be called from background threads.
+ */
+public interface ProgressListener {
+    /**
+     * Called when the data plugin finished loading data.
+     * @param cityCount number of cities loaded.
+     * @param recordCount total number of records loaded.
+     */
+    default void onDataLoaded(int cityCount, long recordCount) {
+    }
+
+    /**
+     * Called each time the weather indices of a city are generated.
+     * @param processedCount number of cities processed so far.
+     * @param cityCount total number of cities.
+     */
+    default void onCityProcessed(int processedCount, int cityCount) {
+    }
+
+    /**
+     * Called when the data plugin reports a problem that did not fail the load, e.g. a city it left out.
+     * @param message description of the problem.
+     */
+    default void onWarning(String message) {
+    }
+}
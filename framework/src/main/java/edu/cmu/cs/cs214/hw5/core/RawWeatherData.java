@@ -1,25 +1,26 @@
 package edu.cmu.cs.cs214.hw5.core;
 
 import java.time.OffsetDateTime;
-import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
 /**
- * This represent a raw weather data of a city
+ * This represent a raw weather data of a city. Records are stored column by column (see WeatherColumns)
+ * rather than as one object per record, timestamps are kept with second precision. A data set can also be backed
+ * by a memory mapped file (see WeatherDataFile.map), it is read-only then.
  */
 public class RawWeatherData {
     private static final String METRIC_DATA_NOT_PROVIDED_ERR_MEG = "Metric data not provided";
     /* Internal field to record data */
     private CityInfo cityInfo;
-    private SortedMap<OffsetDateTime, WeatherRecord> weatherRecordMap;
+    private WeatherStorage weatherStorage;
 
     private Set<WeatherMetric> metricsProvided;
-
-    private static final Comparator<OffsetDateTime> DATE_TIME_COMPARATOR = OffsetDateTime::compareTo;
+    /* views handed out since the last modification, indexed by metric ordinal */
+    private MetricSeries[] metricSeriesCache;
+    private WeatherStateSeries weatherStateSeriesCache;
 
     /**
      * Constructor from all parameters
@@ -33,8 +34,8 @@ public class RawWeatherData {
      */
     public RawWeatherData(String cityName, String stateFullName, String stateAbbrName, double latitude, double longitude, Set<WeatherMetric> metricsProvided) {
         cityInfo = new CityInfo(cityName, stateFullName, stateAbbrName, latitude, longitude);
-        weatherRecordMap = new TreeMap<>(DATE_TIME_COMPARATOR);
         this.metricsProvided = new HashSet<>(metricsProvided);
+        weatherStorage = new WeatherColumns(this.metricsProvided);
     }
 
     /**
@@ -45,28 +46,106 @@ public class RawWeatherData {
      */
     public RawWeatherData(CityInfo cityInfo, Set<WeatherMetric> metricsProvided) {
         this.cityInfo = new CityInfo(cityInfo);
-        weatherRecordMap = new TreeMap<>(DATE_TIME_COMPARATOR);
         this.metricsProvided = new HashSet<>(metricsProvided);
+        weatherStorage = new WeatherColumns(this.metricsProvided);
     }
 
     /**
-     * Make a copy of a raw weather data object
+     * Constructor from an existing storage
+     *
+     * @param cityInfo city info
+     * @param metricsProvided indicate which weather metrics are provided
+     * @param weatherStorage records of the city, owned by the new object
+     */
+    RawWeatherData(CityInfo cityInfo, Set<WeatherMetric> metricsProvided, WeatherStorage weatherStorage) {
+        this.cityInfo = new CityInfo(cityInfo);
+        this.metricsProvided = new HashSet<>(metricsProvided);
+        this.weatherStorage = weatherStorage;
+    }
+
+    /**
+     * Make a copy of a raw weather data object, the records are shared until either object is modified
+     * (the copy of a read-only data set is read-only as well)
      *
      * @param rawWeatherData make a copy of it
      */
     public RawWeatherData(RawWeatherData rawWeatherData) {
         this.cityInfo = new CityInfo(rawWeatherData.cityInfo);
-        this.weatherRecordMap = new TreeMap<>(rawWeatherData.weatherRecordMap);
+        this.weatherStorage = rawWeatherData.weatherStorage.copy();
         this.metricsProvided = new HashSet<>(rawWeatherData.metricsProvided);
+        if(rawWeatherData.metricSeriesCache != null) {
+            this.metricSeriesCache = rawWeatherData.metricSeriesCache.clone();
+        }
+        this.weatherStateSeriesCache = rawWeatherData.weatherStateSeriesCache;
     }
 
     /**
      * Insert a weather recrod to dataset
      * @param dateTime date time of the record
      * @param weatherRecord record data
+     * @throws IllegalStateException if the data set is read-only
      */
     public void addWeatherRecord(OffsetDateTime dateTime, WeatherRecord weatherRecord) {
-        weatherRecordMap.put(dateTime, weatherRecord);
+        weatherStorage.put(dateTime, weatherRecord);
+        invalidateSeriesCache();
+    }
+
+    /**
+     * Insert a weather record to dataset without creating a WeatherRecord, for plugins that load many records
+     *
+     * @param epochSecond timestamp of the record in seconds since epoch
+     * @param offsetSeconds zone offset of the record in seconds
+     * @param metricValues values of the numeric metrics, indexed by WeatherMetric ordinal (values of metrics that
+     *                     are not provided are ignored)
+     * @param weatherState weather state of the record, may be null
+     * @throws IllegalStateException if the data set is read-only
+     */
+    public void addWeatherRecord(long epochSecond, int offsetSeconds, double[] metricValues, WeatherState weatherState) {
+        weatherStorage.put(epochSecond, offsetSeconds, metricValues, weatherState);
+        invalidateSeriesCache();
+    }
+
+    /**
+     * Insert all records of another data set providing the same metrics, e.g. to combine data sets loaded in
+     * parallel. Records of the other data set replace records at the same time. If all of its records are later
+     * than the records of this data set, they are appended with bulk array copies.
+     *
+     * @param rawWeatherData data set to insert, not modified
+     * @throws IllegalArgumentException if the data sets provide different metrics
+     * @throws IllegalStateException if this data set is read-only
+     */
+    public void addWeatherRecords(RawWeatherData rawWeatherData) {
+        if(!metricsProvided.equals(rawWeatherData.metricsProvided)) {
+            throw new IllegalArgumentException("Metrics provided do not match");
+        }
+        weatherStorage.putAll(rawWeatherData.weatherStorage);
+        invalidateSeriesCache();
+    }
+
+    /**
+     * @return storage of the records
+     */
+    WeatherStorage getWeatherStorage() {
+        return weatherStorage;
+    }
+
+    /**
+     * @return true if records can not be added to this data set (e.g. it is backed by a memory mapped file)
+     */
+    public boolean isReadOnly() {
+        return weatherStorage.isReadOnly();
+    }
+
+    private void invalidateSeriesCache() {
+        metricSeriesCache = null;
+        weatherStateSeriesCache = null;
+    }
+
+    /**
+     * @return number of records in this data set
+     */
+    public int getRecordCount() {
+        return weatherStorage.size();
     }
 
     /**
@@ -92,17 +171,38 @@ public class RawWeatherData {
      * @throws IllegalArgumentException if this metric is not provided in this dataset
      */
     public SortedMap<OffsetDateTime, Double> getMetric(WeatherMetric weatherMetric) {
-        if(!weatherMetric.isNumeric()) {
-            throw new  IllegalArgumentException("Cannot get value for a non-numeric metric " + weatherMetric.getDescription());
-        }
+        MetricSeries metricSeries = getMetricSeries(weatherMetric);
         SortedMap<OffsetDateTime, Double> metricVals = new TreeMap<>();
 
-        for(Map.Entry<OffsetDateTime, WeatherRecord> entry: weatherRecordMap.entrySet()) {
-            metricVals.put(entry.getKey(), entry.getValue().getNumeric(weatherMetric));
+        for(int i=0; i<metricSeries.size(); i++) {
+            metricVals.put(metricSeries.getDateTime(i), metricSeries.getValue(i));
         }
         return metricVals;
     }
 
+    /**
+     * Get a read-only view of a metric of the data set (need to call metricProvided to check for availability
+     * of the metric). The view shares the storage of this data set, so it is cheap to call repeatedly.
+     *
+     * @param weatherMetric numeric weather metric
+     * @return the metric data (from smaller timestamp to larger timestamp)
+     * @throws IllegalArgumentException if this metric is not numeric
+     */
+    public MetricSeries getMetricSeries(WeatherMetric weatherMetric) {
+        if(!weatherMetric.isNumeric()) {
+            throw new  IllegalArgumentException("Cannot get value for a non-numeric metric " + weatherMetric.getDescription());
+        }
+        if(metricSeriesCache == null) {
+            metricSeriesCache = new MetricSeries[WeatherMetric.values().length];
+        }
+        MetricSeries metricSeries = metricSeriesCache[weatherMetric.ordinal()];
+        if(metricSeries == null) {
+            metricSeries = weatherStorage.metricSeries(weatherMetric);
+            metricSeriesCache[weatherMetric.ordinal()] = metricSeries;
+        }
+        return metricSeries;
+    }
+
     /**
      * Get if the weather state is provided
      *
@@ -118,15 +218,29 @@ public class RawWeatherData {
      * @throws IllegalStateException if weather state is not provided in this dataset
      */
     public SortedMap<OffsetDateTime, WeatherState> getWeatherState() {
+        WeatherStateSeries weatherStateSeries = getWeatherStateSeries();
         SortedMap<OffsetDateTime, WeatherState> weatherStates = new TreeMap<>();
+        for(int i=0; i<weatherStateSeries.size(); i++) {
+            weatherStates.put(weatherStateSeries.getDateTime(i), weatherStateSeries.getState(i));
+        }
+        return weatherStates;
+    }
+
+    /**
+     * Get a read-only view of the weather states of the data set. The view shares the storage of this data set,
+     * so it is cheap to call repeatedly.
+     *
+     * @return the weather state data (from smaller timestamp to larger timestamp)
+     * @throws IllegalStateException if weather state is not provided in this dataset
+     */
+    public WeatherStateSeries getWeatherStateSeries() {
         if(!weatherStateProvided()) {
             throw new IllegalStateException(METRIC_DATA_NOT_PROVIDED_ERR_MEG);
-        } else {
-            for(Map.Entry<OffsetDateTime, WeatherRecord> entry: weatherRecordMap.entrySet()) {
-                weatherStates.put(entry.getKey(), entry.getValue().getWeatherState());
-            }
         }
-        return weatherStates;
+        if(weatherStateSeriesCache == null) {
+            weatherStateSeriesCache = weatherStorage.stateSeries();
+        }
+        return weatherStateSeriesCache;
     }
 
     /**
@@ -136,7 +250,7 @@ public class RawWeatherData {
     public String toString() {
         return "RawWeatherData{" +
             "cityInfo=" + cityInfo +
-            ", weatherRecordMap=" + weatherRecordMap +
+            ", recordCount=" + weatherStorage.size() +
             '}';
     }
 }
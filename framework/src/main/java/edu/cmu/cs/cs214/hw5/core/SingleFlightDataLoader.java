@@ -0,0 +1,112 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces identical concurrent loads of data plugins: while a load of a plugin with some input values is running,
+ * other loads of the same plugin with the same input values wait for it and share its result, instead of each
+ * querying the data source. Loads are identified by the plugin class, plugin name and input entry values.
+ *
+ * Callers waiting for another load get copies of its data sets (which share the records until modified), so
+ * they can not see each other's changes. If the running load is cancelled, a waiting caller loads by itself.
+ */
+public class SingleFlightDataLoader {
+    private static final SingleFlightDataLoader SHARED = new SingleFlightDataLoader();
+
+    private final Map<List<String>, CompletableFuture<List<RawWeatherData>>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @return loader shared by all frameworks of the process
+     */
+    public static SingleFlightDataLoader shared() {
+        return SHARED;
+    }
+
+    /**
+     * Load data from a plugin, or wait for an identical load already running
+     *
+     * @param dataPlugin plugin to load from
+     * @param inputEntries input entries of the plugin with the user input set
+     * @return raw weather data list returned by the plugin
+     * @throws IllegalArgumentException if any user input is invalid
+     * @throws IllegalStateException if any internal error happens during loading data
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public List<RawWeatherData> load(DataPlugin dataPlugin, List<InputEntry> inputEntries) {
+        List<String> key = keyOf(dataPlugin, inputEntries);
+        while(true) {
+            CompletableFuture<List<RawWeatherData>> load = new CompletableFuture<>();
+            CompletableFuture<List<RawWeatherData>> running = inFlight.putIfAbsent(key, load);
+            if(running == null) {
+                return loadAndPublish(dataPlugin, inputEntries, key, load);
+            }
+            List<RawWeatherData> shared = await(running);
+            if(shared != null) {
+                List<RawWeatherData> copies = new ArrayList<>();
+                for(RawWeatherData rawWeatherData: shared) {
+                    copies.add(new RawWeatherData(rawWeatherData));
+                }
+                return copies;
+            }
+            /* the running load was cancelled, try again */
+        }
+    }
+
+    private List<RawWeatherData> loadAndPublish(DataPlugin dataPlugin, List<InputEntry> inputEntries,
+                                                List<String> key, CompletableFuture<List<RawWeatherData>> load) {
+        PipelineEvents.LoadData event = new PipelineEvents.LoadData();
+        event.begin();
+        List<RawWeatherData> rawWeatherDataList = null;
+        try {
+            rawWeatherDataList = dataPlugin.loadData(inputEntries);
+            load.complete(rawWeatherDataList);
+            return rawWeatherDataList;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, load);
+            event.end();
+            event.commitRaw(dataPlugin.getName(), rawWeatherDataList);
+        }
+    }
+
+    /**
+     * @return result of a running load, null if it was cancelled
+     */
+    private static List<RawWeatherData> await(CompletableFuture<List<RawWeatherData>> running) {
+        try {
+            return running.get();
+        } catch (CancellationException e) {
+            /* get() throws the CancellationException a load completed with as is */
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Loading data cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private static List<String> keyOf(DataPlugin dataPlugin, List<InputEntry> inputEntries) {
+        List<String> key = new ArrayList<>();
+        key.add(dataPlugin.getClass().getName());
+        key.add(dataPlugin.getName());
+        if(inputEntries != null) {
+            for(InputEntry inputEntry: inputEntries) {
+                key.add(inputEntry.getValue());
+            }
+        }
+        return key;
+    }
+}
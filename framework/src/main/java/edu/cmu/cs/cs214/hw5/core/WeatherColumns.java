@@ -0,0 +1,344 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Columnar heap storage of the weather records of a city. Records are kept sorted by time (second precision),
+ * each numeric metric provided is kept in its own primitive column.
+ *
+ * Copies and series views share the arrays, the arrays are copied on the first write after they are shared.
+ */
+class WeatherColumns extends WeatherStorage {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final WeatherMetric[] METRICS = WeatherMetric.values();
+
+    private long[] epochSeconds;
+    private int[] offsetSeconds;
+    /* indexed by metric ordinal, null if the metric is not stored */
+    private double[][] metricValues;
+    /* null if weather state is not stored */
+    private byte[] stateOrdinals;
+    private int size;
+    /* true if the arrays may be referenced by a copy or a view */
+    private boolean shared;
+
+    /**
+     * Constructor
+     *
+     * @param metrics metrics to keep a column for
+     */
+    WeatherColumns(Set<WeatherMetric> metrics) {
+        epochSeconds = new long[INITIAL_CAPACITY];
+        offsetSeconds = new int[INITIAL_CAPACITY];
+        metricValues = new double[METRICS.length][];
+        for(WeatherMetric metric: metrics) {
+            if(metric.isNumeric()) {
+                metricValues[metric.ordinal()] = new double[INITIAL_CAPACITY];
+            }
+        }
+        if(metrics.contains(WeatherMetric.WEATHERSTATE)) {
+            stateOrdinals = new byte[INITIAL_CAPACITY];
+        }
+        size = 0;
+    }
+
+    /**
+     * Copy constructor, the copy shares the arrays until either side is modified
+     *
+     * @param columns columns to copy
+     */
+    WeatherColumns(WeatherColumns columns) {
+        epochSeconds = columns.epochSeconds;
+        offsetSeconds = columns.offsetSeconds;
+        metricValues = columns.metricValues.clone();
+        stateOrdinals = columns.stateOrdinals;
+        size = columns.size;
+        shared = true;
+        columns.shared = true;
+    }
+
+    /**
+     * Constructor from existing columns (e.g. read from a file), the arrays are owned by the new object
+     *
+     * @param epochSeconds time column
+     * @param offsetSeconds zone offset column
+     * @param metricValues metric columns indexed by metric ordinal, null if the metric is not stored
+     * @param stateOrdinals weather state column, null if weather state is not stored
+     * @param size number of records
+     */
+    WeatherColumns(long[] epochSeconds, int[] offsetSeconds, double[][] metricValues, byte[] stateOrdinals, int size) {
+        this.epochSeconds = epochSeconds;
+        this.offsetSeconds = offsetSeconds;
+        this.metricValues = metricValues.clone();
+        this.stateOrdinals = stateOrdinals;
+        this.size = size;
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    WeatherStorage copy() {
+        return new WeatherColumns(this);
+    }
+
+    @Override
+    void put(OffsetDateTime dateTime, WeatherRecord weatherRecord) {
+        int slot = prepareSlot(dateTime.toEpochSecond(), dateTime.getOffset().getTotalSeconds());
+        for(int i=0; i<METRICS.length; i++) {
+            if(metricValues[i] != null) {
+                metricValues[i][slot] = weatherRecord.getNumeric(METRICS[i]);
+            }
+        }
+        if(stateOrdinals != null) {
+            stateOrdinals[slot] = stateOrdinal(weatherRecord.getWeatherState());
+        }
+    }
+
+    @Override
+    void put(long epochSecond, int offset, double[] values, WeatherState weatherState) {
+        int slot = prepareSlot(epochSecond, offset);
+        for(int i=0; i<METRICS.length; i++) {
+            if(metricValues[i] != null) {
+                metricValues[i][slot] = values[i];
+            }
+        }
+        if(stateOrdinals != null) {
+            stateOrdinals[slot] = stateOrdinal(weatherState);
+        }
+    }
+
+    /**
+     * Insert all records of another storage with the same metrics, records of the other storage replace records
+     * at the same time. Appending records that are all later than the last record only copies the columns in bulk,
+     * otherwise both sides are merged in linear time.
+     *
+     * @param storage storage to insert, not modified
+     */
+    @Override
+    void putAll(WeatherStorage storage) {
+        int cnt = storage.size();
+        if(cnt == 0) {
+            return;
+        }
+        LongBuffer otherEpochSeconds = storage.epochSecondColumn();
+        IntBuffer otherOffsetSeconds = storage.offsetColumn();
+        if(size != 0 && compare(otherEpochSeconds.get(0), otherOffsetSeconds.get(0), size - 1) <= 0) {
+            merge(storage);
+            return;
+        }
+        if(shared) {
+            detach();
+        }
+        ensureCapacity(size + cnt);
+        otherEpochSeconds.get(epochSeconds, size, cnt);
+        otherOffsetSeconds.get(offsetSeconds, size, cnt);
+        for(int i=0; i<metricValues.length; i++) {
+            if(metricValues[i] != null) {
+                storage.metricColumn(METRICS[i]).get(metricValues[i], size, cnt);
+            }
+        }
+        if(stateOrdinals != null) {
+            storage.stateColumn().get(stateOrdinals, size, cnt);
+        }
+        size += cnt;
+    }
+
+    /**
+     * Merge two sorted storages into new arrays, so the old (possibly shared) arrays are left untouched
+     */
+    private void merge(WeatherStorage storage) {
+        int otherSize = storage.size();
+        LongBuffer otherEpochSeconds = storage.epochSecondColumn();
+        IntBuffer otherOffsetSeconds = storage.offsetColumn();
+        int capacity = size + otherSize;
+        long[] mergedEpochSeconds = new long[capacity];
+        int[] mergedOffsetSeconds = new int[capacity];
+        /* index of the record in this storage, or -1 - index in the other storage */
+        int[] source = new int[capacity];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while(i < size || j < otherSize) {
+            int cmp;
+            if(i == size) {
+                cmp = 1;
+            } else if(j == otherSize) {
+                cmp = -1;
+            } else {
+                cmp = -compare(otherEpochSeconds.get(j), otherOffsetSeconds.get(j), i);
+            }
+            if(cmp < 0) {
+                source[k] = i;
+                mergedEpochSeconds[k] = epochSeconds[i];
+                mergedOffsetSeconds[k] = offsetSeconds[i++];
+            } else {
+                /* same time, the inserted record wins */
+                if(cmp == 0) {
+                    i++;
+                }
+                source[k] = -1 - j;
+                mergedEpochSeconds[k] = otherEpochSeconds.get(j);
+                mergedOffsetSeconds[k] = otherOffsetSeconds.get(j++);
+            }
+            k++;
+        }
+
+        for(int m=0; m<metricValues.length; m++) {
+            if(metricValues[m] != null) {
+                DoubleBuffer other = storage.metricColumn(METRICS[m]);
+                double[] merged = new double[capacity];
+                for(int r=0; r<k; r++) {
+                    merged[r] = source[r] >= 0 ? metricValues[m][source[r]] : other.get(-1 - source[r]);
+                }
+                metricValues[m] = merged;
+            }
+        }
+        if(stateOrdinals != null) {
+            ByteBuffer other = storage.stateColumn();
+            byte[] merged = new byte[capacity];
+            for(int r=0; r<k; r++) {
+                merged[r] = source[r] >= 0 ? stateOrdinals[source[r]] : other.get(-1 - source[r]);
+            }
+            stateOrdinals = merged;
+        }
+        epochSeconds = mergedEpochSeconds;
+        offsetSeconds = mergedOffsetSeconds;
+        size = k;
+        shared = false;
+    }
+
+    private static byte stateOrdinal(WeatherState weatherState) {
+        return weatherState == null ? NO_STATE : (byte) weatherState.ordinal();
+    }
+
+    private int prepareSlot(long epochSecond, int offset) {
+        if(shared) {
+            detach();
+        }
+        return slotFor(epochSecond, offset);
+    }
+
+    @Override
+    LongBuffer epochSecondColumn() {
+        shared = true;
+        return LongBuffer.wrap(epochSeconds, 0, size);
+    }
+
+    @Override
+    IntBuffer offsetColumn() {
+        shared = true;
+        return IntBuffer.wrap(offsetSeconds, 0, size);
+    }
+
+    @Override
+    DoubleBuffer metricColumn(WeatherMetric metric) {
+        double[] values = metricValues[metric.ordinal()];
+        if(values == null) {
+            return null;
+        }
+        shared = true;
+        return DoubleBuffer.wrap(values, 0, size);
+    }
+
+    @Override
+    ByteBuffer stateColumn() {
+        if(stateOrdinals == null) {
+            return null;
+        }
+        shared = true;
+        return ByteBuffer.wrap(stateOrdinals, 0, size);
+    }
+
+    /**
+     * Find (or make room for) the position of a record. Records are ordered the same way as
+     * OffsetDateTime, i.e. by instant and then by local time.
+     *
+     * @return index to write the record to
+     */
+    private int slotFor(long epochSecond, int offset) {
+        if(size == 0 || compare(epochSecond, offset, size - 1) > 0) {
+            ensureCapacity(size + 1);
+            epochSeconds[size] = epochSecond;
+            offsetSeconds[size] = offset;
+            return size++;
+        }
+
+        int low = 0;
+        int high = size - 1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(epochSecond, offset, mid);
+            if(cmp > 0) {
+                low = mid + 1;
+            } else if(cmp < 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        ensureCapacity(size + 1);
+        shift(low);
+        epochSeconds[low] = epochSecond;
+        offsetSeconds[low] = offset;
+        size++;
+        return low;
+    }
+
+    private int compare(long epochSecond, int offset, int index) {
+        int cmp = Long.compare(epochSecond, epochSeconds[index]);
+        return cmp != 0 ? cmp : Integer.compare(offset, offsetSeconds[index]);
+    }
+
+    private void shift(int from) {
+        int len = size - from;
+        System.arraycopy(epochSeconds, from, epochSeconds, from + 1, len);
+        System.arraycopy(offsetSeconds, from, offsetSeconds, from + 1, len);
+        for(double[] column: metricValues) {
+            if(column != null) {
+                System.arraycopy(column, from, column, from + 1, len);
+            }
+        }
+        if(stateOrdinals != null) {
+            System.arraycopy(stateOrdinals, from, stateOrdinals, from + 1, len);
+        }
+    }
+
+    private void detach() {
+        resize(epochSeconds.length);
+        shared = false;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > epochSeconds.length) {
+            resize(Math.max(capacity, epochSeconds.length * 2));
+        }
+    }
+
+    private void resize(int newCapacity) {
+        epochSeconds = Arrays.copyOf(epochSeconds, newCapacity);
+        offsetSeconds = Arrays.copyOf(offsetSeconds, newCapacity);
+        for(int i=0; i<metricValues.length; i++) {
+            if(metricValues[i] != null) {
+                metricValues[i] = Arrays.copyOf(metricValues[i], newCapacity);
+            }
+        }
+        if(stateOrdinals != null) {
+            stateOrdinals = Arrays.copyOf(stateOrdinals, newCapacity);
+        }
+    }
+}
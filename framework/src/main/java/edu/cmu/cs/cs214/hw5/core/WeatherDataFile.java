@@ -0,0 +1,356 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Binary columnar file of a raw weather data set, used by data plugins to cache parsed data next to its source.
+ * The file records the size and modification time of the source, and is only used while they still match.
+ *
+ * Layout (little endian, every section starts at a multiple of 8 bytes):
+ * header (magic, version, source size, source modification time, record count, flags, metric bit mask,
+ * city section length), optional city section, then the epoch second column (long), the zone offset column (int),
+ * one double column per provided numeric metric in ordinal order and the weather state ordinal column (byte).
+ *
+ * A file can either be read onto the heap (read) or mapped as a read-only data set (map) whose metric reads go
+ * straight to the mapped pages, for data sets larger than the heap.
+ */
+public final class WeatherDataFile {
+    private static final int MAGIC = 0x31434457;
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 48;
+    private static final int FLAG_CITY_STORED = 1;
+    private static final WeatherMetric[] METRICS = WeatherMetric.values();
+
+    private WeatherDataFile() {
+    }
+
+    /**
+     * Write a data set to a file. The file is written to a temporary file first and then moved in place, so a
+     * reader never sees a partially written file.
+     *
+     * @param file file to write
+     * @param rawWeatherData data set to write
+     * @param storeCityInfo true to store the city info as well
+     * @param sourceSize size of the source the data was parsed from
+     * @param sourceLastModified modification time (ms since epoch) of the source
+     * @throws IOException if the file can not be written
+     */
+    public static void write(Path file, RawWeatherData rawWeatherData, boolean storeCityInfo, long sourceSize,
+                             long sourceLastModified) throws IOException {
+        WeatherStorage columns = rawWeatherData.getWeatherStorage();
+        int count = columns.size();
+        long metricMask = 0;
+        for(WeatherMetric metric: METRICS) {
+            if(rawWeatherData.metricProvided(metric)) {
+                metricMask |= 1L << metric.ordinal();
+            }
+        }
+        byte[] citySection = storeCityInfo ? encodeCityInfo(rawWeatherData.getCityInfo()) : new byte[0];
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceLastModified).putInt(count)
+            .putInt(storeCityInfo ? FLAG_CITY_STORED : 0).putLong(metricMask).putInt(citySection.length).putInt(0);
+        header.flip();
+
+        /* not Files.createTempFile, which would make the file readable by its owner only */
+        Path tmp = file.toAbsolutePath().resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                writeFully(channel, header);
+                writeFully(channel, ByteBuffer.wrap(citySection));
+
+                ByteBuffer epochBuf = allocate(count * 8L);
+                epochBuf.asLongBuffer().put(columns.epochSecondColumn());
+                writeFully(channel, epochBuf);
+                ByteBuffer offsetBuf = allocate(count * 4L);
+                offsetBuf.asIntBuffer().put(columns.offsetColumn());
+                writeFully(channel, offsetBuf);
+                for(WeatherMetric metric: METRICS) {
+                    if(metric.isNumeric() && (metricMask & (1L << metric.ordinal())) != 0) {
+                        ByteBuffer metricBuf = allocate(count * 8L);
+                        metricBuf.asDoubleBuffer().put(columns.metricColumn(metric));
+                        writeFully(channel, metricBuf);
+                    }
+                }
+                if(rawWeatherData.weatherStateProvided()) {
+                    ByteBuffer stateBuf = allocate(count);
+                    stateBuf.put(columns.stateColumn()).position(0);
+                    writeFully(channel, stateBuf);
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Read a data set written by write. The file is memory mapped and its columns are copied in bulk.
+     *
+     * @param file file to read
+     * @param defaultCityInfo city of the data if the file does not store one, may be null
+     * @param sourceSize current size of the source
+     * @param sourceLastModified current modification time (ms since epoch) of the source
+     * @return the data set, or null if the file does not exist, is not a valid weather data file, does not match
+     *         the source or stores no city while defaultCityInfo is null
+     * @throws IOException if the file can not be read
+     */
+    public static RawWeatherData read(Path file, CityInfo defaultCityInfo, long sourceSize, long sourceLastModified)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if(fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            Layout layout = Layout.of(mapped, fileSize);
+            if(layout == null || !layout.matchesSource(mapped, sourceSize, sourceLastModified)) {
+                return null;
+            }
+            CityInfo cityInfo = layout.cityStored ? decodeCityInfo(mapped, HEADER_SIZE) : defaultCityInfo;
+            if(cityInfo == null) {
+                return null;
+            }
+
+            int count = layout.count;
+            int capacity = Math.max(count, 1);
+            long[] epochSeconds = new long[capacity];
+            mapped.position((int) layout.epochOffset);
+            mapped.asLongBuffer().get(epochSeconds, 0, count);
+            int[] offsetSeconds = new int[capacity];
+            mapped.position((int) layout.offsetOffset);
+            mapped.asIntBuffer().get(offsetSeconds, 0, count);
+            double[][] metricValues = new double[METRICS.length][];
+            for(WeatherMetric metric: METRICS) {
+                if(layout.metricOffsets[metric.ordinal()] >= 0) {
+                    metricValues[metric.ordinal()] = new double[capacity];
+                    mapped.position((int) layout.metricOffsets[metric.ordinal()]);
+                    mapped.asDoubleBuffer().get(metricValues[metric.ordinal()], 0, count);
+                }
+            }
+            byte[] stateOrdinals = null;
+            if(layout.stateOffset >= 0) {
+                stateOrdinals = new byte[capacity];
+                mapped.position((int) layout.stateOffset);
+                mapped.get(stateOrdinals, 0, count);
+            }
+            WeatherColumns columns = new WeatherColumns(epochSeconds, offsetSeconds, metricValues, stateOrdinals, count);
+            return new RawWeatherData(cityInfo, layout.metrics, columns);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Map a file as a read-only data set, the records stay in the file and are read from the mapped pages.
+     *
+     * @param file file to map
+     * @param defaultCityInfo city of the data if the file does not store one, may be null if it does
+     * @return read-only data set backed by the file
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if the file is not a valid weather data file (or larger than 2 GiB),
+     *                                  or stores no city while defaultCityInfo is null
+     */
+    public static RawWeatherData map(Path file, CityInfo defaultCityInfo) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            RawWeatherData rawWeatherData = map(channel, defaultCityInfo, null);
+            if(rawWeatherData == null) {
+                throw new IllegalArgumentException("Invalid weather data file " + file);
+            }
+            return rawWeatherData;
+        }
+    }
+
+    /**
+     * Map a file as a read-only data set if it still matches its source (see map(Path, CityInfo))
+     *
+     * @param file file to map
+     * @param defaultCityInfo city of the data if the file does not store one, may be null
+     * @param sourceSize current size of the source
+     * @param sourceLastModified current modification time (ms since epoch) of the source
+     * @return read-only data set backed by the file, or null in the same cases as read
+     * @throws IOException if the file can not be read
+     */
+    public static RawWeatherData map(Path file, CityInfo defaultCityInfo, long sourceSize, long sourceLastModified)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return map(channel, defaultCityInfo, new long[]{sourceSize, sourceLastModified});
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param source size and modification time of the source, null to skip the check
+     * @return null if the file is invalid, does not match the source or has no city
+     */
+    private static RawWeatherData map(FileChannel channel, CityInfo defaultCityInfo, long[] source) throws IOException {
+        long fileSize = channel.size();
+        if(fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+            return null;
+        }
+        /* the mapping stays valid after the channel is closed */
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        Layout layout = Layout.of(mapped, fileSize);
+        if(layout == null || (source != null && !layout.matchesSource(mapped, source[0], source[1]))) {
+            return null;
+        }
+        CityInfo cityInfo = layout.cityStored ? decodeCityInfo(mapped, HEADER_SIZE) : defaultCityInfo;
+        if(cityInfo == null) {
+            return null;
+        }
+        return new RawWeatherData(cityInfo, layout.metrics, new MappedWeatherColumns(mapped, layout));
+    }
+
+    private static ByteBuffer allocate(long size) {
+        return ByteBuffer.allocate(Math.toIntExact(size)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while(buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        /* pad every section to 8 bytes */
+        int padding = (int) ((8 - channel.position() % 8) % 8);
+        if(padding > 0) {
+            channel.write(ByteBuffer.allocate(padding));
+        }
+    }
+
+    private static byte[] encodeCityInfo(CityInfo cityInfo) {
+        byte[] name = cityInfo.getCityName().getBytes(StandardCharsets.UTF_8);
+        byte[] stateFull = cityInfo.getStateFullName().getBytes(StandardCharsets.UTF_8);
+        byte[] stateAbbr = cityInfo.getStateAbbrName().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(12 + name.length + stateFull.length + stateAbbr.length + 16)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(name.length).put(name).putInt(stateFull.length).put(stateFull).putInt(stateAbbr.length).put(stateAbbr)
+            .putDouble(cityInfo.getLatitude()).putDouble(cityInfo.getLongitude());
+        return buf.array();
+    }
+
+    private static CityInfo decodeCityInfo(ByteBuffer buf, int offset) {
+        buf.position(offset);
+        String name = decodeString(buf);
+        String stateFull = decodeString(buf);
+        String stateAbbr = decodeString(buf);
+        return new CityInfo(name, stateFull, stateAbbr, buf.getDouble(), buf.getDouble());
+    }
+
+    private static String decodeString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if(length < 0 || length > buf.remaining()) {
+            throw new IllegalArgumentException("Invalid city section");
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long align(long position) {
+        return (position + 7) / 8 * 8;
+    }
+
+    /**
+     * Positions of the sections of a weather data file
+     */
+    static final class Layout {
+        final int count;
+        final boolean cityStored;
+        final Set<WeatherMetric> metrics;
+        final long epochOffset;
+        final long offsetOffset;
+        /* indexed by metric ordinal, -1 if the numeric metric is not stored */
+        final long[] metricOffsets;
+        /* -1 if weather state is not stored */
+        final long stateOffset;
+
+        private Layout(int count, boolean cityStored, long metricMask, int citySectionLength) {
+            this.count = count;
+            this.cityStored = cityStored;
+            metrics = new HashSet<>();
+            metricOffsets = new long[METRICS.length];
+            epochOffset = align(HEADER_SIZE + (long) citySectionLength);
+            offsetOffset = align(epochOffset + count * 8L);
+            long position = align(offsetOffset + count * 4L);
+            for(WeatherMetric metric: METRICS) {
+                metricOffsets[metric.ordinal()] = -1;
+                if((metricMask & (1L << metric.ordinal())) != 0) {
+                    metrics.add(metric);
+                    if(metric.isNumeric()) {
+                        metricOffsets[metric.ordinal()] = position;
+                        position = align(position + count * 8L);
+                    }
+                }
+            }
+            stateOffset = metrics.contains(WeatherMetric.WEATHERSTATE) ? position : -1;
+        }
+
+        /**
+         * @return end of the last section
+         */
+        long end() {
+            if(stateOffset >= 0) {
+                return stateOffset + count;
+            }
+            long end = offsetOffset + count * 4L;
+            for(long metricOffset: metricOffsets) {
+                if(metricOffset >= 0) {
+                    end = Math.max(end, metricOffset + count * 8L);
+                }
+            }
+            return end;
+        }
+
+        /**
+         * @param buf content of the file, little endian
+         * @param sourceSize current size of the source
+         * @param sourceLastModified current modification time of the source
+         * @return true if the file was written from the current version of the source
+         */
+        boolean matchesSource(ByteBuffer buf, long sourceSize, long sourceLastModified) {
+            return buf.getLong(8) == sourceSize && buf.getLong(16) == sourceLastModified;
+        }
+
+        /**
+         * Read and validate the header of a file
+         *
+         * @param buf content of the file, little endian
+         * @param fileSize size of the file
+         * @return layout of the file, null if the file is invalid
+         */
+        static Layout of(ByteBuffer buf, long fileSize) {
+            if(buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                return null;
+            }
+            int count = buf.getInt(24);
+            int flags = buf.getInt(28);
+            long metricMask = buf.getLong(32);
+            int citySectionLength = buf.getInt(40);
+            if(count < 0 || citySectionLength < 0 || (metricMask >>> METRICS.length) != 0) {
+                return null;
+            }
+            Layout layout = new Layout(count, (flags & FLAG_CITY_STORED) != 0, metricMask, citySectionLength);
+            return layout.end() <= fileSize ? layout : null;
+        }
+    }
+}
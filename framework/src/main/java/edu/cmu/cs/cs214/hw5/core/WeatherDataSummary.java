@@ -0,0 +1,219 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+/**
+ * Summary statistics (count/sum/min/max/variance of every numeric metric and weather state counts)
+ * of a raw weather data set, computed in a single pass over the records.
+ */
+public class WeatherDataSummary {
+    private static final WeatherMetric[] METRICS = WeatherMetric.values();
+    private static final WeatherState[] STATES = WeatherState.values();
+
+    private final int count;
+    /* indexed by metric ordinal, only valid for provided numeric metrics */
+    private final boolean[] metricProvided;
+    private final double[] sum;
+    private final double[] min;
+    private final double[] max;
+    private final double[] m2;
+    /* indexed by weather state ordinal, null if weather state is not provided */
+    private final int[] stateCount;
+
+    /**
+     * Compute the summary of a data set
+     *
+     * @param rawWeatherData raw weather data of a city
+     */
+    public WeatherDataSummary(RawWeatherData rawWeatherData) {
+        count = rawWeatherData.getRecordCount();
+        metricProvided = new boolean[METRICS.length];
+        sum = new double[METRICS.length];
+        min = new double[METRICS.length];
+        max = new double[METRICS.length];
+        m2 = new double[METRICS.length];
+
+        /* views of the provided numeric metrics, packed so the inner loop only visits provided metrics */
+        MetricSeries[] series = new MetricSeries[METRICS.length];
+        int[] seriesMetric = new int[METRICS.length];
+        int seriesCnt = 0;
+        for(WeatherMetric metric: METRICS) {
+            if(metric.isNumeric() && rawWeatherData.metricProvided(metric)) {
+                metricProvided[metric.ordinal()] = true;
+                series[seriesCnt] = rawWeatherData.getMetricSeries(metric);
+                seriesMetric[seriesCnt] = metric.ordinal();
+                seriesCnt++;
+            }
+        }
+        WeatherStateSeries stateSeries = null;
+        if(rawWeatherData.weatherStateProvided()) {
+            stateSeries = rawWeatherData.getWeatherStateSeries();
+            stateCount = new int[STATES.length];
+        } else {
+            stateCount = null;
+        }
+
+        double[] mean = new double[seriesCnt];
+        double[] compensation = new double[seriesCnt];
+        double[] seriesSum = new double[seriesCnt];
+        double[] seriesMin = new double[seriesCnt];
+        double[] seriesMax = new double[seriesCnt];
+        double[] seriesM2 = new double[seriesCnt];
+        for(int j=0; j<seriesCnt; j++) {
+            seriesMin[j] = Double.POSITIVE_INFINITY;
+            seriesMax[j] = Double.NEGATIVE_INFINITY;
+        }
+
+        for(int i=0; i<count; i++) {
+            for(int j=0; j<seriesCnt; j++) {
+                double val = series[j].getValue(i);
+                /* compensated (Kahan) sum, same precision as DoubleStream.sum */
+                double y = val - compensation[j];
+                double t = seriesSum[j] + y;
+                compensation[j] = (t - seriesSum[j]) - y;
+                seriesSum[j] = t;
+                if(val < seriesMin[j]) {
+                    seriesMin[j] = val;
+                }
+                if(val > seriesMax[j]) {
+                    seriesMax[j] = val;
+                }
+                /* Welford's online variance */
+                double delta = val - mean[j];
+                mean[j] += delta / (i + 1);
+                seriesM2[j] += delta * (val - mean[j]);
+            }
+            if(stateSeries != null) {
+                WeatherState weatherState = stateSeries.getState(i);
+                if(weatherState != null) {
+                    stateCount[weatherState.ordinal()]++;
+                }
+            }
+        }
+
+        for(int j=0; j<seriesCnt; j++) {
+            int ordinal = seriesMetric[j];
+            sum[ordinal] = seriesSum[j];
+            min[ordinal] = seriesMin[j];
+            max[ordinal] = seriesMax[j];
+            m2[ordinal] = seriesM2[j];
+        }
+    }
+
+    /**
+     * @return number of records summarized
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param weatherMetric weather metric
+     * @return true if the metric is numeric and provided by the data set
+     */
+    public boolean metricProvided(WeatherMetric weatherMetric) {
+        return metricProvided[weatherMetric.ordinal()];
+    }
+
+    /**
+     * @return true if weather state is provided by the data set
+     */
+    public boolean weatherStateProvided() {
+        return stateCount != null;
+    }
+
+    /**
+     * @param weatherMetric numeric weather metric
+     * @return sum of the metric
+     * @throws IllegalArgumentException if the metric is not provided
+     */
+    public double getSum(WeatherMetric weatherMetric) {
+        return sum[checkProvided(weatherMetric)];
+    }
+
+    /**
+     * @param weatherMetric numeric weather metric
+     * @return average of the metric, NaN if there is no record
+     * @throws IllegalArgumentException if the metric is not provided
+     */
+    public double getAverage(WeatherMetric weatherMetric) {
+        return sum[checkProvided(weatherMetric)] / count;
+    }
+
+    /**
+     * @param weatherMetric numeric weather metric
+     * @return minimum of the metric, positive infinity if there is no record
+     * @throws IllegalArgumentException if the metric is not provided
+     */
+    public double getMin(WeatherMetric weatherMetric) {
+        return min[checkProvided(weatherMetric)];
+    }
+
+    /**
+     * @param weatherMetric numeric weather metric
+     * @return maximum of the metric, negative infinity if there is no record
+     * @throws IllegalArgumentException if the metric is not provided
+     */
+    public double getMax(WeatherMetric weatherMetric) {
+        return max[checkProvided(weatherMetric)];
+    }
+
+    /**
+     * @param weatherMetric numeric weather metric
+     * @return population variance of the metric, NaN if there is no record
+     * @throws IllegalArgumentException if the metric is not provided
+     */
+    public double getVariance(WeatherMetric weatherMetric) {
+        return m2[checkProvided(weatherMetric)] / count;
+    }
+
+    /**
+     * @param weatherState weather state
+     * @return number of records in this weather state
+     * @throws IllegalStateException if weather state is not provided
+     */
+    public int getStateCount(WeatherState weatherState) {
+        checkStateProvided();
+        return stateCount[weatherState.ordinal()];
+    }
+
+    /**
+     * Get the rate of records whose weather state description contains a keyword (case insensitive)
+     *
+     * @param keyword keyword of the weather state, e.g. "rain"
+     * @return rate in [0, 1], NaN if there is no record
+     * @throws IllegalStateException if weather state is not provided
+     */
+    public double getStateRate(String keyword) {
+        checkStateProvided();
+        String lowerKeyword = keyword.toLowerCase();
+        int cnt = 0;
+        for(WeatherState weatherState: STATES) {
+            if(weatherState.getDescription().toLowerCase().contains(lowerKeyword)) {
+                cnt += stateCount[weatherState.ordinal()];
+            }
+        }
+        return cnt / (double) count;
+    }
+
+    private int checkProvided(WeatherMetric weatherMetric) {
+        if(!metricProvided[weatherMetric.ordinal()]) {
+            throw new IllegalArgumentException("Metric data not provided " + weatherMetric.getDescription());
+        }
+        return weatherMetric.ordinal();
+    }
+
+    private void checkStateProvided() {
+        if(stateCount == null) {
+            throw new IllegalStateException("Metric data not provided " + WeatherMetric.WEATHERSTATE.getDescription());
+        }
+    }
+
+    /**
+     * @return string info of the summary
+     */
+    @Override
+    public String toString() {
+        return "WeatherDataSummary{" +
+            "count=" + count +
+            '}';
+    }
+}
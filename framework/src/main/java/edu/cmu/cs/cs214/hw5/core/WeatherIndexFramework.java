@@ -1,10 +1,19 @@
 package edu.cmu.cs.cs214.hw5.core;
 
 import javax.swing.*;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Framework that handles loading data from data plugin, process and generate weather index and display
@@ -21,6 +30,14 @@ public class WeatherIndexFramework implements WeatherIndexFrameworkData, Weather
     private List<InputEntry> dataInputEntries;
     private List<InputEntry> displayInputEntries;
     private List<ProcessedWeatherData> processedWeatherDataList;
+    private volatile WeatherIndexProcessor indexProcessor;
+    /* number of loads using each index processor, a replaced processor is shut down once no load uses it */
+    private final Map<WeatherIndexProcessor, Integer> indexProcessorUsers = new IdentityHashMap<>();
+    private volatile PipelineMetrics metrics = PipelineMetrics.shared();
+    /* listener of the load running on each thread, warnings of the data plugin are reported to it */
+    private final ThreadLocal<ProgressListener> loadListener = new ThreadLocal<>();
+    /* runs processDataAsync and generateGraphAsync, one job at a time */
+    private final ExecutorService pipelineExecutor;
 
     /**
      * Constructs a framework object.
@@ -28,6 +45,48 @@ public class WeatherIndexFramework implements WeatherIndexFrameworkData, Weather
     public WeatherIndexFramework() {
         isDataPluginLoaded = false;
         isDisplayPluginSelected = false;
+        indexProcessor = new WeatherIndexProcessor();
+        pipelineExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("weather-pipeline"));
+    }
+
+    /**
+     * Set the maximum number of threads used to generate the weather indices of the loaded cities.
+     * @param parallelism maximum number of threads, 1 to generate indices on the calling thread.
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public synchronized void setIndexParallelism(int parallelism) {
+        WeatherIndexProcessor oldProcessor = indexProcessor;
+        if(parallelism != oldProcessor.getParallelism()) {
+            indexProcessor = new WeatherIndexProcessor(parallelism);
+            /* loads already started keep the old processor, it is shut down once they are done */
+            if(!indexProcessorUsers.containsKey(oldProcessor)) {
+                oldProcessor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Get the maximum number of threads used to generate the weather indices.
+     * @return maximum number of threads
+     */
+    public int getIndexParallelism() {
+        return indexProcessor.getParallelism();
+    }
+
+    /**
+     * Set the metrics the stages of the pipeline are recorded in.
+     * @param metrics metrics to record in, PipelineMetrics.shared() by default.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the metrics the stages of the pipeline are recorded in.
+     * @return metrics of the pipeline
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -42,7 +101,7 @@ public class WeatherIndexFramework implements WeatherIndexFrameworkData, Weather
      * Set the data plugin.
      * @param plugin selected data plugin.
      */
-    public void setCurrentDataPlugin(DataPlugin plugin) {
+    public synchronized void setCurrentDataPlugin(DataPlugin plugin) {
         if(currentDataPlugin != plugin){
             isDataPluginLoaded = false;
         }
@@ -53,11 +112,11 @@ public class WeatherIndexFramework implements WeatherIndexFrameworkData, Weather
      * Set the display plugin
      * @param plugin selected display plugin.
      */
-    public void setCurrentDisplayPlugin(DisplayPlugin plugin) {
+    public synchronized void setCurrentDisplayPlugin(DisplayPlugin plugin) {
         currentDisplayPlugin = plugin;
         isDisplayPluginSelected = true;
         if(isDataPluginLoaded){
-            currentDisplayPlugin.readData(processedWeatherDataList);
+            readData(currentDisplayPlugin, processedWeatherDataList);
         }
     }
 
@@ -67,28 +126,295 @@ public class WeatherIndexFramework implements WeatherIndexFrameworkData, Weather
      * @throws IllegalStateException
      */
     public void processData() throws IllegalArgumentException, IllegalStateException {
-        cityWeatherDataList = currentDataPlugin.loadData(dataInputEntries);
+        DataPlugin dataPlugin;
+        List<InputEntry> inputEntries;
+        WeatherIndexProcessor processor;
+        synchronized (this) {
+            dataPlugin = currentDataPlugin;
+            inputEntries = dataInputEntries;
+            processor = acquireIndexProcessor();
+        }
+        List<ProcessedWeatherData> processedData;
+        try {
+            processedData = loadAndProcess(dataPlugin, inputEntries, processor, new ProgressListener() { });
+        } finally {
+            releaseIndexProcessor(processor);
+        }
+        commitProcessedData(dataPlugin, processedData);
+    }
+
+    /**
+     * Load data from data plugin and generate weather indices in the background, so the caller (e.g. the GUI)
+     * is not blocked. Cancelling the returned future with cancel(true) interrupts loading and stops index
+     * generation, a cancelled load leaves the previously loaded data unchanged.
+     * @param progressListener listener notified of the progress, called from background threads.
+     * @return future of the processed data, completed exceptionally with the IllegalArgumentException or
+     * IllegalStateException that processData would throw.
+     */
+    public CompletableFuture<List<ProcessedWeatherData>> processDataAsync(ProgressListener progressListener) {
+        DataPlugin dataPlugin;
+        List<InputEntry> inputEntries;
+        WeatherIndexProcessor processor;
+        synchronized (this) {
+            dataPlugin = currentDataPlugin;
+            inputEntries = dataInputEntries;
+            processor = acquireIndexProcessor();
+        }
+        return runInBackground(() -> loadAndProcess(dataPlugin, inputEntries, processor, progressListener),
+            processedData -> commitProcessedData(dataPlugin, processedData), () -> releaseIndexProcessor(processor));
+    }
+
+    /**
+     * Get the current index processor, which is not shut down until it is released
+     */
+    private synchronized WeatherIndexProcessor acquireIndexProcessor() {
+        indexProcessorUsers.merge(indexProcessor, 1, Integer::sum);
+        return indexProcessor;
+    }
+
+    /**
+     * Release an index processor, shutting it down if it was replaced and this was its last user
+     */
+    private synchronized void releaseIndexProcessor(WeatherIndexProcessor processor) {
+        if(indexProcessorUsers.merge(processor, -1, Integer::sum) > 0) {
+            return;
+        }
+        indexProcessorUsers.remove(processor);
+        if(processor != indexProcessor) {
+            processor.shutdown();
+        }
+    }
+
+    private List<ProcessedWeatherData> loadAndProcess(DataPlugin dataPlugin, List<InputEntry> inputEntries,
+                                                      WeatherIndexProcessor processor,
+                                                      ProgressListener progressListener) {
+        loadListener.set(progressListener);
+        try {
+            return WeatherIndexPipeline.loadAndProcess(dataPlugin, inputEntries, processor, metrics,
+                progressListener);
+        } finally {
+            loadListener.remove();
+        }
+    }
+
+    /**
+     * Report a problem of the data plugin that does not fail the load to the progress listener of the load
+     * running on the calling thread, ignored if no load is running on it.
+     * @param message description of the problem
+     */
+    public void reportWarning(String message) {
+        ProgressListener progressListener = loadListener.get();
+        if(progressListener != null) {
+            progressListener.onWarning(message);
+        }
+    }
+
+    private static long countRecords(List<ProcessedWeatherData> processedData) {
+        long recordCnt = 0;
+        if(processedData != null) {
+            for(ProcessedWeatherData processedWeatherData: processedData) {
+                recordCnt += processedWeatherData.getRawWeatherData().getRecordCount();
+            }
+        }
+        return recordCnt;
+    }
 
-        /* process data and generate index */
-        processedWeatherDataList = new ArrayList<>();
-        for(RawWeatherData rawWeatherData: cityWeatherDataList) {
-            WeatherIndexGenerator indexGenerator = new WeatherIndexGenerator(rawWeatherData);
-            Map<WeatherIndexType, Double> indexValMap = indexGenerator.generate();
-            processedWeatherDataList.add(new ProcessedWeatherData(rawWeatherData, indexValMap));
+    private void readData(DisplayPlugin displayPlugin, List<ProcessedWeatherData> processedData) {
+        PipelineMetrics pipelineMetrics = metrics;
+        PipelineEvents.ReadData event = new PipelineEvents.ReadData();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            displayPlugin.readData(processedData);
+        } catch (RuntimeException e) {
+            pipelineMetrics.recordError(PipelineMetrics.Stage.READ_DATA, displayPlugin.getName());
+            event.end();
+            event.commitProcessed(displayPlugin.getName(), processedData, true);
+            throw e;
         }
+        event.end();
+        event.commitProcessed(displayPlugin.getName(), processedData, false);
+        pipelineMetrics.recordStage(PipelineMetrics.Stage.READ_DATA, System.nanoTime() - start,
+            countRecords(processedData));
+    }
+
+    /**
+     * Generate a graph, recording its duration and errors
+     * @param generate generates the panel of the display plugin from the processed data
+     */
+    private JPanel generateGraph(DisplayPlugin displayPlugin, List<ProcessedWeatherData> processedData,
+                                 Supplier<JPanel> generate) {
+        PipelineMetrics pipelineMetrics = metrics;
+        PipelineEvents.GenerateGraph event = new PipelineEvents.GenerateGraph();
+        event.begin();
+        long start = System.nanoTime();
+        JPanel panel;
+        try {
+            panel = generate.get();
+        } catch (RuntimeException e) {
+            pipelineMetrics.recordError(PipelineMetrics.Stage.GENERATE_GRAPH, displayPlugin.getName());
+            event.end();
+            event.commitProcessed(displayPlugin.getName(), processedData, true);
+            throw e;
+        }
+        event.end();
+        event.commitProcessed(displayPlugin.getName(), processedData, false);
+        pipelineMetrics.recordStage(PipelineMetrics.Stage.GENERATE_GRAPH, System.nanoTime() - start,
+            countRecords(processedData));
+        return panel;
+    }
+
+    /**
+     * Keep the processed data of a data plugin, unless another data plugin was selected while it was loaded
+     */
+    private synchronized void commitProcessedData(DataPlugin dataPlugin, List<ProcessedWeatherData> processedData) {
+        if(dataPlugin != currentDataPlugin) {
+            return;
+        }
+        cityWeatherDataList = new ArrayList<>();
+        for(ProcessedWeatherData processedWeatherData: processedData) {
+            cityWeatherDataList.add(processedWeatherData.getRawWeatherData());
+        }
+        processedWeatherDataList = processedData;
 
         isDataPluginLoaded = true;
         if (isDisplayPluginSelected) {
-            currentDisplayPlugin.readData(processedWeatherDataList);
+            DisplayPlugin displayPlugin = currentDisplayPlugin;
+            /* display plugins are called on the event dispatch thread, after the data is loaded in the background */
+            if(SwingUtilities.isEventDispatchThread()) {
+                readData(displayPlugin, processedData);
+            } else {
+                SwingUtilities.invokeLater(() -> readData(displayPlugin, processedData));
+            }
         }
     }
 
     /**
-     * Generate the graph given by display plugin.
+     * Generate the graph given by display plugin, to be called on the event dispatch thread.
      * @return panel showing the graph.
      */
     public JPanel generateGraph() {
-        return currentDisplayPlugin.generateGraph(displayInputEntries, processedWeatherDataList);
+        DisplayPlugin displayPlugin = currentDisplayPlugin;
+        List<InputEntry> inputEntries = displayInputEntries;
+        List<ProcessedWeatherData> data = processedWeatherDataList;
+        return generateGraph(displayPlugin, data, () -> displayPlugin.generateGraph(inputEntries, data));
+    }
+
+    /**
+     * Generate the graph given by display plugin in the background. The display plugin prepares the graph
+     * (see DisplayPlugin.prepareGraph) in the background, and its panel is created on the event dispatch thread.
+     * @return future of the panel showing the graph, completed exceptionally with the IllegalArgumentException
+     * or IllegalStateException that generateGraph would throw.
+     */
+    public CompletableFuture<JPanel> generateGraphAsync() {
+        DisplayPlugin displayPlugin;
+        List<InputEntry> inputEntries;
+        List<ProcessedWeatherData> data;
+        synchronized (this) {
+            displayPlugin = currentDisplayPlugin;
+            inputEntries = displayInputEntries;
+            data = processedWeatherDataList;
+        }
+        return runInBackground(() -> generateGraph(displayPlugin, data,
+            () -> onEventDispatchThread(displayPlugin.prepareGraph(inputEntries, data))), panel -> { }, () -> { });
+    }
+
+    /**
+     * Call a supplier on the event dispatch thread and wait for its result.
+     * @throws CancellationException if the calling thread is interrupted while waiting
+     */
+    private static <T> T onEventDispatchThread(Supplier<T> supplier) {
+        if(SwingUtilities.isEventDispatchThread()) {
+            return supplier.get();
+        }
+        AtomicReference<T> result = new AtomicReference<>();
+        try {
+            SwingUtilities.invokeAndWait(() -> result.set(supplier.get()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Graph generation cancelled");
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        return result.get();
+    }
+
+    /**
+     * Get a future completed once the background jobs submitted so far have finished. A cancelled job's future
+     * completes at once, while the job may still be running until it notices the interrupt.
+     * @return future completed once the pipeline is idle
+     */
+    public CompletableFuture<Void> whenIdle() {
+        return CompletableFuture.runAsync(() -> { }, pipelineExecutor);
+    }
+
+    /**
+     * Run a job on the pipeline executor
+     * @param commit called with the result of the job unless it was cancelled
+     * @param onFinish called once the job is finished, or skipped because it was cancelled before it started
+     */
+    private <T> CompletableFuture<T> runInBackground(Supplier<T> job, Consumer<T> commit, Runnable onFinish) {
+        BackgroundTask<T> task = new BackgroundTask<>();
+        pipelineExecutor.execute(() -> {
+            try {
+                task.run(job, commit);
+            } finally {
+                onFinish.run();
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Future of a background job, cancelling it interrupts the job. The result is committed only if the
+     * future was not cancelled.
+     */
+    private static class BackgroundTask<T> extends CompletableFuture<T> {
+        /* thread running the job, null if it is not running */
+        private Thread runner;
+
+        private void run(Supplier<T> job, Consumer<T> commit) {
+            synchronized (this) {
+                if(isDone()) {
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            T result;
+            try {
+                result = job.get();
+            } catch (Throwable e) {
+                completeExceptionally(e);
+                return;
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                /* an interrupt of a cancel that came too late must not hit the next job */
+                Thread.interrupted();
+            }
+            synchronized (this) {
+                if(!isDone()) {
+                    commit.accept(result);
+                    complete(result);
+                }
+            }
+        }
+
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if(cancelled && mayInterruptIfRunning && runner != null) {
+                runner.interrupt();
+            }
+            return cancelled;
+        }
     }
 
     /**
@@ -131,7 +457,7 @@ public class WeatherIndexFramework implements WeatherIndexFrameworkData, Weather
      * Get whether the data plugin loaded data.
      * @return true if the data plugin already loaded data.
      */
-    public boolean isDataPluginLoaded() {
+    public synchronized boolean isDataPluginLoaded() {
         return isDataPluginLoaded;
     }
 
@@ -139,7 +465,7 @@ public class WeatherIndexFramework implements WeatherIndexFrameworkData, Weather
      * Get whether the display plugin is selected.
      * @return true if display plugin is selected.
      */
-    public boolean isDisplayPluginSelected() {
+    public synchronized boolean isDisplayPluginSelected() {
         return isDisplayPluginSelected;
     }
 
@@ -17,4 +17,20 @@ public interface WeatherIndexFrameworkData {
      * @return list of input entries
      */
     List<InputEntry> getDataInputEntries();
+
+    /**
+     * Get the metrics the plugin records in, e.g. the bytes it ingests
+     * @return metrics of the pipeline, PipelineMetrics.shared() by default
+     */
+    default PipelineMetrics getMetrics() {
+        return PipelineMetrics.shared();
+    }
+
+    /**
+     * Report a problem that does not fail the load, e.g. a city the plugin left out of the data it returns.
+     * To be called from loadData, on the thread it is called on.
+     * @param message description of the problem
+     */
+    default void reportWarning(String message) {
+    }
 }
@@ -1,10 +1,10 @@
 package edu.cmu.cs.cs214.hw5.core;
 
-import java.time.OffsetDateTime;
 import java.util.*;
 
 /**
- * Generate various weather indices
+ * Generate various weather indices. All indices are evaluated from one WeatherDataSummary, so the records
+ * are only scanned once.
  */
 public class WeatherIndexGenerator {
     private RawWeatherData rawWeatherData;
@@ -35,24 +35,6 @@ public class WeatherIndexGenerator {
         return new HashMap<>(indexValMap);
     }
 
-    private double sum(List<Double> vals) {
-       return vals.stream().mapToDouble(Double::doubleValue).sum();
-    }
-
-    private double avg(List<Double> vals) {
-        return sum(vals) / vals.size();
-    }
-
-    private double vairance(List<Double> vals) {
-        double variance = 0;
-        double avg = avg(vals);
-        for (double val: vals) {
-            variance += (val - avg) * (val - avg);
-        }
-        variance /= vals.size();
-        return variance;
-    }
-
     private double scoreLRBound(double val, double range, double best) {
         double diff = Math.abs(val - best);
         /* between [0, 1] */
@@ -84,95 +66,44 @@ public class WeatherIndexGenerator {
     }
 
 
-    private double getRate(List<WeatherState> weatherStates, String keyword) {
-        int cnt = 0;
-
-        for(WeatherState weatherState: weatherStates) {
-            if(weatherState.getDescription().toLowerCase().contains(keyword.toLowerCase())) {
-                cnt++;
-            }
-        }
-        return cnt / (double)weatherStates.size();
-    }
-
-    private List<Double> extractValList(SortedMap<OffsetDateTime, Double> sortedMap) {
-        List<Double> res = new ArrayList<>();
-        for(Map.Entry<OffsetDateTime, Double> entry: sortedMap.entrySet()) {
-            res.add(entry.getValue());
-        }
-        return res;
-    }
-
-    private List<WeatherState> extractStateList(SortedMap<OffsetDateTime, WeatherState> stateMap) {
-        List<WeatherState> res = new ArrayList<>();
-        for(Map.Entry<OffsetDateTime, WeatherState> entry: stateMap.entrySet()) {
-            res.add(entry.getValue());
-        }
-        return res;
-    }
-
     private void calculateIndex() {
-        List<Double> temperatures = null;
-        List<Double> windSpeeds = null;
-        List<Double> rainProbabilities = null;
-        List<Double> visibilities = null;
-        List<WeatherState> weatherStates = null;
-
-        if(rawWeatherData.metricProvided(WeatherMetric.TEMPERATURE)) {
-            temperatures = extractValList(rawWeatherData.getMetric(WeatherMetric.TEMPERATURE));
-        }
-
-        if(rawWeatherData.metricProvided(WeatherMetric.WINDSPEED)) {
-            windSpeeds = extractValList(rawWeatherData.getMetric(WeatherMetric.WINDSPEED));
-        }
-
-        if(rawWeatherData.metricProvided(WeatherMetric.RAINPROBABILITY)) {
-            rainProbabilities = extractValList(rawWeatherData.getMetric(WeatherMetric.RAINPROBABILITY));
-        }
-
-        if(rawWeatherData.metricProvided(WeatherMetric.VISIBILITY)) {
-            visibilities = extractValList(rawWeatherData.getMetric(WeatherMetric.VISIBILITY));
-        }
-
-        if(rawWeatherData.metricProvided(WeatherMetric.WEATHERSTATE)) {
-            weatherStates = extractStateList(rawWeatherData.getWeatherState());
-        }
-
-        setSportIndex(temperatures, windSpeeds, rainProbabilities, visibilities);
-        setHeatIndex(temperatures, weatherStates);
-        setCarWashIndex(rainProbabilities, weatherStates);
-        setIllnessIndex(temperatures);
-        setClothingIndex(temperatures);
-        setSkyDivingIndex(temperatures, windSpeeds, rainProbabilities, visibilities);
-        setFishingIndex(temperatures, rainProbabilities, weatherStates);
-        setBoatingIndex(temperatures, windSpeeds);
+        WeatherDataSummary summary = new WeatherDataSummary(rawWeatherData);
+
+        setSportIndex(summary);
+        setHeatIndex(summary);
+        setCarWashIndex(summary);
+        setIllnessIndex(summary);
+        setClothingIndex(summary);
+        setSkyDivingIndex(summary);
+        setFishingIndex(summary);
+        setBoatingIndex(summary);
         setGameIndex();
     }
 
-    private void setSportIndex(List<Double> temperatures, List<Double> windSpeeds, List<Double> rainProbabilities, List<Double> visibilities) {
+    private void setSportIndex(WeatherDataSummary summary) {
         double tempScore = 0;
         double windSpeedScore = 0;
         double rainScore = 0;
         double visibilityScore = 0;
         int validMetricCnt = 0;
 
-        if(temperatures != null) {
-            tempScore = scoreLRBound(avg(temperatures), 25, 70);
+        if(summary.metricProvided(WeatherMetric.TEMPERATURE)) {
+            tempScore = scoreLRBound(summary.getAverage(WeatherMetric.TEMPERATURE), 25, 70);
             validMetricCnt++;
         }
 
-        if(windSpeeds != null) {
-            windSpeedScore = scoreRightBound(avg(windSpeeds), 10, 7);
+        if(summary.metricProvided(WeatherMetric.WINDSPEED)) {
+            windSpeedScore = scoreRightBound(summary.getAverage(WeatherMetric.WINDSPEED), 10, 7);
             validMetricCnt++;
         }
 
-        if(rainProbabilities != null) {
-            rainScore = scoreRightBound(avg(rainProbabilities), 30, 50);
+        if(summary.metricProvided(WeatherMetric.RAINPROBABILITY)) {
+            rainScore = scoreRightBound(summary.getAverage(WeatherMetric.RAINPROBABILITY), 30, 50);
             validMetricCnt++;
         }
 
-        if(visibilities != null) {
-            visibilityScore = scoreLeftBound(avg(visibilities), 4, 5);
+        if(summary.metricProvided(WeatherMetric.VISIBILITY)) {
+            visibilityScore = scoreLeftBound(summary.getAverage(WeatherMetric.VISIBILITY), 4, 5);
             validMetricCnt++;
         }
 
@@ -182,29 +113,29 @@ public class WeatherIndexGenerator {
         }
     }
 
-    private void setHeatIndex(List<Double> temperatures, List<WeatherState> weatherStates) {
-        if(temperatures != null) {
+    private void setHeatIndex(WeatherDataSummary summary) {
+        if(summary.metricProvided(WeatherMetric.TEMPERATURE)) {
             double factor = 1;
-            double tempScore = 1 - scoreRightBound(avg(temperatures), 25, 70);
-            if(weatherStates != null) {
-                factor = getRate(weatherStates, "sunny");
+            double tempScore = 1 - scoreRightBound(summary.getAverage(WeatherMetric.TEMPERATURE), 25, 70);
+            if(summary.weatherStateProvided()) {
+                factor = summary.getStateRate("sunny");
             }
             indexValMap.put(WeatherIndexType.HEATINDEX, factor * tempScore * 10);
         }
     }
 
-    private void setCarWashIndex(List<Double> rainProbabilities, List<WeatherState> weatherStates) {
+    private void setCarWashIndex(WeatherDataSummary summary) {
         double rainScore = 0;
         double stateScore = 0;
         int validMetricCnt = 0;
 
-        if(rainProbabilities != null) {
-            rainScore = scoreRightBound(avg(rainProbabilities), 30, 50);
+        if(summary.metricProvided(WeatherMetric.RAINPROBABILITY)) {
+            rainScore = scoreRightBound(summary.getAverage(WeatherMetric.RAINPROBABILITY), 30, 50);
             validMetricCnt++;
         }
 
-        if(weatherStates != null) {
-            stateScore = getRate(weatherStates, "rain");
+        if(summary.weatherStateProvided()) {
+            stateScore = summary.getStateRate("rain");
             validMetricCnt++;
         }
 
@@ -214,44 +145,44 @@ public class WeatherIndexGenerator {
         }
     }
 
-    private void setIllnessIndex(List<Double> temperatures) {
-        if(temperatures != null) {
-            double tempScore = 1 - scoreLRBound(avg(temperatures), 50, 70);
+    private void setIllnessIndex(WeatherDataSummary summary) {
+        if(summary.metricProvided(WeatherMetric.TEMPERATURE)) {
+            double tempScore = 1 - scoreLRBound(summary.getAverage(WeatherMetric.TEMPERATURE), 50, 70);
             indexValMap.put(WeatherIndexType.ILLNESSINDEX, tempScore * 10);
         }
     }
 
-    private void setClothingIndex(List<Double> temperatures) {
-        if(temperatures != null) {
-            double tempScore = scoreRightBound(avg(temperatures), 50, 30);
+    private void setClothingIndex(WeatherDataSummary summary) {
+        if(summary.metricProvided(WeatherMetric.TEMPERATURE)) {
+            double tempScore = scoreRightBound(summary.getAverage(WeatherMetric.TEMPERATURE), 50, 30);
             indexValMap.put(WeatherIndexType.CLOTHINGINDEX, tempScore * 10);
         }
     }
 
-    private void setSkyDivingIndex(List<Double> temperatures, List<Double> windSpeeds, List<Double> rainProbabilities, List<Double> visibilities) {
+    private void setSkyDivingIndex(WeatherDataSummary summary) {
         double tempScore = 0;
         double windSpeedScore = 0;
         double rainScore = 0;
         double visibilityScore = 0;
         int validMetricCnt = 0;
 
-        if(temperatures != null) {
-            tempScore = scoreLRBound(avg(temperatures), 30, 65);
+        if(summary.metricProvided(WeatherMetric.TEMPERATURE)) {
+            tempScore = scoreLRBound(summary.getAverage(WeatherMetric.TEMPERATURE), 30, 65);
             validMetricCnt++;
         }
 
-        if(windSpeeds != null) {
-            windSpeedScore = scoreLRBound(avg(windSpeeds), 5, 10);
+        if(summary.metricProvided(WeatherMetric.WINDSPEED)) {
+            windSpeedScore = scoreLRBound(summary.getAverage(WeatherMetric.WINDSPEED), 5, 10);
             validMetricCnt++;
         }
 
-        if(rainProbabilities != null) {
-            rainScore = scoreRightBound(avg(rainProbabilities), 30, 40);
+        if(summary.metricProvided(WeatherMetric.RAINPROBABILITY)) {
+            rainScore = scoreRightBound(summary.getAverage(WeatherMetric.RAINPROBABILITY), 30, 40);
             validMetricCnt++;
         }
 
-        if(visibilities != null) {
-            visibilityScore = scoreLeftBound(avg(visibilities), 3, 8);
+        if(summary.metricProvided(WeatherMetric.VISIBILITY)) {
+            visibilityScore = scoreLeftBound(summary.getAverage(WeatherMetric.VISIBILITY), 3, 8);
             validMetricCnt++;
         }
 
@@ -261,24 +192,24 @@ public class WeatherIndexGenerator {
         }
     }
 
-    private void setFishingIndex(List<Double> temperatures, List<Double> rainProbabilities, List<WeatherState> weatherStates) {
+    private void setFishingIndex(WeatherDataSummary summary) {
         double tempScore = 0;
         double rainScore = 0;
         double stateScore = 0;
         int validMetricCnt = 0;
 
-        if(temperatures != null) {
-            tempScore = scoreLRBound(avg(temperatures), 20, 65);
+        if(summary.metricProvided(WeatherMetric.TEMPERATURE)) {
+            tempScore = scoreLRBound(summary.getAverage(WeatherMetric.TEMPERATURE), 20, 65);
             validMetricCnt++;
         }
 
-        if(rainProbabilities != null) {
-            rainScore = scoreRightBound(avg(rainProbabilities), 30, 50);
+        if(summary.metricProvided(WeatherMetric.RAINPROBABILITY)) {
+            rainScore = scoreRightBound(summary.getAverage(WeatherMetric.RAINPROBABILITY), 30, 50);
             validMetricCnt++;
         }
 
-        if(weatherStates != null) {
-            stateScore = getRate(weatherStates, "cloud");
+        if(summary.weatherStateProvided()) {
+            stateScore = summary.getStateRate("cloud");
             validMetricCnt++;
         }
 
@@ -288,18 +219,18 @@ public class WeatherIndexGenerator {
         }
     }
 
-    private void setBoatingIndex(List<Double> temperatures, List<Double> windSpeeds) {
+    private void setBoatingIndex(WeatherDataSummary summary) {
         double tempScore = 0;
         double windSpeedScore = 0;
         int validMetricCnt = 0;
 
-        if(temperatures != null) {
-            tempScore = scoreLRBound(avg(temperatures), 30, 65);
+        if(summary.metricProvided(WeatherMetric.TEMPERATURE)) {
+            tempScore = scoreLRBound(summary.getAverage(WeatherMetric.TEMPERATURE), 30, 65);
             validMetricCnt++;
         }
 
-        if(windSpeeds != null) {
-            windSpeedScore = scoreRightBound(avg(windSpeeds), 7, 5);
+        if(summary.metricProvided(WeatherMetric.WINDSPEED)) {
+            windSpeedScore = scoreRightBound(summary.getAverage(WeatherMetric.WINDSPEED), 7, 5);
             validMetricCnt++;
         }
 
@@ -0,0 +1,67 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Headless part of the framework pipeline: loads data from a data plugin and generates the weather indices of the
+ * loaded cities, recording both stages in PipelineMetrics. Used by WeatherIndexFramework and by batch jobs that
+ * must not load any GUI class.
+ */
+public final class WeatherIndexPipeline {
+    private WeatherIndexPipeline() {
+    }
+
+    /**
+     * Load data from a data plugin and generate the weather indices of the loaded cities.
+     *
+     * @param dataPlugin plugin to load from
+     * @param inputEntries input entries of the plugin with the user input set
+     * @param indexProcessor processor generating the indices
+     * @param metrics metrics to record the stages in
+     * @param progressListener listener notified of the progress, may be called from background threads
+     * @return processed data of the loaded cities
+     * @throws IllegalArgumentException if any user input is invalid
+     * @throws IllegalStateException if any internal error happens during loading or processing data
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public static List<ProcessedWeatherData> loadAndProcess(DataPlugin dataPlugin, List<InputEntry> inputEntries,
+                                                            WeatherIndexProcessor indexProcessor,
+                                                            PipelineMetrics metrics,
+                                                            ProgressListener progressListener) {
+        long start = System.nanoTime();
+        List<RawWeatherData> rawWeatherDataList;
+        try {
+            /* identical loads running at the same time (e.g. from other frameworks) share one plugin call */
+            rawWeatherDataList = SingleFlightDataLoader.shared().load(dataPlugin, inputEntries);
+        } catch (CancellationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.recordError(PipelineMetrics.Stage.LOAD_DATA, dataPlugin.getName());
+            throw e;
+        }
+        if(Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Loading data cancelled");
+        }
+        long recordCnt = 0;
+        for(RawWeatherData rawWeatherData: rawWeatherDataList) {
+            recordCnt += rawWeatherData.getRecordCount();
+        }
+        metrics.recordStage(PipelineMetrics.Stage.LOAD_DATA, System.nanoTime() - start, recordCnt);
+        progressListener.onDataLoaded(rawWeatherDataList.size(), recordCnt);
+
+        /* process data and generate index, cities are processed in parallel */
+        start = System.nanoTime();
+        List<ProcessedWeatherData> processedData;
+        try {
+            processedData = indexProcessor.process(rawWeatherDataList, progressListener, dataPlugin.getName());
+        } catch (CancellationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.recordError(PipelineMetrics.Stage.GENERATE_INDEX, dataPlugin.getName());
+            throw e;
+        }
+        metrics.recordStage(PipelineMetrics.Stage.GENERATE_INDEX, System.nanoTime() - start, recordCnt);
+        return processedData;
+    }
+}
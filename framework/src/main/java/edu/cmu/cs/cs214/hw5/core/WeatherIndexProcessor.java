@@ -0,0 +1,213 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the weather indices of many cities, using up to a fixed number of threads.
+ * The output is in the same order as the input, and if any city fails the error of the first failing city
+ * (in input order) is thrown, the same as processing the cities one by one.
+ */
+public class WeatherIndexProcessor {
+    /* default parallelism, can be set with -Dweatherindex.parallelism=N */
+    private static final int DEFAULT_PARALLELISM = Integer.getInteger("weatherindex.parallelism",
+        Runtime.getRuntime().availableProcessors());
+    private static final long IDLE_THREAD_KEEP_ALIVE_SEC = 30;
+    private static final ThreadFactory THREAD_FACTORY = new DaemonThreadFactory("weather-index");
+
+    private final int parallelism;
+    /* null if parallelism is 1 */
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a processor with the default parallelism (number of processors, or the
+     * weatherindex.parallelism system property)
+     */
+    public WeatherIndexProcessor() {
+        this(DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param parallelism maximum number of threads used to generate indices, 1 to process on the calling thread
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public WeatherIndexProcessor(int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+        this.parallelism = parallelism;
+        if(parallelism == 1) {
+            executor = null;
+        } else {
+            /* the calling thread works as well, so parallelism - 1 pooled threads */
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism - 1, parallelism - 1,
+                IDLE_THREAD_KEEP_ALIVE_SEC, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), THREAD_FACTORY);
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+    }
+
+    /**
+     * @return maximum number of threads used to generate indices
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Generate indices for all cities
+     *
+     * @param cityWeatherDataList raw weather data of the cities
+     * @return processed data, in the same order as cityWeatherDataList
+     * @throws IllegalArgumentException if the index generation of a city throws it
+     * @throws IllegalStateException if the index generation of a city throws it
+     */
+    public List<ProcessedWeatherData> process(List<RawWeatherData> cityWeatherDataList)
+        throws IllegalArgumentException, IllegalStateException {
+        return process(cityWeatherDataList, new ProgressListener() { });
+    }
+
+    /**
+     * Generate indices for all cities, reporting progress after each city. Processing stops early if the
+     * calling thread is interrupted.
+     *
+     * @param cityWeatherDataList raw weather data of the cities
+     * @param progressListener listener notified after each city, called from the processing threads
+     * @return processed data, in the same order as cityWeatherDataList
+     * @throws IllegalArgumentException if the index generation of a city throws it
+     * @throws IllegalStateException if the index generation of a city throws it
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public List<ProcessedWeatherData> process(List<RawWeatherData> cityWeatherDataList, ProgressListener progressListener)
+        throws IllegalArgumentException, IllegalStateException, CancellationException {
+        return process(cityWeatherDataList, progressListener, null);
+    }
+
+    /**
+     * Generate indices for all cities, as process(cityWeatherDataList, progressListener), naming the data plugin
+     * that loaded the data in the GenerateIndex flight recorder events.
+     *
+     * @param cityWeatherDataList raw weather data of the cities
+     * @param progressListener listener notified after each city, called from the processing threads
+     * @param dataPluginName name of the data plugin that loaded the data, may be null
+     * @return processed data, in the same order as cityWeatherDataList
+     * @throws IllegalArgumentException if the index generation of a city throws it
+     * @throws IllegalStateException if the index generation of a city throws it
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public List<ProcessedWeatherData> process(List<RawWeatherData> cityWeatherDataList,
+                                              ProgressListener progressListener, String dataPluginName)
+        throws IllegalArgumentException, IllegalStateException, CancellationException {
+        Thread caller = Thread.currentThread();
+        RawWeatherData[] cities = cityWeatherDataList.toArray(new RawWeatherData[0]);
+        ProcessedWeatherData[] results = new ProcessedWeatherData[cities.length];
+        Throwable[] errors = new Throwable[cities.length];
+        AtomicInteger nextCity = new AtomicInteger();
+        AtomicInteger processedCnt = new AtomicInteger();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Runnable worker = () -> {
+            int i;
+            while(!cancelled.get() && !caller.isInterrupted() && (i = nextCity.getAndIncrement()) < cities.length) {
+                try {
+                    results[i] = processCity(cities[i], dataPluginName);
+                    progressListener.onCityProcessed(processedCnt.incrementAndGet(), cities.length);
+                } catch (RuntimeException | Error e) {
+                    errors[i] = e;
+                }
+            }
+        };
+
+        int workerCnt = Math.min(parallelism, cities.length);
+        List<Future<?>> futures = new ArrayList<>();
+        for(int i=1; i<workerCnt; i++) {
+            futures.add(executor.submit(worker));
+        }
+        worker.run();
+        awaitAll(futures, cancelled);
+        if(caller.isInterrupted()) {
+            throw new CancellationException("Index generation cancelled");
+        }
+
+        for(Throwable error: errors) {
+            if(error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if(error != null) {
+                throw (Error) error;
+            }
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * Release the threads of this processor, it can not process data after being shut down
+     */
+    public void shutdown() {
+        if(executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private ProcessedWeatherData processCity(RawWeatherData rawWeatherData, String dataPluginName) {
+        PipelineEvents.GenerateIndex event = new PipelineEvents.GenerateIndex();
+        event.begin();
+        boolean failed = true;
+        try {
+            WeatherIndexGenerator indexGenerator = new WeatherIndexGenerator(rawWeatherData);
+            Map<WeatherIndexType, Double> indexValMap = indexGenerator.generate();
+            failed = false;
+            return new ProcessedWeatherData(rawWeatherData, indexValMap);
+        } finally {
+            event.end();
+            if(event.shouldCommit()) {
+                event.city = rawWeatherData.getCityInfo().getCityName();
+                event.commit(dataPluginName, 1, rawWeatherData.getRecordCount(), failed);
+            }
+        }
+    }
+
+    private void awaitAll(List<Future<?>> futures, AtomicBoolean cancelled) {
+        boolean interrupted = false;
+        for(Future<?> future: futures) {
+            while(true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    /* stop the workers, but wait for them so no worker outlives this call */
+                    cancelled.set(true);
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    /* worker catches every error itself */
+                    throw new IllegalStateException("Index generation failed", e.getCause());
+                }
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return string info of the processor
+     */
+    @Override
+    public String toString() {
+        return "WeatherIndexProcessor{" +
+            "parallelism=" + parallelism +
+            '}';
+    }
+}
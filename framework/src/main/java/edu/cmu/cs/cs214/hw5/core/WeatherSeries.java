@@ -0,0 +1,63 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Objects;
+
+/**
+ * Read-only view of a time series of a city, sorted from smaller timestamp to larger timestamp.
+ * A view shares the storage of the RawWeatherData it comes from (heap arrays or a memory mapped file), so creating
+ * one does not copy any data.
+ */
+public abstract class WeatherSeries {
+    private final LongBuffer epochSeconds;
+    private final IntBuffer offsetSeconds;
+    private final int size;
+
+    /**
+     * Constructor
+     *
+     * @param epochSeconds time column (epoch seconds)
+     * @param offsetSeconds zone offset column (seconds)
+     * @param size number of records in the view
+     */
+    WeatherSeries(LongBuffer epochSeconds, IntBuffer offsetSeconds, int size) {
+        this.epochSeconds = epochSeconds;
+        this.offsetSeconds = offsetSeconds;
+        this.size = size;
+    }
+
+    /**
+     * @return number of records in the series
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the timestamp of a record
+     *
+     * @param index index of the record
+     * @return timestamp in seconds since epoch
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public long getEpochSecond(int index) {
+        return epochSeconds.get(Objects.checkIndex(index, size));
+    }
+
+    /**
+     * Get the date time of a record
+     *
+     * @param index index of the record
+     * @return date time of the record
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public OffsetDateTime getDateTime(int index) {
+        Objects.checkIndex(index, size);
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSeconds.get(index)),
+            ZoneOffset.ofTotalSeconds(offsetSeconds.get(index)));
+    }
+}
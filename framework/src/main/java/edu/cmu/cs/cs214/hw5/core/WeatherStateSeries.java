@@ -0,0 +1,50 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Objects;
+
+/**
+ * Read-only view of the weather states of a city
+ */
+public class WeatherStateSeries extends WeatherSeries {
+    private static final WeatherState[] STATES = WeatherState.values();
+
+    private final ByteBuffer stateOrdinals;
+
+    /**
+     * Constructor
+     *
+     * @param epochSeconds time column (epoch seconds)
+     * @param offsetSeconds zone offset column (seconds)
+     * @param stateOrdinals weather state ordinal column
+     * @param size number of records in the view
+     */
+    WeatherStateSeries(LongBuffer epochSeconds, IntBuffer offsetSeconds, ByteBuffer stateOrdinals, int size) {
+        super(epochSeconds, offsetSeconds, size);
+        this.stateOrdinals = stateOrdinals;
+    }
+
+    /**
+     * Get the weather state of a record
+     *
+     * @param index index of the record
+     * @return weather state, null if the record has no weather state
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public WeatherState getState(int index) {
+        byte ordinal = stateOrdinals.get(Objects.checkIndex(index, size()));
+        return ordinal == WeatherStorage.NO_STATE ? null : STATES[ordinal];
+    }
+
+    /**
+     * @return string info of the series
+     */
+    @Override
+    public String toString() {
+        return "WeatherStateSeries{" +
+            "size=" + size() +
+            '}';
+    }
+}
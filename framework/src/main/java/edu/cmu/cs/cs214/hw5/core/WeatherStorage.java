@@ -0,0 +1,103 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.OffsetDateTime;
+
+/**
+ * Storage of the weather records of a city, sorted by time (second precision). Every column is exposed as an nio
+ * buffer, so the series views work the same whether the records are on the heap (WeatherColumns) or in a memory
+ * mapped file (MappedWeatherColumns).
+ */
+abstract class WeatherStorage {
+    /* state ordinal used when a record has no weather state */
+    static final byte NO_STATE = -1;
+
+    /**
+     * @return number of records
+     */
+    abstract int size();
+
+    /**
+     * @return true if records can not be added
+     */
+    abstract boolean isReadOnly();
+
+    /**
+     * @return a copy sharing the records until either side is modified (read-only storage may return itself)
+     */
+    abstract WeatherStorage copy();
+
+    /**
+     * Insert a record, a record at the same time is replaced
+     *
+     * @param dateTime date time of the record
+     * @param weatherRecord record data
+     * @throws IllegalStateException if the storage is read-only
+     */
+    abstract void put(OffsetDateTime dateTime, WeatherRecord weatherRecord);
+
+    /**
+     * Insert a record, a record at the same time is replaced
+     *
+     * @param epochSecond timestamp of the record in seconds since epoch
+     * @param offset zone offset of the record in seconds
+     * @param values metric values indexed by metric ordinal
+     * @param weatherState weather state, may be null
+     * @throws IllegalStateException if the storage is read-only
+     */
+    abstract void put(long epochSecond, int offset, double[] values, WeatherState weatherState);
+
+    /**
+     * Insert all records of another storage with the same metrics, records of the other storage replace records
+     * at the same time
+     *
+     * @param storage storage to insert, not modified
+     * @throws IllegalStateException if this storage is read-only
+     */
+    abstract void putAll(WeatherStorage storage);
+
+    /**
+     * The column buffers below hold exactly size() elements from index 0, and must not be modified.
+     *
+     * @return epoch seconds of the records
+     */
+    abstract LongBuffer epochSecondColumn();
+
+    /**
+     * @return zone offsets of the records in seconds
+     */
+    abstract IntBuffer offsetColumn();
+
+    /**
+     * @param metric numeric metric
+     * @return values of the metric, null if it is not stored
+     */
+    abstract DoubleBuffer metricColumn(WeatherMetric metric);
+
+    /**
+     * @return weather state ordinals (NO_STATE for none), null if weather state is not stored
+     */
+    abstract ByteBuffer stateColumn();
+
+    /**
+     * @param metric numeric metric
+     * @return view of the metric column, values are 0 if the metric is not stored
+     */
+    MetricSeries metricSeries(WeatherMetric metric) {
+        return new MetricSeries(metric, epochSecondColumn(), offsetColumn(), metricColumn(metric), size());
+    }
+
+    /**
+     * @return view of the weather state column, null if weather state is not stored
+     */
+    WeatherStateSeries stateSeries() {
+        ByteBuffer states = stateColumn();
+        if(states == null) {
+            return null;
+        }
+        return new WeatherStateSeries(epochSecondColumn(), offsetColumn(), states, size());
+    }
+}
@@ -5,18 +5,24 @@ import edu.cmu.cs.cs214.hw5.core.*;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * The class of the GUI of framework.
  */
-public class WeatherIndexFrameworkGui implements ChangeListener {
+public class WeatherIndexFrameworkGui implements ChangeListener, ProgressListener {
     private static final String FRAME_TITLE = "Weather Index";
     private static final String DATA_MENU_TITLE = "Data Source";
     private static final String DISPLAY_MENU_TITLE = "Display Type";
     private static final String WARNING_TITLE = "Warning";
+    private static final String LOADING_MSG = "Loading data...";
+    private static final String GENERATING_MSG = "Generating graph...";
 
     private final JFrame frame;
     private final JPanel outerPanel;
@@ -31,6 +37,12 @@ public class WeatherIndexFrameworkGui implements ChangeListener {
     private final JLabel currentDisplayPluginLabel;
     private final JButton loadButton;
     private final JButton generateButton;
+    private final JPanel statusPanel;
+    private final JProgressBar progressBar;
+    private final JButton cancelButton;
+    private CompletableFuture<?> runningTask;
+    /* warnings of the running load, shown once it is done */
+    private final List<String> loadWarnings = new ArrayList<>();
     private Map<InputEntry, JTextField> dataInputTextFields;
     private Map<InputEntry, JList> dataInputLists;
     private Map<InputEntry, JTextField> displayInputTextFields;
@@ -75,6 +87,20 @@ public class WeatherIndexFrameworkGui implements ChangeListener {
         outerPanel.add(displayPanel, BorderLayout.EAST);
         outerPanel.add(new JScrollPane(graphPanel), BorderLayout.CENTER);
 
+        statusPanel = new JPanel();
+        progressBar = new JProgressBar();
+        progressBar.setStringPainted(true);
+        cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> {
+            if(runningTask != null) {
+                runningTask.cancel(true);
+            }
+        });
+        statusPanel.add(progressBar);
+        statusPanel.add(cancelButton);
+        statusPanel.setVisible(false);
+        outerPanel.add(statusPanel, BorderLayout.SOUTH);
+
         frame.add(outerPanel);
 
         loadButton = new JButton("Load");
@@ -97,8 +123,20 @@ public class WeatherIndexFrameworkGui implements ChangeListener {
                         break;
                 }
             }
-            try {
-                core.processData();
+            startTask(LOADING_MSG);
+            loadWarnings.clear();
+            CompletableFuture<List<ProcessedWeatherData>> loadTask = core.processDataAsync(this);
+            runningTask = loadTask;
+            loadTask.whenComplete((data, ex) -> afterTask(loadTask, () -> {
+                finishTask();
+                if(ex != null) {
+                    showError(ex);
+                    return;
+                }
+                if(!loadWarnings.isEmpty()) {
+                    JOptionPane.showMessageDialog(frame, String.join(System.lineSeparator(), loadWarnings),
+                        WARNING_TITLE, JOptionPane.WARNING_MESSAGE);
+                }
                 if(core.isDisplayPluginSelected()){
                     displayInputTextFields = new HashMap<>();
                     displayInputLists = new HashMap<>();
@@ -109,9 +147,7 @@ public class WeatherIndexFrameworkGui implements ChangeListener {
                     if(core.isDataPluginLoaded())
                         addDisplayInputEntries();
                 }
-            } catch (IllegalStateException | IllegalArgumentException ex) {
-                JOptionPane.showMessageDialog(frame, ex.getMessage(), WARNING_TITLE, JOptionPane.WARNING_MESSAGE);
-            }
+            }));
         });
 
         generateButton = new JButton("Generate");
@@ -134,15 +170,20 @@ public class WeatherIndexFrameworkGui implements ChangeListener {
                         break;
                 }
             }
-            try {
+            startTask(GENERATING_MSG);
+            CompletableFuture<JPanel> generateTask = core.generateGraphAsync();
+            runningTask = generateTask;
+            generateTask.whenComplete((chartPanel, ex) -> afterTask(generateTask, () -> {
+                finishTask();
+                if(ex != null) {
+                    showError(ex);
+                    return;
+                }
                 graphPanel.removeAll();
-                JPanel chartPanel = core.generateGraph();
                 graphPanel.add(chartPanel);
                 graphPanel.revalidate();
                 graphPanel.repaint();
-            } catch (IllegalStateException | IllegalArgumentException ex) {
-                JOptionPane.showMessageDialog(frame, ex.getMessage(), WARNING_TITLE, JOptionPane.WARNING_MESSAGE);
-            }
+            }));
         });
 
         JMenuBar menuBar = new JMenuBar();
@@ -163,6 +204,69 @@ public class WeatherIndexFrameworkGui implements ChangeListener {
         frame.setVisible(true);
     }
 
+    /**
+     * Show the progress bar and block starting another task until the current one finishes.
+     * @param message message shown on the progress bar.
+     */
+    private void startTask(String message) {
+        loadButton.setEnabled(false);
+        generateButton.setEnabled(false);
+        dataMenu.setEnabled(false);
+        displayMenu.setEnabled(false);
+        progressBar.setIndeterminate(true);
+        progressBar.setString(message);
+        statusPanel.setVisible(true);
+    }
+
+    private void finishTask() {
+        runningTask = null;
+        loadButton.setEnabled(true);
+        generateButton.setEnabled(true);
+        dataMenu.setEnabled(true);
+        displayMenu.setEnabled(true);
+        statusPanel.setVisible(false);
+    }
+
+    /**
+     * Run an action on the event dispatch thread once a task is done. A cancelled task is done at once while its
+     * job may still be running, so the action waits until the framework is idle.
+     */
+    private void afterTask(CompletableFuture<?> task, Runnable action) {
+        CompletableFuture<?> done = task.isCancelled() ? core.whenIdle() : CompletableFuture.completedFuture(null);
+        done.whenComplete((ignored, ex) -> SwingUtilities.invokeLater(action));
+    }
+
+    private void showError(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if(cause instanceof CancellationException) {
+            return;
+        }
+        JOptionPane.showMessageDialog(frame, cause.getMessage(), WARNING_TITLE, JOptionPane.WARNING_MESSAGE);
+    }
+
+    @Override
+    public void onDataLoaded(int cityCount, long recordCount) {
+        SwingUtilities.invokeLater(() -> {
+            progressBar.setIndeterminate(false);
+            progressBar.setMaximum(cityCount);
+            progressBar.setValue(0);
+            progressBar.setString(String.format("Loaded %d records of %d cities", recordCount, cityCount));
+        });
+    }
+
+    @Override
+    public void onWarning(String message) {
+        SwingUtilities.invokeLater(() -> loadWarnings.add(message));
+    }
+
+    @Override
+    public void onCityProcessed(int processedCount, int cityCount) {
+        SwingUtilities.invokeLater(() -> {
+            progressBar.setValue(processedCount);
+            progressBar.setString(String.format("Processed %d / %d cities", processedCount, cityCount));
+        });
+    }
+
     @Override
     public void onDataPluginRegistered(DataPlugin plugin) {
         JMenuItem dataMenuItem = new JMenuItem(plugin.getName());
@@ -242,6 +346,7 @@ public class WeatherIndexFrameworkGui implements ChangeListener {
                         JButton openFileButton = new JButton(UIManager.getIcon("FileView.directoryIcon"));
                         openFileButton.addActionListener(e1 -> {
                             JFileChooser chooser = new JFileChooser();
+                            chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
                             int returnVal = chooser.showOpenDialog(null);
                             if (returnVal == JFileChooser.APPROVE_OPTION) {
                                 filePathField.setText(chooser.getSelectedFile().getAbsolutePath());
@@ -0,0 +1,199 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Adds records to the columnar storage out of order, merges data sets and checks that series views and copies
+ * taken before a write keep the records they had.
+ */
+public class WeatherColumnsTest {
+    private static final CityInfo CITY = new CityInfo("Pittsburgh", "Pennsylvania", "PA", 40.44, -79.99);
+    private static final Set<WeatherMetric> METRICS = EnumSet.of(WeatherMetric.TEMPERATURE, WeatherMetric.WEATHERSTATE);
+    private static final long START = 1586400000L;
+    private static final int EDT = -4 * 3600;
+    private static final int EST = -5 * 3600;
+    private static final int RECORD_CNT = 200;
+
+    @Test
+    public void outOfOrderRecordsAreSorted() {
+        RawWeatherData data = new RawWeatherData(CITY, METRICS);
+        Map<OffsetDateTime, Double> expected = new TreeMap<>();
+        List<Integer> hours = new ArrayList<>();
+        for(int i=0; i<RECORD_CNT; i++) {
+            hours.add(i);
+        }
+        Collections.shuffle(hours, new Random(214));
+        for(int hour: hours) {
+            add(data, expected, START + hour * 3600L, EDT, hour);
+        }
+        /* replaces the value of an existing record */
+        add(data, expected, START + 7 * 3600L, EDT, -1);
+        assertSeries(expected, data);
+    }
+
+    @Test
+    public void sameInstantWithDifferentOffsetsAreDistinct() {
+        RawWeatherData data = new RawWeatherData(CITY, METRICS);
+        Map<OffsetDateTime, Double> expected = new TreeMap<>();
+        add(data, expected, START + 3600, EDT, 1);
+        add(data, expected, START, EDT, 2);
+        add(data, expected, START, EST, 3);
+        add(data, expected, START - 3600, EST, 4);
+        add(data, expected, START, EDT, 5);
+        assertEquals(4, data.getRecordCount());
+        assertSeries(expected, data);
+        MetricSeries series = data.getMetricSeries(WeatherMetric.TEMPERATURE);
+        /* ordered like OffsetDateTime: by instant, then by local time */
+        assertEquals(EST, series.getDateTime(1).getOffset().getTotalSeconds());
+        assertEquals(EDT, series.getDateTime(2).getOffset().getTotalSeconds());
+    }
+
+    @Test
+    public void interleavedDataSetsAreMerged() {
+        RawWeatherData data = new RawWeatherData(CITY, METRICS);
+        RawWeatherData other = new RawWeatherData(CITY, METRICS);
+        Map<OffsetDateTime, Double> expected = new TreeMap<>();
+        for(int i=0; i<RECORD_CNT; i += 2) {
+            add(data, expected, START + i * 3600L, EDT, i);
+        }
+        Map<OffsetDateTime, Double> otherExpected = new TreeMap<>();
+        for(int i=RECORD_CNT / 2; i<RECORD_CNT * 2; i += 3) {
+            add(other, otherExpected, START + i * 3600L, EDT, -i);
+        }
+        /* same instants as records of data, but another offset */
+        add(other, otherExpected, START, EST, 0.5);
+        add(other, otherExpected, START + 2 * 3600L, EST, 2.5);
+        expected.putAll(otherExpected);
+
+        data.addWeatherRecords(other);
+        assertSeries(expected, data);
+        assertSeries(otherExpected, other);
+    }
+
+    @Test
+    public void laterDataSetIsAppended() {
+        RawWeatherData data = new RawWeatherData(CITY, METRICS);
+        RawWeatherData other = new RawWeatherData(CITY, METRICS);
+        Map<OffsetDateTime, Double> expected = new TreeMap<>();
+        for(int i=0; i<RECORD_CNT; i++) {
+            add(i < RECORD_CNT / 2 ? data : other, expected, START + i * 3600L, EDT, i);
+        }
+        data.addWeatherRecords(other);
+        assertSeries(expected, data);
+        /* the first record of other replaces the last record of data */
+        RawWeatherData overlapping = new RawWeatherData(CITY, METRICS);
+        add(overlapping, expected, START + (RECORD_CNT - 1) * 3600L, EDT, -1);
+        add(overlapping, expected, START + RECORD_CNT * 3600L, EDT, -2);
+        data.addWeatherRecords(overlapping);
+        assertSeries(expected, data);
+    }
+
+    @Test
+    public void writesLeaveEarlierViewsUnchanged() {
+        RawWeatherData data = new RawWeatherData(CITY, METRICS);
+        Map<OffsetDateTime, Double> expected = new TreeMap<>();
+        for(int i=0; i<RECORD_CNT; i += 2) {
+            add(data, expected, START + i * 3600L, EDT, i);
+        }
+        Map<OffsetDateTime, Double> before = new TreeMap<>(expected);
+        MetricSeries series = data.getMetricSeries(WeatherMetric.TEMPERATURE);
+        WeatherStateSeries states = data.getWeatherStateSeries();
+
+        /* replace, insert in the middle, append and merge */
+        add(data, expected, START, EDT, -1);
+        add(data, expected, START + 3600L, EDT, -2);
+        add(data, expected, START + RECORD_CNT * 3600L, EDT, -3);
+        RawWeatherData other = new RawWeatherData(CITY, METRICS);
+        add(other, expected, START + 5 * 3600L, EDT, -4);
+        data.addWeatherRecords(other);
+
+        assertSeries(before, series);
+        assertEquals(before.size(), states.size());
+        assertEquals(WeatherState.values()[0], states.getState(0));
+        assertSeries(expected, data);
+    }
+
+    @Test
+    public void writesLeaveCopiesUnchanged() {
+        RawWeatherData data = new RawWeatherData(CITY, METRICS);
+        Map<OffsetDateTime, Double> expected = new TreeMap<>();
+        for(int i=0; i<RECORD_CNT; i++) {
+            add(data, expected, START + i * 3600L, EDT, i);
+        }
+        RawWeatherData copy = new RawWeatherData(data);
+        Map<OffsetDateTime, Double> copyExpected = new TreeMap<>(expected);
+
+        add(data, expected, START, EDT, -1);
+        assertSeries(copyExpected, copy);
+        add(copy, copyExpected, START + 3600L, EDT, -2);
+        add(copy, copyExpected, START + RECORD_CNT * 3600L, EDT, -3);
+        assertSeries(expected, data);
+        assertSeries(copyExpected, copy);
+
+        /* a copy of a copy, then an append to the original */
+        RawWeatherData copyOfCopy = new RawWeatherData(copy);
+        RawWeatherData later = new RawWeatherData(CITY, METRICS);
+        add(later, copyExpected, START + 2 * RECORD_CNT * 3600L, EDT, -4);
+        Map<OffsetDateTime, Double> copyOfCopyExpected = new TreeMap<>(copyExpected);
+        copyOfCopyExpected.remove(OffsetDateTime.ofInstant(Instant.ofEpochSecond(START + 2 * RECORD_CNT * 3600L),
+            ZoneOffset.ofTotalSeconds(EDT)));
+        copy.addWeatherRecords(later);
+        assertSeries(copyExpected, copy);
+        assertSeries(copyOfCopyExpected, copyOfCopy);
+        assertSeries(expected, data);
+    }
+
+    /**
+     * Add a record with a temperature and a weather state derived from it, to a data set and to its expected map
+     */
+    private static void add(RawWeatherData data, Map<OffsetDateTime, Double> expected, long epochSecond, int offset,
+                            double temperature) {
+        double[] values = new double[WeatherMetric.values().length];
+        values[WeatherMetric.TEMPERATURE.ordinal()] = temperature;
+        data.addWeatherRecord(epochSecond, offset, values, stateOf(temperature));
+        expected.put(OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneOffset.ofTotalSeconds(offset)),
+            temperature);
+    }
+
+    private static WeatherState stateOf(double temperature) {
+        WeatherState[] states = WeatherState.values();
+        return states[(int) Math.abs(temperature) % states.length];
+    }
+
+    private static void assertSeries(Map<OffsetDateTime, Double> expected, RawWeatherData data) {
+        assertEquals(expected.size(), data.getRecordCount());
+        assertSeries(expected, data.getMetricSeries(WeatherMetric.TEMPERATURE));
+        WeatherStateSeries states = data.getWeatherStateSeries();
+        assertEquals(expected.size(), states.size());
+        int i = 0;
+        for(Map.Entry<OffsetDateTime, Double> entry: expected.entrySet()) {
+            assertEquals(entry.getKey(), states.getDateTime(i));
+            assertEquals(stateOf(entry.getValue()), states.getState(i));
+            i++;
+        }
+    }
+
+    private static void assertSeries(Map<OffsetDateTime, Double> expected, MetricSeries series) {
+        assertEquals(expected.size(), series.size());
+        int i = 0;
+        for(Map.Entry<OffsetDateTime, Double> entry: expected.entrySet()) {
+            assertEquals(entry.getKey(), series.getDateTime(i));
+            assertEquals(entry.getKey().toString(), entry.getValue(), series.getValue(i), 0);
+            i++;
+        }
+    }
+}
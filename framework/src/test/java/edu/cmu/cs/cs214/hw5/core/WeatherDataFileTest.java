@@ -0,0 +1,201 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes weather data files and reads them back, on the heap and mapped, including files that are truncated or
+ * do not match their source any more.
+ */
+public class WeatherDataFileTest {
+    private static final CityInfo CITY = new CityInfo("Pittsburgh", "Pennsylvania", "PA", 40.44, -79.99);
+    private static final long SOURCE_SIZE = 12345;
+    private static final long SOURCE_LAST_MODIFIED = 1586400000000L;
+    private static final Set<WeatherMetric> METRICS = EnumSet.of(WeatherMetric.TEMPERATURE, WeatherMetric.HUMIDITY,
+        WeatherMetric.WEATHERSTATE);
+    private static final int RECORD_CNT = 100;
+
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("weather-data-file");
+        file = dir.resolve("data.wdc");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void readReturnsWrittenData() throws IOException {
+        RawWeatherData data = sampleData();
+        WeatherDataFile.write(file, data, true, SOURCE_SIZE, SOURCE_LAST_MODIFIED);
+        RawWeatherData read = WeatherDataFile.read(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED);
+        assertNotNull(read);
+        assertFalse(read.isReadOnly());
+        assertSameData(data, read);
+    }
+
+    @Test
+    public void mapReturnsWrittenData() throws IOException {
+        RawWeatherData data = sampleData();
+        WeatherDataFile.write(file, data, true, SOURCE_SIZE, SOURCE_LAST_MODIFIED);
+        RawWeatherData mapped = WeatherDataFile.map(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED);
+        assertNotNull(mapped);
+        assertTrue(mapped.isReadOnly());
+        assertSameData(data, mapped);
+        assertSameData(data, WeatherDataFile.map(file, null));
+    }
+
+    @Test
+    public void cityIsTakenFromDefaultWhenNotStored() throws IOException {
+        RawWeatherData data = sampleData();
+        WeatherDataFile.write(file, data, false, SOURCE_SIZE, SOURCE_LAST_MODIFIED);
+        assertNull(WeatherDataFile.read(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED));
+        assertNull(WeatherDataFile.map(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED));
+        CityInfo other = new CityInfo("Boston", "Massachusetts", "MA", 42.36, -71.06);
+        assertEquals("Boston", WeatherDataFile.read(file, other, SOURCE_SIZE, SOURCE_LAST_MODIFIED)
+            .getCityInfo().getCityName());
+    }
+
+    @Test
+    public void emptyDataSetRoundTrips() throws IOException {
+        RawWeatherData data = new RawWeatherData(CITY, METRICS);
+        WeatherDataFile.write(file, data, true, SOURCE_SIZE, SOURCE_LAST_MODIFIED);
+        assertEquals(0, WeatherDataFile.read(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED).getRecordCount());
+        assertEquals(0, WeatherDataFile.map(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED).getRecordCount());
+    }
+
+    @Test
+    public void staleFileIsIgnored() throws IOException {
+        WeatherDataFile.write(file, sampleData(), true, SOURCE_SIZE, SOURCE_LAST_MODIFIED);
+        assertNull(WeatherDataFile.read(file, null, SOURCE_SIZE + 1, SOURCE_LAST_MODIFIED));
+        assertNull(WeatherDataFile.read(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED + 1));
+        assertNull(WeatherDataFile.map(file, null, SOURCE_SIZE + 1, SOURCE_LAST_MODIFIED));
+        assertNull(WeatherDataFile.map(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED + 1));
+    }
+
+    @Test
+    public void missingFileIsIgnored() throws IOException {
+        assertNull(WeatherDataFile.read(file, CITY, SOURCE_SIZE, SOURCE_LAST_MODIFIED));
+        assertNull(WeatherDataFile.map(file, CITY, SOURCE_SIZE, SOURCE_LAST_MODIFIED));
+    }
+
+    @Test
+    public void truncatedFileIsIgnored() throws IOException {
+        WeatherDataFile.write(file, sampleData(), true, SOURCE_SIZE, SOURCE_LAST_MODIFIED);
+        byte[] bytes = Files.readAllBytes(file);
+        /* the last section may be followed by padding, which can be lost */
+        int end = (int) WeatherDataFile.Layout.of(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), bytes.length)
+            .end();
+        int[] lengths = {0, WeatherDataFile.HEADER_SIZE - 1, WeatherDataFile.HEADER_SIZE, end / 2, end - 1};
+        for(int length: lengths) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertNull("truncated to " + length, WeatherDataFile.read(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED));
+            assertNull("truncated to " + length, WeatherDataFile.map(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED));
+            try {
+                WeatherDataFile.map(file, CITY);
+                fail("Mapped a file truncated to " + length);
+            } catch (IllegalArgumentException e) {
+                /* expected */
+            }
+        }
+    }
+
+    @Test
+    public void invalidHeaderIsIgnored() throws IOException {
+        WeatherDataFile.write(file, sampleData(), true, SOURCE_SIZE, SOURCE_LAST_MODIFIED);
+        byte[] bytes = Files.readAllBytes(file);
+        /* magic, version, record count and an unknown metric bit */
+        int[][] corruptions = {{0, 0}, {4, 99}, {24, -1}, {24, RECORD_CNT + 1}, {36, 1 << 30}};
+        for(int[] corruption: corruptions) {
+            byte[] corrupt = bytes.clone();
+            ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(corruption[0], corruption[1]);
+            Files.write(file, corrupt);
+            assertNull("header int at " + corruption[0],
+                WeatherDataFile.read(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED));
+            assertNull("header int at " + corruption[0],
+                WeatherDataFile.map(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED));
+        }
+    }
+
+    @Test
+    public void rewriteReplacesFile() throws IOException {
+        WeatherDataFile.write(file, sampleData(), true, SOURCE_SIZE, SOURCE_LAST_MODIFIED);
+        RawWeatherData empty = new RawWeatherData(CITY, METRICS);
+        WeatherDataFile.write(file, empty, true, SOURCE_SIZE + 1, SOURCE_LAST_MODIFIED + 1);
+        assertNull(WeatherDataFile.read(file, null, SOURCE_SIZE, SOURCE_LAST_MODIFIED));
+        assertEquals(0, WeatherDataFile.read(file, null, SOURCE_SIZE + 1, SOURCE_LAST_MODIFIED + 1)
+            .getRecordCount());
+        try (Stream<Path> paths = Files.list(dir)) {
+            assertEquals("temporary files left", 1, paths.count());
+        }
+    }
+
+    private static RawWeatherData sampleData() {
+        RawWeatherData data = new RawWeatherData(CITY, METRICS);
+        WeatherState[] states = WeatherState.values();
+        double[] values = new double[WeatherMetric.values().length];
+        for(int i=0; i<RECORD_CNT; i++) {
+            values[WeatherMetric.TEMPERATURE.ordinal()] = -20.5 + i * 0.75;
+            values[WeatherMetric.HUMIDITY.ordinal()] = i % 2 == 0 ? Double.NaN : i;
+            /* offsets change half way, e.g. at a daylight saving transition */
+            int offsetSeconds = i < RECORD_CNT / 2 ? -4 * 3600 : -5 * 3600;
+            data.addWeatherRecord(1586400000L + i * 3600L, offsetSeconds, values, states[i % states.length]);
+        }
+        return data;
+    }
+
+    private static void assertSameData(RawWeatherData expected, RawWeatherData actual) {
+        assertEquals(expected.getRecordCount(), actual.getRecordCount());
+        assertEquals(expected.getCityInfo().getCityName(), actual.getCityInfo().getCityName());
+        assertEquals(expected.getCityInfo().getStateFullName(), actual.getCityInfo().getStateFullName());
+        assertEquals(expected.getCityInfo().getStateAbbrName(), actual.getCityInfo().getStateAbbrName());
+        assertEquals(expected.getCityInfo().getLatitude(), actual.getCityInfo().getLatitude(), 0);
+        assertEquals(expected.getCityInfo().getLongitude(), actual.getCityInfo().getLongitude(), 0);
+        for(WeatherMetric metric: WeatherMetric.values()) {
+            assertEquals(metric.getDescription(), expected.metricProvided(metric), actual.metricProvided(metric));
+            if(!metric.isNumeric() || !expected.metricProvided(metric)) {
+                continue;
+            }
+            MetricSeries expectedSeries = expected.getMetricSeries(metric);
+            MetricSeries actualSeries = actual.getMetricSeries(metric);
+            for(int i=0; i<expectedSeries.size(); i++) {
+                assertEquals(expectedSeries.getDateTime(i), actualSeries.getDateTime(i));
+                assertEquals(Double.doubleToLongBits(expectedSeries.getValue(i)),
+                    Double.doubleToLongBits(actualSeries.getValue(i)));
+            }
+        }
+        WeatherStateSeries expectedStates = expected.getWeatherStateSeries();
+        WeatherStateSeries actualStates = actual.getWeatherStateSeries();
+        assertEquals(expectedStates.size(), actualStates.size());
+        for(int i=0; i<expectedStates.size(); i++) {
+            assertEquals(expectedStates.getDateTime(i), actualStates.getDateTime(i));
+            assertEquals(expectedStates.getState(i), actualStates.getState(i));
+        }
+    }
+}
@@ -4,19 +4,19 @@ package edu.cmu.cs.cs214.hw5.plugins.data;
 import edu.cmu.cs.cs214.hw5.core.DataPlugin;
 import edu.cmu.cs.cs214.hw5.core.datastructures.DataSet;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 import edu.cmu.cs.cs214.hw5.core.datastructures.TimeSeries;
+import edu.cmu.cs.cs214.hw5.webclient.WebClient;
+import edu.cmu.cs.cs214.hw5.webclient.WebClientException;
 import org.json.JSONObject;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -37,17 +37,19 @@ public class AccuWeatherWebAPIPlugin implements  DataPlugin {
     private static final String FORMAT_FORECAST_QUERY = "%s/%s?apikey=%s&details=true";
 
     private static final String SOURCE_NAME = "Accu Weather Future 5 Day Weather Temperature";
-    private static final String PROMPT = "Enter City Name and State Abbreviation (e.g. Pittsburgh, PA)";
+    private static final String PROMPT = "Enter City Name and State Abbreviation (e.g. Pittsburgh, PA; "
+        + "If input multiple cities, separate them by \";\")";
+    private static final String CITY_SEPARATOR = ";";
     private static final String DATASET_NAME_POSTFIX = "Future 5 Day Temperature(F)";
     private static final String DATASET_MAX_TEMP_POSTFIX = "Future 5 Day Max Temperature(F)";
     private static final String DATASET_MIN_TEMP_POSTFIX = "Future 5 Day Min Temperature(F)";
 
     /* Error Message */
-    private static final String URL_ERR_MSG = "Internal Error when querying weather data";
     private static final String CONNECT_ERR_MSG = "Internal Error when connection to web API";
-    private static final String STREAM_ERR_MSG = "Internal Error while getting input stream";
     private static final String JSON_PARSE_ERR_MSG = "Internal Error while parsing json";
-    private static final int RESPONSE_OK = 200;
+    private static final String INVALID_PARAM_MSG = "Invalid parameter";
+
+    private volatile List<CityResult> failedCities = Collections.emptyList();
 
     /**
      * Object to represent info from web api regarding this city
@@ -64,52 +66,81 @@ public class AccuWeatherWebAPIPlugin implements  DataPlugin {
         }
     }
 
-    private String httpGetRequest(String urlStr) throws IllegalStateException {
-        HttpURLConnection connection;
-        try {
-            URL url = new URL(urlStr);
-            connection = (HttpURLConnection) url.openConnection();
-        } catch (MalformedURLException e) {
-            throw new IllegalStateException(URL_ERR_MSG);
-        } catch (IOException e) {
-            throw new IllegalStateException(CONNECT_ERR_MSG);
+    /**
+     * Result of loading a city, either its data set or the error that happened
+     */
+    public static class CityResult {
+        private final String cityInfo;
+        private final DataSet dataSet;
+        private final List<TimeSeries> timeSeries;
+        private final RuntimeException error;
+
+        CityResult(String cityInfo, DataSet dataSet, List<TimeSeries> timeSeries, RuntimeException error) {
+            this.cityInfo = cityInfo;
+            this.dataSet = dataSet;
+            this.timeSeries = timeSeries;
+            this.error = error;
         }
 
-        StringBuilder sb = new StringBuilder();
+        /**
+         * @return city requested, of format "cityname, state abbr"
+         */
+        public String getCityInfo() {
+            return cityInfo;
+        }
 
-        try {
-            connection.setRequestMethod("GET");
-            int responseCode = connection.getResponseCode();
-            if(responseCode != RESPONSE_OK) {
-                throw new IllegalStateException("HTTP Request Fail " + responseCode);
-            }
-            /* read response body */
-            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
-            reader.close();
-        } catch (IOException e) {
-            throw new IllegalStateException(STREAM_ERR_MSG);
+        /**
+         * @return data set of the city, null if it failed
+         */
+        public DataSet getDataSet() {
+            return dataSet;
         }
 
-        connection.disconnect();
-        return sb.toString();
+        /**
+         * @return error of the city (IllegalArgumentException if it is not of format "cityname, state abbr",
+         *         IllegalStateException otherwise), null if it succeeded
+         */
+        public RuntimeException getError() {
+            return error;
+        }
+
+        /**
+         * @return true if the data set of the city was loaded
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @return string info of the result
+         */
+        @Override
+        public String toString() {
+            return "CityResult{" +
+                "cityInfo='" + cityInfo + '\'' +
+                ", error=" + (error == null ? null : error.getMessage()) +
+                '}';
+        }
     }
 
+    /**
+     * Data set of a city and its time series
+     */
+    private static class CityData {
+        private final DataSet dataSet;
+        private final List<TimeSeries> timeSeries;
 
-    private QueryInfo queryCityInfo(String cityName, String stateAbbr) throws IllegalStateException {
-        String urlStr = String.format(FORMAT_LOCATION_QUERY, LOCATIONSEARCH_URL, API_KEY, cityName);
-        String jsonStr = httpGetRequest(urlStr);
+        CityData(DataSet dataSet, List<TimeSeries> timeSeries) {
+            this.dataSet = dataSet;
+            this.timeSeries = timeSeries;
+        }
+    }
 
+    private QueryInfo parseCityInfo(String jsonStr, String cityName, String stateAbbr) throws IllegalStateException {
         boolean foundCityFlg = false;
         int locationId = -1;
-        double latitude = -1;
-        double longitude = -1;
 
         String cityFullName = "";
-        String stateFullName = "";
         String stateAbbrName = "";
 
         try {
@@ -136,10 +167,7 @@ public class AccuWeatherWebAPIPlugin implements  DataPlugin {
         return new QueryInfo(cityFullName, stateAbbrName, locationId);
     }
 
-    private DataSet getWeatherDataFuture(QueryInfo queryInfo) {
-        String urlStr = String.format(FORMAT_FORECAST_QUERY, FORECAST_URL, queryInfo.locationId, API_KEY);
-        String jsonStr = httpGetRequest(urlStr);
-
+    private CityData parseWeatherDataFuture(QueryInfo queryInfo, String jsonStr) {
         String maxTemperatureSeriesName = queryInfo.cityFullName + ", " + queryInfo.stateAbbr + " " + DATASET_MAX_TEMP_POSTFIX;
         String minTemperatureSeriesName = queryInfo.cityFullName + ", " + queryInfo.stateAbbr + " " + DATASET_MIN_TEMP_POSTFIX;
 
@@ -158,16 +186,76 @@ public class AccuWeatherWebAPIPlugin implements  DataPlugin {
                 maxTemperatureSeries.insert(localDate, maxTemperature);
                 minTemperatureSeries.insert(localDate, minTemperature);
             }
-        } catch (JSONException e) {
+        } catch (JSONException | DateTimeParseException e) {
             throw new IllegalStateException(JSON_PARSE_ERR_MSG);
         }
 
         List<TimeSeries> tsList = new ArrayList<>();
         tsList.add(maxTemperatureSeries);
         tsList.add(minTemperatureSeries);
-        return new DataSet(tsList, new ArrayList<>(), dataSetName);
+        return new CityData(new DataSet(tsList, new ArrayList<>(), dataSetName), tsList);
+    }
+
+    /**
+     * Start loading a city: its location search is sent now, and its forecast as soon as the location is found
+     */
+    private CompletableFuture<CityData> loadCityAsync(String cityInfo) {
+        String[] cityInfoSplit = cityInfo.split(",");
+        if(cityInfoSplit.length != 2) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(INVALID_PARAM_MSG + ": " + cityInfo));
+        }
+        String cityName = cityInfoSplit[0].trim();
+        String stateAbbr = cityInfoSplit[1].trim();
+
+        String locationUrl = String.format(FORMAT_LOCATION_QUERY, LOCATIONSEARCH_URL, API_KEY, cityName);
+        return WebClient.shared().getAsync(locationUrl)
+            .thenApply(jsonStr -> parseCityInfo(jsonStr, cityName, stateAbbr))
+            .thenCompose(queryInfo -> {
+                String forecastUrl = String.format(FORMAT_FORECAST_QUERY, FORECAST_URL, queryInfo.locationId, API_KEY);
+                return WebClient.shared().getAsync(forecastUrl)
+                    .thenApply(jsonStr -> parseWeatherDataFuture(queryInfo, jsonStr));
+            });
     }
 
+    private static CityResult getResult(String cityInfo, CompletableFuture<CityData> future) {
+        try {
+            CityData cityData = WebClient.await(future);
+            return new CityResult(cityInfo, cityData.dataSet, cityData.timeSeries, null);
+        } catch (CancellationException e) {
+            throw e;
+        } catch (WebClientException e) {
+            String message = e.hasResponse() ? e.getMessage() : CONNECT_ERR_MSG;
+            return new CityResult(cityInfo, null, null, new IllegalStateException(message));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return new CityResult(cityInfo, null, null, e);
+        }
+    }
+
+    /**
+     * Load the data sets of several cities concurrently. The location searches of all cities are sent at once,
+     * and the forecast of each city as soon as its location is found. A failing city does not affect the others.
+     *
+     * @param cityInfos cities of format "cityname, state abbr"
+     * @return one result per city, in the same order as cityInfos
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public List<CityResult> loadCities(List<String> cityInfos) {
+        List<CompletableFuture<CityData>> futures = new ArrayList<>();
+        for(String cityInfo: cityInfos) {
+            futures.add(loadCityAsync(cityInfo));
+        }
+        List<CityResult> results = new ArrayList<>();
+        try {
+            for(int i=0; i<futures.size(); i++) {
+                results.add(getResult(cityInfos.get(i), futures.get(i)));
+            }
+        } finally {
+            for(CompletableFuture<CityData> future: futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
 
     /**
      * Gets the names of all data sets that the data plugin provides.
@@ -186,28 +274,48 @@ public class AccuWeatherWebAPIPlugin implements  DataPlugin {
     /**
      * Get a data set from the data plugin according to the string representation
      * of the data set. For example, the string could be file path, data name, etc.
+     * Several cities separated by ";" are loaded concurrently into one data set. Cities that fail are left out,
+     * see getFailedCities for their errors (or loadCities for the result of every city).
      *
      * @param cityInfo the string needed to fetch the data set of format "cityname, state abbr"
-     * @return the data set
+     * @return the data set of the cities that loaded, DataSet.EMPTY_DATASET if none did
      */
     @Override
     public DataSet getDataSet(String cityInfo) {
-        String[] cityInfoSplit = cityInfo.split(",");
-        if(cityInfoSplit.length != 2) {
-            System.err.println("Invalid parameter");
-            return DataSet.EMPTY_DATASET;
+        List<String> cityInfos = new ArrayList<>();
+        for(String city: cityInfo.split(CITY_SEPARATOR)) {
+            cityInfos.add(city.trim());
         }
 
-        String cityName = cityInfoSplit[0].trim();
-        String stateAbbr = cityInfoSplit[1].trim();
-
-        try {
-            QueryInfo queryInfo = queryCityInfo(cityName, stateAbbr);
-            return getWeatherDataFuture(queryInfo);
-        } catch (IllegalStateException e) {
-            System.err.println("Failed to get data for " + cityInfo);
+        List<CityResult> results = loadCities(cityInfos);
+        List<CityResult> loaded = new ArrayList<>();
+        List<CityResult> failed = new ArrayList<>();
+        for(CityResult result: results) {
+            if(result.isSuccess()) {
+                loaded.add(result);
+            } else {
+                failed.add(result);
+            }
+        }
+        failedCities = Collections.unmodifiableList(failed);
+        if(loaded.isEmpty()) {
             return DataSet.EMPTY_DATASET;
         }
+        if(loaded.size() == 1) {
+            return loaded.get(0).getDataSet();
+        }
+        List<TimeSeries> tsList = new ArrayList<>();
+        for(CityResult result: loaded) {
+            tsList.addAll(result.timeSeries);
+        }
+        return new DataSet(tsList, new ArrayList<>(), DATASET_NAME_POSTFIX);
+    }
+
+    /**
+     * @return results of the cities that failed in the last call of getDataSet, in input order, with their errors
+     */
+    public List<CityResult> getFailedCities() {
+        return failedCities;
     }
 
     /**
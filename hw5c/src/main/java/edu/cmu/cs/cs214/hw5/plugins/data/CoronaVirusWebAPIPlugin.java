@@ -3,6 +3,8 @@ package edu.cmu.cs.cs214.hw5.plugins.data;
 import edu.cmu.cs.cs214.hw5.core.DataPlugin;
 import edu.cmu.cs.cs214.hw5.core.datastructures.DataSet;
 import edu.cmu.cs.cs214.hw5.core.datastructures.TimeSeries;
+import edu.cmu.cs.cs214.hw5.webclient.WebClient;
+import edu.cmu.cs.cs214.hw5.webclient.WebClientException;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.jsoup.HttpStatusException;
@@ -12,24 +14,17 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 import java.awt.SystemTray;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.lang.reflect.Type;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.sql.Time;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Data plugin to get corona virus related data of different countries in the world
@@ -45,11 +40,8 @@ public class CoronaVirusWebAPIPlugin implements DataPlugin {
 
     /* Error Message */
     private static final String CONNECT_ERR_MSG = "Internal Error when connection to Web";
-    private static final String INVALID_URL_MSG = "Invalid Url";
     private static final String INVALID_COUNTRY_MSG = "Invalid Country Name";
     private static final String HTML_PARSE_ERR_MSG = "Internal Error while parsing html";
-    private static final String STREAM_ERR_MSG = "Internal Error while getting input stream";
-    private static final int RESPONSE_OK = 200;
 
 
     private static final String DATASET_NAME_POSTFIX = "Past " + QUERY_LASTDAYS + " Day Statistics";
@@ -57,57 +49,43 @@ public class CoronaVirusWebAPIPlugin implements DataPlugin {
     private static final String DATASET_DEATH_POSTFIX = "Past " + QUERY_LASTDAYS + " Day Deaths";
     private static final String DATASET_RECOVER_POSTFIX = "Past " + QUERY_LASTDAYS + " Day Recovered";
 
+    /* date keys of the timelines, DateTimeFormatter is immutable so it is shared by all queries */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("M/d/yy");
 
-    private String httpGetRequest(String urlStr) throws IllegalStateException {
-        HttpURLConnection connection;
-        try {
-            URL url = new URL(urlStr);
-            connection = (HttpURLConnection) url.openConnection();
-        } catch (MalformedURLException e) {
-            throw new IllegalStateException(INVALID_URL_MSG + urlStr);
-        } catch (IOException e) {
-            throw new IllegalStateException(CONNECT_ERR_MSG);
-        }
-
-        StringBuilder sb = new StringBuilder();
 
+    /**
+     * Wait for a response sent with WebClient.getAsync
+     */
+    private String awaitResponse(CompletableFuture<String> response) throws IllegalStateException {
         try {
-            connection.setRequestMethod("GET");
-            int responseCode = connection.getResponseCode();
-            if(responseCode != RESPONSE_OK) {
-                throw new IllegalStateException("HTTP Request Fail " + responseCode);
-            }
-            /* read response body */
-            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
+            return WebClient.await(response);
+        } catch (WebClientException e) {
+            if(e.hasResponse()) {
+                throw new IllegalStateException(e.getMessage());
             }
-            reader.close();
-        } catch (IOException e) {
-            throw new IllegalStateException(STREAM_ERR_MSG);
+            throw new IllegalStateException(CONNECT_ERR_MSG);
         }
-
-        connection.disconnect();
-        return sb.toString();
     }
 
     private LocalDate parseDate(String dateRaw) {
-        DateFormat df = new SimpleDateFormat("M/d/yy");
-        Date date;
         try {
-            date = df.parse(dateRaw);
-        } catch (ParseException e) {
+            return LocalDate.parse(dateRaw, DATE_FORMATTER);
+        } catch (DateTimeParseException e) {
             throw new IllegalStateException("Fail to parse date " + dateRaw);
         }
-        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
     }
 
-    private List<TimeSeries> queryData(String countryStr) {
+    private CompletableFuture<String> sendQuery(String countryStr) {
         String url = String.format(FORECAST_FORMAT, countryStr, QUERY_LASTDAYS);
+        return WebClient.shared().getAsync(url);
+    }
+
+    private List<TimeSeries> queryData(CompletableFuture<String> response) {
         String jsonStr;
         try {
-            jsonStr = httpGetRequest(url);
+            jsonStr = awaitResponse(response);
+        } catch (CancellationException e) {
+            throw e;
         } catch (IllegalStateException e) {
             System.out.println(e.getMessage());
             return new ArrayList<>();
@@ -179,6 +157,7 @@ public class CoronaVirusWebAPIPlugin implements DataPlugin {
     /**
      * Get a data set from the data plugin according to the string representation
      * of the data set. For example, the string could be file path, data name, etc.
+     * The requests of all countries are sent at once, so they are answered concurrently.
      *
      * @param countries the string needed to fetch the data set
      * @return the data set
@@ -187,9 +166,19 @@ public class CoronaVirusWebAPIPlugin implements DataPlugin {
     public DataSet getDataSet(String countries) {
         String[] countriesSplit = countries.split(",");
 
-        List<TimeSeries> tsList = new ArrayList<>();
+        List<CompletableFuture<String>> responses = new ArrayList<>();
         for(String country: countriesSplit) {
-            tsList.addAll(queryData(country.trim()));
+            responses.add(sendQuery(country.trim()));
+        }
+        List<TimeSeries> tsList = new ArrayList<>();
+        try {
+            for(CompletableFuture<String> response: responses) {
+                tsList.addAll(queryData(response));
+            }
+        } finally {
+            for(CompletableFuture<String> response: responses) {
+                response.cancel(true);
+            }
         }
         return new DataSet(tsList, new ArrayList<>(), DATASET_NAME_POSTFIX);
     }
@@ -3,6 +3,7 @@ package edu.cmu.cs.cs214.hw5.plugins.data;
 import edu.cmu.cs.cs214.hw5.core.DataPlugin;
 import edu.cmu.cs.cs214.hw5.core.datastructures.DataSet;
 import edu.cmu.cs.cs214.hw5.core.datastructures.TimeSeries;
+import edu.cmu.cs.cs214.hw5.webclient.WebClient;
 import org.jsoup.HttpStatusException;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -114,7 +115,7 @@ public class WeatherComWebCrawlerPlugin implements DataPlugin {
 
 
     private List<TimeSeries> crawlData(String zipCode) {
-        String url = String.format(FORECAST_FORMAT, zipCode);
+        String url = WebClient.shared().route(String.format(FORECAST_FORMAT, zipCode));
 
         Document doc;
         try {
@@ -0,0 +1,133 @@
+package edu.cmu.cs.cs214.hw5.benchmark;
+
+import edu.cmu.cs.cs214.hw5.core.InputEntry;
+import edu.cmu.cs.cs214.hw5.core.ProcessedWeatherData;
+import edu.cmu.cs.cs214.hw5.core.WeatherIndexProcessor;
+import edu.cmu.cs.cs214.hw5.core.WeatherIndexType;
+import edu.cmu.cs.cs214.hw5.core.WeatherMetric;
+import edu.cmu.cs.cs214.hw5.plugin.ChartDisplayPlugin;
+import edu.cmu.cs.cs214.hw5.plugin.LineChartDisplayPlugin;
+import edu.cmu.cs.cs214.hw5.plugin.PieChartDisplayPlugin;
+import edu.cmu.cs.cs214.hw5.plugin.StickChartDisplayPlugin;
+import org.knowm.xchart.internal.chartpart.Chart;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generate the chart of each display plugin for M cities of N records each (generateChart, as generateGraph does
+ * without its Swing panel), and paint it to an image without a display (java.awt.headless)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ChartRenderBenchmark {
+    private static final int CHART_SIZE = 600;
+
+    @Param({"line", "pie", "stick"})
+    private String plugin;
+
+    @Param({"24", "1000"})
+    private int records;
+
+    @Param({"4"})
+    private int cities;
+
+    private ChartDisplayPlugin displayPlugin;
+    private List<InputEntry> inputEntries;
+    private List<ProcessedWeatherData> data;
+    private BufferedImage image;
+
+    /**
+     * Process the cities and set the input of the display plugin as a user would
+     */
+    @Setup
+    public void setUp() {
+        WeatherIndexProcessor processor = new WeatherIndexProcessor(1);
+        data = processor.process(SyntheticWeatherData.cities(cities, records));
+        processor.shutdown();
+
+        switch (plugin) {
+            case "line":
+                displayPlugin = new LineChartDisplayPlugin();
+                break;
+            case "pie":
+                displayPlugin = new PieChartDisplayPlugin();
+                break;
+            case "stick":
+                displayPlugin = new StickChartDisplayPlugin();
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid display plugin " + plugin);
+        }
+        displayPlugin.readData(data);
+        inputEntries = displayPlugin.getInputEntries();
+        String firstCity = data.get(0).getRawWeatherData().getCityInfo().getCityName();
+        switch (plugin) {
+            case "line":
+                StringJoiner cityNames = new StringJoiner(";");
+                for(ProcessedWeatherData processedWeatherData: data) {
+                    cityNames.add(processedWeatherData.getRawWeatherData().getCityInfo().getCityName());
+                }
+                inputEntries.get(0).setValue(WeatherMetric.TEMPERATURE.getDescription());
+                inputEntries.get(1).setValue(cityNames.toString());
+                break;
+            case "pie":
+                inputEntries.get(0).setValue(firstCity);
+                inputEntries.get(1).setValue(WeatherMetric.WEATHERSTATE.getDescription());
+                break;
+            default:
+                StringJoiner indexNames = new StringJoiner(";");
+                for(Map.Entry<WeatherIndexType, Double> entry: data.get(0).getWeatherIndexMap().entrySet()) {
+                    if(entry.getValue() != null) {
+                        indexNames.add(entry.getKey().getDescription());
+                    }
+                }
+                inputEntries.get(0).setValue(firstCity);
+                inputEntries.get(1).setValue(indexNames.toString());
+                break;
+        }
+        image = new BufferedImage(CHART_SIZE, CHART_SIZE, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * @return the chart, not painted
+     */
+    @Benchmark
+    public Chart<?, ?> generateChart() {
+        return displayPlugin.generateChart(inputEntries, data);
+    }
+
+    /**
+     * @return image the chart is painted to
+     */
+    @Benchmark
+    public BufferedImage render() {
+        Chart<?, ?> chart = displayPlugin.generateChart(inputEntries, data);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            chart.paint(graphics, CHART_SIZE, CHART_SIZE);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+}
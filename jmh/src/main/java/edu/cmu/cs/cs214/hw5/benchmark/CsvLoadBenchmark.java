@@ -0,0 +1,84 @@
+package edu.cmu.cs.cs214.hw5.benchmark;
+
+import edu.cmu.cs.cs214.hw5.core.InputEntry;
+import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
+import edu.cmu.cs.cs214.hw5.plugin.LocalCSVDataPlugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Load a csv file of N rows with LocalCSVDataPlugin. The binary sidecar cache of the reader is disabled, so every
+ * load parses the csv file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dcsvreader.cache=false")
+public class CsvLoadBenchmark {
+    @Param({"1000", "100000"})
+    private int rows;
+
+    private Path dir;
+    private LocalCSVDataPlugin plugin;
+    private List<InputEntry> inputEntries;
+
+    /**
+     * Write the csv file and set the input of the plugin
+     *
+     * @throws IOException if the file can not be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("csv-benchmark");
+        Path csv = dir.resolve("synthetic.csv");
+        SyntheticWeatherData.writeCsv(csv, rows);
+        plugin = new LocalCSVDataPlugin();
+        inputEntries = plugin.getInputEntries();
+        inputEntries.get(0).setValue(csv.toString());
+        inputEntries.get(1).setValue("Pittsburgh");
+        inputEntries.get(2).setValue("Pennsylvania");
+    }
+
+    /**
+     * Delete the csv file
+     *
+     * @throws IOException if the file can not be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for(Path file: (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * @return loaded data
+     */
+    @Benchmark
+    public List<RawWeatherData> loadCsv() {
+        return plugin.loadData(inputEntries);
+    }
+}
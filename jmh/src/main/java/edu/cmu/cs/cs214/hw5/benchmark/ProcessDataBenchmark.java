@@ -0,0 +1,57 @@
+package edu.cmu.cs.cs214.hw5.benchmark;
+
+import edu.cmu.cs.cs214.hw5.core.WeatherIndexFramework;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WeatherIndexFramework.processData end to end (load from a data plugin, generate the indices, commit the data)
+ * with an in-memory data plugin of M cities of N records each, so no I/O is measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessDataBenchmark {
+    @Param({"24", "1000"})
+    private int records;
+
+    @Param({"1", "16"})
+    private int cities;
+
+    private WeatherIndexFramework framework;
+
+    /**
+     * Create the framework with the synthetic data plugin selected
+     */
+    @Setup
+    public void setUp() {
+        framework = new WeatherIndexFramework();
+        SyntheticWeatherData.SyntheticDataPlugin plugin = new SyntheticWeatherData.SyntheticDataPlugin(cities, records);
+        framework.setCurrentDataPlugin(plugin);
+        framework.setDataInputEntries(new ArrayList<>());
+    }
+
+    /**
+     * @return the framework holding the processed data
+     */
+    @Benchmark
+    public WeatherIndexFramework processData() {
+        framework.processData();
+        return framework;
+    }
+}
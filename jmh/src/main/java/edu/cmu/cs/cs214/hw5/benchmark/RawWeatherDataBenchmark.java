@@ -0,0 +1,68 @@
+package edu.cmu.cs.cs214.hw5.benchmark;
+
+import edu.cmu.cs.cs214.hw5.core.MetricSeries;
+import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
+import edu.cmu.cs.cs214.hw5.core.WeatherMetric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.OffsetDateTime;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read a metric of a city of N records, as a SortedMap with getMetric and as a view with getMetricSeries
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RawWeatherDataBenchmark {
+    @Param({"24", "1000", "100000"})
+    private int records;
+
+    @Param({"TEMPERATURE"})
+    private WeatherMetric metric;
+
+    private RawWeatherData rawWeatherData;
+
+    /**
+     * Generate the city
+     */
+    @Setup
+    public void setUp() {
+        rawWeatherData = SyntheticWeatherData.city(0, records);
+    }
+
+    /**
+     * @return the metric as a sorted map
+     */
+    @Benchmark
+    public SortedMap<OffsetDateTime, Double> getMetric() {
+        return rawWeatherData.getMetric(metric);
+    }
+
+    /**
+     * @return sum of the metric read through its series view
+     */
+    @Benchmark
+    public double getMetricSeries() {
+        MetricSeries metricSeries = rawWeatherData.getMetricSeries(metric);
+        double sum = 0;
+        for(int i=0; i<metricSeries.size(); i++) {
+            sum += metricSeries.getValue(i);
+        }
+        return sum;
+    }
+}
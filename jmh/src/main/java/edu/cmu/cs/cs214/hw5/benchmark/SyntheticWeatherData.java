@@ -0,0 +1,183 @@
+package edu.cmu.cs.cs214.hw5.benchmark;
+
+import edu.cmu.cs.cs214.hw5.core.CityInfo;
+import edu.cmu.cs.cs214.hw5.core.DataPlugin;
+import edu.cmu.cs.cs214.hw5.core.InputEntry;
+import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
+import edu.cmu.cs.cs214.hw5.core.State;
+import edu.cmu.cs.cs214.hw5.core.WeatherIndexFrameworkData;
+import edu.cmu.cs.cs214.hw5.core.WeatherMetric;
+import edu.cmu.cs.cs214.hw5.core.WeatherRecord;
+import edu.cmu.cs.cs214.hw5.core.WeatherState;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generators of deterministic synthetic weather data for the benchmarks: hourly records with plausible values of
+ * every metric, as RawWeatherData, as csv files of the LocalCSVDataPlugin format, or from an in-memory data plugin.
+ * The same seed always generates the same data, so runs are comparable.
+ */
+public final class SyntheticWeatherData {
+    /** seed of the generated data */
+    public static final long SEED = 214;
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2020, 4, 1, 0, 0, 0, 0, ZoneOffset.ofHours(-4));
+    private static final String CSV_HEADER = "Datetime,Temperature,Feel Temperature,Wind Speed,Wind Direction,"
+        + "Humidity,Weather State,Rain Probability,Snow Probability,Visibility";
+    private static final WeatherState[] STATES = WeatherState.values();
+    private static final State[] US_STATES = State.values();
+
+    private SyntheticWeatherData() {
+    }
+
+    /**
+     * @return all metrics, as provided by the generated data
+     */
+    public static Set<WeatherMetric> metrics() {
+        return EnumSet.allOf(WeatherMetric.class);
+    }
+
+    /**
+     * @param index index of the city, cities of different indices have different names
+     * @return info of a synthetic city
+     */
+    public static CityInfo cityInfo(int index) {
+        State state = US_STATES[index % US_STATES.length];
+        return new CityInfo("City" + index, state.getName(), state.getAbbr(), 0, 0);
+    }
+
+    /**
+     * @param index index of the city
+     * @param records number of hourly records
+     * @return data of a synthetic city
+     */
+    public static RawWeatherData city(int index, int records) {
+        Random random = new Random(SEED + index);
+        RawWeatherData rawWeatherData = new RawWeatherData(cityInfo(index), metrics());
+        for(int i=0; i<records; i++) {
+            rawWeatherData.addWeatherRecord(START.plusHours(i), record(random, i));
+        }
+        return rawWeatherData;
+    }
+
+    /**
+     * @param cities number of cities
+     * @param records number of hourly records of each city
+     * @return data of synthetic cities
+     */
+    public static List<RawWeatherData> cities(int cities, int records) {
+        List<RawWeatherData> rawWeatherDataList = new ArrayList<>();
+        for(int i=0; i<cities; i++) {
+            rawWeatherDataList.add(city(i, records));
+        }
+        return rawWeatherDataList;
+    }
+
+    /**
+     * Write a csv file of synthetic hourly records, in the format read by LocalCSVDataPlugin
+     *
+     * @param path path of the file
+     * @param rows number of records
+     * @throws IOException if the file can not be written
+     */
+    public static void writeCsv(Path path, int rows) throws IOException {
+        Random random = new Random(SEED);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(CSV_HEADER);
+            writer.newLine();
+            for(int i=0; i<rows; i++) {
+                WeatherRecord record = record(random, i);
+                StringBuilder sb = new StringBuilder();
+                sb.append(START.plusHours(i));
+                for(WeatherMetric metric: WeatherMetric.values()) {
+                    sb.append(',');
+                    if(metric.isNumeric()) {
+                        sb.append(record.getNumeric(metric));
+                    } else {
+                        sb.append(record.getWeatherState().getDescription());
+                    }
+                }
+                writer.write(sb.toString());
+                writer.newLine();
+            }
+        }
+    }
+
+    private static WeatherRecord record(Random random, int hour) {
+        /* daily temperature cycle with noise */
+        double temperature = 55 + 15 * Math.sin(2 * Math.PI * (hour % 24) / 24) + random.nextGaussian() * 3;
+        double windSpeed = Math.abs(8 + random.nextGaussian() * 4);
+        double humidity = Math.min(100, Math.max(0, 65 + random.nextGaussian() * 15));
+        return new WeatherRecord(round(temperature), round(temperature - windSpeed / 4), round(windSpeed),
+            random.nextInt(360), round(humidity), STATES[random.nextInt(STATES.length)], random.nextInt(101),
+            temperature < 35 ? random.nextInt(101) : 0, random.nextInt(11));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    /**
+     * Data plugin serving synthetic cities from memory, to measure the framework without any I/O
+     */
+    public static class SyntheticDataPlugin implements DataPlugin {
+        private final List<RawWeatherData> rawWeatherDataList;
+
+        /**
+         * Constructor
+         *
+         * @param cities number of cities
+         * @param records number of hourly records of each city
+         */
+        public SyntheticDataPlugin(int cities, int records) {
+            rawWeatherDataList = cities(cities, records);
+        }
+
+        /**
+         * @return the name of this data plugin as a string
+         */
+        @Override
+        public String getName() {
+            return "Synthetic";
+        }
+
+        /**
+         * @param inputEntries ignored
+         * @return copies of the synthetic cities (sharing their records)
+         */
+        @Override
+        public List<RawWeatherData> loadData(List<InputEntry> inputEntries) {
+            List<RawWeatherData> copies = new ArrayList<>();
+            for(RawWeatherData rawWeatherData: rawWeatherDataList) {
+                copies.add(new RawWeatherData(rawWeatherData));
+            }
+            return copies;
+        }
+
+        /**
+         * @param framework framework that holds this plugin
+         */
+        @Override
+        public void onRegister(WeatherIndexFrameworkData framework) {
+        }
+
+        /**
+         * @return no input entries
+         */
+        @Override
+        public List<InputEntry> getInputEntries() {
+            return new ArrayList<>();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package edu.cmu.cs.cs214.hw5.benchmark;
+
+import edu.cmu.cs.cs214.hw5.core.ProcessedWeatherData;
+import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
+import edu.cmu.cs.cs214.hw5.core.WeatherIndexGenerator;
+import edu.cmu.cs.cs214.hw5.core.WeatherIndexProcessor;
+import edu.cmu.cs.cs214.hw5.core.WeatherIndexType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generate the weather indices of M cities of N records each, with WeatherIndexGenerator on the calling thread and
+ * with WeatherIndexProcessor on its pool
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeatherIndexBenchmark {
+    @Param({"24", "1000", "10000"})
+    private int records;
+
+    @Param({"1", "16", "64"})
+    private int cities;
+
+    @Param({"4"})
+    private int parallelism;
+
+    private List<RawWeatherData> rawWeatherDataList;
+    private WeatherIndexProcessor processor;
+
+    /**
+     * Generate the cities and start the processor
+     */
+    @Setup
+    public void setUp() {
+        rawWeatherDataList = SyntheticWeatherData.cities(cities, records);
+        processor = new WeatherIndexProcessor(parallelism);
+    }
+
+    /**
+     * Stop the threads of the processor
+     */
+    @TearDown
+    public void tearDown() {
+        processor.shutdown();
+    }
+
+    /**
+     * @param blackhole consumes the indices of each city
+     */
+    @Benchmark
+    public void generate(Blackhole blackhole) {
+        for(RawWeatherData rawWeatherData: rawWeatherDataList) {
+            Map<WeatherIndexType, Double> indices = new WeatherIndexGenerator(rawWeatherData).generate();
+            blackhole.consume(indices);
+        }
+    }
+
+    /**
+     * @return indices of all cities generated in parallel
+     */
+    @Benchmark
+    public List<ProcessedWeatherData> process() {
+        return processor.process(rawWeatherDataList);
+    }
+}
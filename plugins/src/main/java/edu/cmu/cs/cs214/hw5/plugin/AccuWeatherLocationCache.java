@@ -0,0 +1,189 @@
+package edu.cmu.cs.cs214.hw5.plugin;
+
+import edu.cmu.cs.cs214.hw5.core.CityInfo;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of AccuWeather location keys resolved by the locations search endpoint, so a city is only searched once.
+ * Entries are kept in memory and persisted to a json file (by default ~/.weather-index/accuweather-locations.json,
+ * set with -Dwebapi.locationCache=path, disabled with -Dwebapi.locationCache=false) and expire after
+ * -Dwebapi.locationCacheTtlDays=N days (default 30).
+ *
+ * Failures to read or write the file are ignored, the cache then only lives in memory.
+ */
+class AccuWeatherLocationCache {
+    private static final String DEFAULT_FILE = ".weather-index/accuweather-locations.json";
+    private static final long DEFAULT_TTL_DAYS = 30;
+
+    private static final String LOCATION_ID = "locationId";
+    private static final String CITY_NAME = "cityName";
+    private static final String STATE_FULL_NAME = "stateFullName";
+    private static final String STATE_ABBR_NAME = "stateAbbrName";
+    private static final String LATITUDE = "latitude";
+    private static final String LONGITUDE = "longitude";
+    private static final String RESOLVED_AT = "resolvedAt";
+
+    private static final AccuWeatherLocationCache SHARED = new AccuWeatherLocationCache(defaultFile(),
+        Duration.ofDays(Long.getLong("webapi.locationCacheTtlDays", DEFAULT_TTL_DAYS)));
+
+    /* null if the cache is not persisted */
+    private final Path file;
+    private final long ttlMillis;
+    private final Map<String, Location> locations = new ConcurrentHashMap<>();
+    private boolean loaded;
+
+    /**
+     * A resolved location
+     */
+    static class Location {
+        private final int locationId;
+        private final CityInfo cityInfo;
+        private final long resolvedAt;
+
+        Location(int locationId, CityInfo cityInfo, long resolvedAt) {
+            this.locationId = locationId;
+            this.cityInfo = cityInfo;
+            this.resolvedAt = resolvedAt;
+        }
+
+        /**
+         * @return AccuWeather location key
+         */
+        int getLocationId() {
+            return locationId;
+        }
+
+        /**
+         * @return info of the city found
+         */
+        CityInfo getCityInfo() {
+            return cityInfo;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param file file to persist the cache to, null to keep it in memory only
+     * @param ttl time after which an entry is searched again
+     */
+    AccuWeatherLocationCache(Path file, Duration ttl) {
+        this.file = file;
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    /**
+     * @return cache shared by the plugins, configured by system properties
+     */
+    static AccuWeatherLocationCache shared() {
+        return SHARED;
+    }
+
+    private static Path defaultFile() {
+        String path = System.getProperty("webapi.locationCache");
+        if("false".equalsIgnoreCase(path)) {
+            return null;
+        } else if(path != null) {
+            return Paths.get(path);
+        }
+        return Paths.get(System.getProperty("user.home"), DEFAULT_FILE);
+    }
+
+    /**
+     * @param cityName city name input by the user
+     * @param stateInfo state name or abbreviation input by the user
+     * @return the location resolved for the input, null if it is not cached or expired
+     */
+    Location get(String cityName, String stateInfo) {
+        loadOnce();
+        Location location = locations.get(key(cityName, stateInfo));
+        if(location == null || System.currentTimeMillis() - location.resolvedAt > ttlMillis) {
+            return null;
+        }
+        return location;
+    }
+
+    /**
+     * Cache the location resolved for an input, and persist the cache
+     *
+     * @param cityName city name input by the user
+     * @param stateInfo state name or abbreviation input by the user
+     * @param locationId AccuWeather location key
+     * @param cityInfo info of the city found
+     */
+    void put(String cityName, String stateInfo, int locationId, CityInfo cityInfo) {
+        loadOnce();
+        locations.put(key(cityName, stateInfo), new Location(locationId, cityInfo, System.currentTimeMillis()));
+        save();
+    }
+
+    private static String key(String cityName, String stateInfo) {
+        return cityName.trim().toLowerCase(Locale.ROOT) + "," + stateInfo.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private synchronized void loadOnce() {
+        if(loaded) {
+            return;
+        }
+        loaded = true;
+        if(file == null || !Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            for(String key: json.keySet()) {
+                JSONObject entry = json.getJSONObject(key);
+                CityInfo cityInfo = new CityInfo(entry.getString(CITY_NAME), entry.getString(STATE_FULL_NAME),
+                    entry.getString(STATE_ABBR_NAME), entry.getDouble(LATITUDE), entry.getDouble(LONGITUDE));
+                locations.putIfAbsent(key, new Location(entry.getInt(LOCATION_ID), cityInfo,
+                    entry.getLong(RESOLVED_AT)));
+            }
+        } catch (IOException | JSONException e) {
+            /* unreadable cache, start over */
+        }
+    }
+
+    private synchronized void save() {
+        if(file == null) {
+            return;
+        }
+        JSONObject json = new JSONObject();
+        for(Map.Entry<String, Location> entry: locations.entrySet()) {
+            Location location = entry.getValue();
+            CityInfo cityInfo = location.cityInfo;
+            json.put(entry.getKey(), new JSONObject()
+                .put(LOCATION_ID, location.locationId)
+                .put(CITY_NAME, cityInfo.getCityName())
+                .put(STATE_FULL_NAME, cityInfo.getStateFullName())
+                .put(STATE_ABBR_NAME, cityInfo.getStateAbbrName())
+                .put(LATITUDE, cityInfo.getLatitude())
+                .put(LONGITUDE, cityInfo.getLongitude())
+                .put(RESOLVED_AT, location.resolvedAt));
+        }
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tmp, json.toString().getBytes(StandardCharsets.UTF_8));
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            /* the cache stays in memory only */
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package edu.cmu.cs.cs214.hw5.plugin;
+
+import edu.cmu.cs.cs214.hw5.core.CityInfo;
+import edu.cmu.cs.cs214.hw5.core.DaemonThreadFactory;
+import edu.cmu.cs.cs214.hw5.core.PipelineMetrics;
+import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
+import edu.cmu.cs.cs214.hw5.core.WeatherMetric;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Loads every csv file of a directory or glob pattern (e.g. data/2019-*.csv) concurrently and groups the records
+ * by city, so a whole archive can be loaded at once.
+ *
+ * The city of a file is taken from its City and State columns, otherwise from a manifest.csv (columns File, City
+ * and State, file paths relative to the manifest) in the base directory, otherwise from the default city.
+ */
+class CSVBatchLoader {
+    static final String MANIFEST_NAME = "manifest.csv";
+    private static final String FILE_COLUMN = "File";
+    private static final String CSV_SUFFIX = ".csv";
+    private static final String GLOB_CHARS = "*?[{";
+
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final long IDLE_THREAD_KEEP_ALIVE_SEC = 30;
+    private static final ExecutorService EXECUTOR;
+
+    static {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(PARALLELISM, PARALLELISM,
+            IDLE_THREAD_KEEP_ALIVE_SEC, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            new DaemonThreadFactory("csv-batch"));
+        pool.allowCoreThreadTimeOut(true);
+        EXECUTOR = pool;
+    }
+
+    private CSVBatchLoader() {
+    }
+
+    /**
+     * @param path path input by the user
+     * @return true if the path is a directory or a glob pattern
+     */
+    static boolean isBatchPath(String path) {
+        for(char c: GLOB_CHARS.toCharArray()) {
+            if(path.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return Files.isDirectory(Paths.get(path));
+    }
+
+    /**
+     * Load all csv files of a directory (recursively) or matching a glob pattern
+     *
+     * @param path directory or glob pattern
+     * @param defaultCityInfo city of the files without city columns or manifest entry, may be null
+     * @param metrics metrics the bytes read are recorded in
+     * @return one data set per city, in the order of the first file (by path) of each city
+     * @throws IllegalArgumentException if no csv file matches the path
+     * @throws IllegalStateException if a file is invalid or names no city, the error of the first such file is thrown
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    static List<RawWeatherData> load(String path, CityInfo defaultCityInfo, PipelineMetrics metrics) {
+        Path baseDir = baseDir(path);
+        List<Path> files = listFiles(path, baseDir);
+        if(files.isEmpty()) {
+            throw new IllegalArgumentException("No csv file matches " + path);
+        }
+        Map<Path, CityInfo> manifest = readManifest(baseDir);
+
+        List<Future<RawWeatherData>> futures = new ArrayList<>();
+        for(Path file: files) {
+            CityInfo cityInfo = manifest.getOrDefault(file.toAbsolutePath().normalize(), defaultCityInfo);
+            futures.add(EXECUTOR.submit(() -> WeatherCSVReader.read(file, cityInfo, metrics)));
+        }
+
+        Map<String, RawWeatherData> cities = new LinkedHashMap<>();
+        try {
+            for(int i=0; i<futures.size(); i++) {
+                RawWeatherData fileData = getFileData(futures.get(i), files.get(i));
+                CityInfo cityInfo = fileData.getCityInfo();
+                String key = cityInfo.getCityName().toLowerCase(Locale.ROOT) + "," + cityInfo.getStateAbbrName();
+                RawWeatherData cityData = cities.get(key);
+                if(cityData == null) {
+                    cities.put(key, fileData);
+                    continue;
+                }
+                if(cityData.isReadOnly()) {
+                    /* a mapped data set can not be merged into, copy the first file of the city to the heap */
+                    cityData = heapCopy(cityData);
+                    cities.put(key, cityData);
+                }
+                if(!addFileData(cityData, fileData)) {
+                    throw new IllegalStateException("Files of " + cityInfo.getCityName()
+                        + " provide different metrics (" + files.get(i) + ")");
+                }
+            }
+        } finally {
+            for(Future<RawWeatherData> future: futures) {
+                future.cancel(false);
+            }
+        }
+        return new ArrayList<>(cities.values());
+    }
+
+    private static RawWeatherData getFileData(Future<RawWeatherData> future, Path file) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("CSV loading cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw new IllegalStateException("Fail to parse csv file " + file);
+            } else if(cause instanceof RuntimeException) {
+                /* name the file, unless the message already does (e.g. "No city for csv file <file>") */
+                String message = cause.getMessage();
+                if(message == null) {
+                    message = "Fail to parse csv file " + file;
+                } else if(!message.contains(file.toString())) {
+                    message += " (" + file + ")";
+                }
+                throw new IllegalStateException(message, cause);
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private static RawWeatherData heapCopy(RawWeatherData rawWeatherData) {
+        Set<WeatherMetric> metrics = EnumSet.noneOf(WeatherMetric.class);
+        for(WeatherMetric metric: WeatherMetric.values()) {
+            if(rawWeatherData.metricProvided(metric)) {
+                metrics.add(metric);
+            }
+        }
+        RawWeatherData copy = new RawWeatherData(rawWeatherData.getCityInfo(), metrics);
+        copy.addWeatherRecords(rawWeatherData);
+        return copy;
+    }
+
+    private static boolean addFileData(RawWeatherData cityData, RawWeatherData fileData) {
+        try {
+            cityData.addWeatherRecords(fileData);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the directory itself, or the deepest directory of a glob pattern that has no glob characters
+     */
+    private static Path baseDir(String path) {
+        int globStart = path.length();
+        for(char c: GLOB_CHARS.toCharArray()) {
+            int index = path.indexOf(c);
+            if(index >= 0) {
+                globStart = Math.min(globStart, index);
+            }
+        }
+        if(globStart == path.length()) {
+            return Paths.get(path);
+        }
+        String prefix = path.substring(0, globStart);
+        int separator = Math.max(prefix.lastIndexOf('/'), prefix.lastIndexOf(File.separatorChar));
+        return separator < 0 ? Paths.get("") : Paths.get(prefix.substring(0, separator + 1));
+    }
+
+    private static List<Path> listFiles(String path, Path baseDir) {
+        if(!Files.isDirectory(baseDir)) {
+            throw new IllegalArgumentException("File not found " + baseDir);
+        }
+        boolean glob = !Files.isDirectory(Paths.get(path));
+        PathMatcher matcher = glob ? FileSystems.getDefault().getPathMatcher("glob:" + path) : null;
+        try (Stream<Path> paths = Files.walk(baseDir)) {
+            return paths
+                .filter(Files::isRegularFile)
+                .filter(file -> glob ? matcher.matches(file)
+                    : file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(CSV_SUFFIX))
+                .filter(file -> !file.getFileName().toString().equalsIgnoreCase(MANIFEST_NAME))
+                .filter(file -> !file.getFileName().toString().endsWith(WeatherCSVReader.CACHE_SUFFIX))
+                .sorted()
+                .collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            throw new IllegalStateException("Fail to list csv files in " + baseDir);
+        }
+    }
+
+    /**
+     * @return city of each file listed in the manifest of the directory, by absolute path
+     */
+    private static Map<Path, CityInfo> readManifest(Path baseDir) {
+        Path manifestPath = baseDir.resolve(MANIFEST_NAME);
+        Map<Path, CityInfo> manifest = new HashMap<>();
+        if(!Files.isRegularFile(manifestPath)) {
+            return manifest;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(manifestPath, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Fail to parse csv file " + manifestPath);
+        }
+        if(lines.isEmpty()) {
+            return manifest;
+        }
+        List<String> headers = WeatherCSVReader.splitLine(lines.get(0));
+        int fileCol = indexOfIgnoreCase(headers, FILE_COLUMN);
+        int cityCol = indexOfIgnoreCase(headers, WeatherCSVReader.CITY_COLUMN);
+        int stateCol = indexOfIgnoreCase(headers, WeatherCSVReader.STATE_COLUMN);
+        if(fileCol < 0 || cityCol < 0 || stateCol < 0) {
+            throw new IllegalStateException("Invalid manifest " + manifestPath);
+        }
+        for(String line: lines.subList(1, lines.size())) {
+            if(line.isBlank()) {
+                continue;
+            }
+            List<String> fields = WeatherCSVReader.splitLine(line);
+            if(fields.size() != headers.size()) {
+                throw new IllegalStateException("Invalid manifest " + manifestPath);
+            }
+            Path file = baseDir.resolve(fields.get(fileCol).trim()).toAbsolutePath().normalize();
+            manifest.put(file, WeatherCSVReader.cityInfoOf(fields.get(cityCol), fields.get(stateCol)));
+        }
+        return manifest;
+    }
+
+    private static int indexOfIgnoreCase(List<String> headers, String header) {
+        for(int i=0; i<headers.size(); i++) {
+            if(headers.get(i).trim().equalsIgnoreCase(header)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,51 @@
+package edu.cmu.cs.cs214.hw5.plugin;
+
+import edu.cmu.cs.cs214.hw5.core.DisplayPlugin;
+import edu.cmu.cs.cs214.hw5.core.InputEntry;
+import edu.cmu.cs.cs214.hw5.core.ProcessedWeatherData;
+import org.knowm.xchart.XChartPanel;
+import org.knowm.xchart.internal.chartpart.Chart;
+
+import javax.swing.JPanel;
+import java.awt.BorderLayout;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A display plugin drawing an XChart chart. The chart can be generated without the Swing panel of generateGraph,
+ * so it can be rendered without a display (e.g. with BitmapEncoder in headless mode), or generated off the event
+ * dispatch thread by prepareGraph.
+ */
+public interface ChartDisplayPlugin extends DisplayPlugin {
+    /**
+     * Generate the chart of generateGraph from given data and user input
+     *
+     * @param inputEntries list of input entries that is specified by getInputEntries with the user input being set.
+     * @param data         list of processed data used by this plugin
+     * @return the chart, not attached to any component
+     * @throws IllegalArgumentException if any user input is invalid
+     * @throws IllegalStateException    if any internal error happens during generating the chart
+     */
+    Chart<?, ?> generateChart(List<InputEntry> inputEntries, List<ProcessedWeatherData> data)
+        throws IllegalArgumentException, IllegalStateException;
+
+    /**
+     * Generate the chart, only its panel is left to the event dispatch thread
+     */
+    @Override
+    default Supplier<JPanel> prepareGraph(List<InputEntry> inputEntries, List<ProcessedWeatherData> data)
+        throws IllegalArgumentException, IllegalStateException {
+        Chart<?, ?> chart = generateChart(inputEntries, data);
+        return () -> chartPanel(chart);
+    }
+
+    /**
+     * @param chart chart of a display plugin
+     * @return panel showing the chart, as returned by generateGraph
+     */
+    static JPanel chartPanel(Chart<?, ?> chart) {
+        JPanel resPanel = new JPanel();
+        resPanel.add(new XChartPanel<>(chart), BorderLayout.CENTER);
+        return resPanel;
+    }
+}
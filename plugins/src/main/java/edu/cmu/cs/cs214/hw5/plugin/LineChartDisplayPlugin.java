@@ -1,34 +1,30 @@
 package edu.cmu.cs.cs214.hw5.plugin;
 
-import edu.cmu.cs.cs214.hw5.core.DisplayPlugin;
 import edu.cmu.cs.cs214.hw5.core.InputEntry;
+import edu.cmu.cs.cs214.hw5.core.MetricSeries;
 import edu.cmu.cs.cs214.hw5.core.ProcessedWeatherData;
 import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
 import edu.cmu.cs.cs214.hw5.core.SelectMultipleInputEntry;
 import edu.cmu.cs.cs214.hw5.core.SelectOneInputEntry;
 import edu.cmu.cs.cs214.hw5.core.WeatherIndexFrameworkDisplay;
 import edu.cmu.cs.cs214.hw5.core.WeatherMetric;
-import org.knowm.xchart.XChartPanel;
 import org.knowm.xchart.XYChart;
 import org.knowm.xchart.XYChartBuilder;
 import org.knowm.xchart.XYSeries;
 import org.knowm.xchart.style.Styler;
 
 import javax.swing.JPanel;
-import java.awt.BorderLayout;
-import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
 
 
 /**
  * A display plugin to display line chart
  */
-public class LineChartDisplayPlugin implements DisplayPlugin {
+public class LineChartDisplayPlugin implements ChartDisplayPlugin {
 
     private static final String NAME = "LineChartDisplayPlugin";
 
@@ -64,6 +60,21 @@ public class LineChartDisplayPlugin implements DisplayPlugin {
      */
     @Override
     public JPanel generateGraph(List<InputEntry> inputEntries, List<ProcessedWeatherData> data) throws IllegalArgumentException, IllegalStateException {
+        return ChartDisplayPlugin.chartPanel(generateChart(inputEntries, data));
+    }
+
+    /**
+     * Generate the chart of generateGraph from given data and user input, without any Swing component
+     *
+     * @param inputEntries list of input entries that is specified by getInputEntries with the user input being set.
+     * @param data         list of processed data used by this plugin
+     * @return the chart
+     * @throws IllegalArgumentException if any user input is invalid
+     * @throws IllegalStateException    if any internal error happens during generating the chart
+     */
+    @Override
+    public XYChart generateChart(List<InputEntry> inputEntries, List<ProcessedWeatherData> data)
+        throws IllegalArgumentException, IllegalStateException {
         if(inputEntries == null || inputEntries.get(0).getValue() == null ||
             inputEntries.get(1).getValue() == null || inputEntries.get(1).getValue().trim().equals("")) {
             throw new IllegalArgumentException("Invalid Input");
@@ -81,34 +92,31 @@ public class LineChartDisplayPlugin implements DisplayPlugin {
             throw new IllegalArgumentException("Please select at least 1 city");
         }
 
-        Map<String, SortedMap<OffsetDateTime, Double>> metricDataMap = getMetricData(cityNameList,
+        Map<String, MetricSeries> metricDataMap = getMetricData(cityNameList,
                 data, metric);
 
         // labels: city name
         List<String> labels = new ArrayList<>(metricDataMap.keySet());
 
         // length of x axis
-        int minSize = Integer.MAX_VALUE;
+        int minSize = metricDataMap.isEmpty() ? 0 : Integer.MAX_VALUE;
 
         // x data
-        List<Integer> xData = new ArrayList<>();
-        for (SortedMap<OffsetDateTime, Double> sortedMap :
-                metricDataMap.values()) {
-            if (sortedMap.size() < minSize) {
-                minSize = sortedMap.size();
+        for (MetricSeries metricSeries : metricDataMap.values()) {
+            if (metricSeries.size() < minSize) {
+                minSize = metricSeries.size();
             }
         }
+        double[] xData = new double[minSize];
         for (int i = 0; i < minSize; i++) {
-            xData.add(i);
+            xData[i] = i;
         }
 
         // y data
-        List<List<Double>> yData = new ArrayList<>();
+        List<double[]> yData = new ArrayList<>();
         for (String label : labels) {
-            SortedMap<OffsetDateTime, Double> sortedMap =
-                    metricDataMap.get(label);
-            List<Double> singleyData = new ArrayList<>(sortedMap.values());
-            yData.add(singleyData.subList(0, minSize));
+            MetricSeries metricSeries = metricDataMap.get(label);
+            yData.add(metricSeries.values().limit(minSize).toArray());
         }
 
         // Plot
@@ -131,10 +139,7 @@ public class LineChartDisplayPlugin implements DisplayPlugin {
             chart.addSeries(labelData, xData, yData.get(i));
         }
 
-        JPanel resPanel = new JPanel();
-        resPanel.add(new XChartPanel<>(chart), BorderLayout.CENTER);
-
-        return resPanel;
+        return chart;
     }
 
     /**
@@ -195,9 +200,9 @@ public class LineChartDisplayPlugin implements DisplayPlugin {
 
 
     // Get metric data for all the cities
-    private Map<String, SortedMap<OffsetDateTime, Double>> getMetricData(List<String> cityNameList,
-                                                                         List<ProcessedWeatherData> data, String metric) {
-        Map<String, SortedMap<OffsetDateTime, Double>> metricData = new HashMap<>();
+    private Map<String, MetricSeries> getMetricData(List<String> cityNameList,
+                                                    List<ProcessedWeatherData> data, String metric) {
+        Map<String, MetricSeries> metricData = new HashMap<>();
 
         WeatherMetric weatherMetric = WeatherMetric.byDescription(metric.toLowerCase());
 
@@ -207,8 +212,8 @@ public class LineChartDisplayPlugin implements DisplayPlugin {
                         new RawWeatherData(processedWeatherData.getRawWeatherData());
                 if (s.equals(rawWeatherData.getCityInfo().getCityName())) {
                     if (rawWeatherData.metricProvided(weatherMetric)) {
-                        SortedMap<OffsetDateTime, Double> singleMetricData =
-                                rawWeatherData.getMetric(weatherMetric);
+                        MetricSeries singleMetricData =
+                                rawWeatherData.getMetricSeries(weatherMetric);
                         metricData.put(s, singleMetricData);
                     } else {
                         throw new IllegalStateException(METRIC_NOT_AVAIL_ERR_MSG + "for: " + s);
@@ -1,47 +1,43 @@
 package edu.cmu.cs.cs214.hw5.plugin;
 
-import com.opencsv.CSVReader;
-import com.opencsv.exceptions.CsvValidationException;
 import edu.cmu.cs.cs214.hw5.core.CityInfo;
 import edu.cmu.cs.cs214.hw5.core.DataPlugin;
 import edu.cmu.cs.cs214.hw5.core.InputEntry;
 import edu.cmu.cs.cs214.hw5.core.PathInputEntry;
+import edu.cmu.cs.cs214.hw5.core.PipelineMetrics;
 import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
 import edu.cmu.cs.cs214.hw5.core.SelectOneInputEntry;
 import edu.cmu.cs.cs214.hw5.core.State;
 import edu.cmu.cs.cs214.hw5.core.TextInputEntry;
 import edu.cmu.cs.cs214.hw5.core.WeatherIndexFrameworkData;
-import edu.cmu.cs.cs214.hw5.core.WeatherMetric;
-import edu.cmu.cs.cs214.hw5.core.WeatherRecord;
-import edu.cmu.cs.cs214.hw5.core.WeatherState;
 
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.time.OffsetDateTime;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 
 /**
- * A data plugin from local csv
+ * A data plugin from local csv. The path can be a single file, or a directory / glob pattern to load many files at
+ * once (see CSVBatchLoader), giving one data set per city.
  */
 public class LocalCSVDataPlugin implements DataPlugin {
     private static final String NAME = "LocalCSVHourlyData";
 
     private static final String PATH_ENTRY_LABEL = "File Path";
-    private static final String PATH_ENTRY_HELP_MSG = "Path of the csv file";
+    private static final String PATH_ENTRY_HELP_MSG = "Path of the csv file, or a directory / glob pattern (e.g. data/*.csv) to load many files";
 
     private static final String CITY_ENTRY_LABEL = "City Name";
-    private static final String CITY_ENTRY_HELP_MSG = "Input city name of loaded CSV";
+    private static final String CITY_ENTRY_HELP_MSG = "Input city name of loaded CSV (optional if the files have City and State columns or a manifest.csv)";
 
     private static final String STATE_ENTRY_LABEL = "State Name";
     private static final String STATE_ENTRY_HELP_MSG = "Select State of the city";
 
     private static final int ENTRYCNT = 3;
     private List<InputEntry> inputEntries;
+    private WeatherIndexFrameworkData framework;
 
     /**
      * Constructor
@@ -64,66 +60,18 @@ public class LocalCSVDataPlugin implements DataPlugin {
         inputEntries.add(stateNameEntry);
     }
 
-    private RawWeatherData loadCSV(String path, String cityName, String stateName) {
-        CSVReader csvReader;
-        try {
-            FileReader fileReader = new FileReader(path);
-            csvReader = new CSVReader(fileReader);
-        } catch (FileNotFoundException ex) {
+    private RawWeatherData loadCSV(String path, CityInfo cityInfo) {
+        Path csvPath = Paths.get(path);
+        if(!Files.isRegularFile(csvPath)) {
             throw new IllegalArgumentException("File not found " + path);
         }
-        String[] headers;
-        try {
-            headers = csvReader.readNext();
-        } catch (CsvValidationException | IOException e) {
-            throw new IllegalStateException("Fail to parse csv file");
-        }
-
-        List<WeatherMetric> providedMetrics = new ArrayList<>();
-        for(int i=1; i<headers.length; i++) {
-            if(!WeatherMetric.contains(headers[i])) {
-                throw new IllegalStateException("Invalid Metric " + headers[i]);
-            } else {
-                providedMetrics.add(WeatherMetric.byDescription(headers[i]));
-            }
-        }
-
-        State state = State.getByName(stateName);
-        RawWeatherData rawWeatherData = new RawWeatherData(new CityInfo(cityName, state.getName(), state.getAbbr(), 0, 0), new HashSet<>(providedMetrics));
-
         try {
-            String[] recordStr;
-            while((recordStr = csvReader.readNext()) != null) {
-                // read a new line
-                if(recordStr.length != providedMetrics.size() + 1) {
-                    throw new IllegalStateException("Invalid CSV file");
-                }
-
-                Map<WeatherMetric, Double> metricDataMap = new HashMap<>();
-                WeatherState weatherState = null;
-                OffsetDateTime dateTime = OffsetDateTime.parse(recordStr[0]);
-
-                for(int i=1; i<recordStr.length; i++) {
-                    String dataStr = recordStr[i];
-                    WeatherMetric metric = providedMetrics.get(i-1);
-                    if(!metric.equals(WeatherMetric.WEATHERSTATE)) {
-                        metricDataMap.put(metric, Double.parseDouble(dataStr));
-                    } else {
-                        if(!WeatherState.contains(dataStr)) {
-                            throw new IllegalStateException("Invalid weather state " + dataStr);
-                        } else {
-                            weatherState = WeatherState.byDescription(dataStr);
-                        }
-                    }
-                }
-                WeatherRecord record = new WeatherRecord(metricDataMap, weatherState);
-                rawWeatherData.addWeatherRecord(dateTime, record);
-            }
-        } catch (CsvValidationException | IOException e) {
+            return WeatherCSVReader.read(csvPath, cityInfo, metrics());
+        } catch (NoSuchFileException e) {
+            throw new IllegalArgumentException("File not found " + path);
+        } catch (IOException e) {
             throw new IllegalStateException("Fail to parse csv file");
         }
-
-        return rawWeatherData;
     }
 
     /**
@@ -149,9 +97,19 @@ public class LocalCSVDataPlugin implements DataPlugin {
         }
         String path = inputEntries.get(0).getValue().trim();
         String cityName = inputEntries.get(1).getValue().trim();
-        String stateName = inputEntries.get(2).getValue().trim();
+        String stateName = inputEntries.get(2).getValue();
+
+        /* city input is optional if the files name their city */
+        CityInfo cityInfo = null;
+        if(!cityName.isEmpty()) {
+            State state = State.getByName(stateName == null ? "" : stateName.trim());
+            cityInfo = new CityInfo(cityName, state.getName(), state.getAbbr(), 0, 0);
+        }
 
-        RawWeatherData rawWeatherData = loadCSV(path, cityName, stateName);
+        if(CSVBatchLoader.isBatchPath(path)) {
+            return CSVBatchLoader.load(path, cityInfo, metrics());
+        }
+        RawWeatherData rawWeatherData = loadCSV(path, cityInfo);
         return List.of(rawWeatherData);
     }
 
@@ -162,7 +120,15 @@ public class LocalCSVDataPlugin implements DataPlugin {
      */
     @Override
     public void onRegister(WeatherIndexFrameworkData framework) {
+        this.framework = framework;
+    }
 
+    /**
+     * @return metrics of the framework that holds this plugin, the shared metrics if it is not registered
+     */
+    private PipelineMetrics metrics() {
+        WeatherIndexFrameworkData registeredFramework = framework;
+        return registeredFramework == null ? PipelineMetrics.shared() : registeredFramework.getMetrics();
     }
 
     /**
@@ -1,31 +1,26 @@
 package edu.cmu.cs.cs214.hw5.plugin;
 
-import edu.cmu.cs.cs214.hw5.core.DisplayPlugin;
 import edu.cmu.cs.cs214.hw5.core.InputEntry;
 import edu.cmu.cs.cs214.hw5.core.ProcessedWeatherData;
 import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
 import edu.cmu.cs.cs214.hw5.core.SelectOneInputEntry;
 import edu.cmu.cs.cs214.hw5.core.WeatherIndexFrameworkDisplay;
 import edu.cmu.cs.cs214.hw5.core.WeatherMetric;
-import edu.cmu.cs.cs214.hw5.core.WeatherState;
+import edu.cmu.cs.cs214.hw5.core.WeatherStateSeries;
 import org.knowm.xchart.PieChart;
 import org.knowm.xchart.PieChartBuilder;
-import org.knowm.xchart.XChartPanel;
 
 import javax.swing.JPanel;
-import java.awt.BorderLayout;
 import java.awt.Color;
-import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
 
 /**
  * A display plugin to display pie chart
  */
-public class PieChartDisplayPlugin implements DisplayPlugin {
+public class PieChartDisplayPlugin implements ChartDisplayPlugin {
 
     private static final String NAME = "PieChartDisplayPlugin";
 
@@ -65,6 +60,21 @@ public class PieChartDisplayPlugin implements DisplayPlugin {
      */
     @Override
     public JPanel generateGraph(List<InputEntry> inputEntries, List<ProcessedWeatherData> data) throws IllegalArgumentException, IllegalStateException {
+        return ChartDisplayPlugin.chartPanel(generateChart(inputEntries, data));
+    }
+
+    /**
+     * Generate the chart of generateGraph from given data and user input, without any Swing component
+     *
+     * @param inputEntries list of input entries that is specified by getInputEntries with the user input being set.
+     * @param data         list of processed data used by this plugin
+     * @return the chart
+     * @throws IllegalArgumentException if any user input is invalid
+     * @throws IllegalStateException    if any internal error happens during generating the chart
+     */
+    @Override
+    public PieChart generateChart(List<InputEntry> inputEntries, List<ProcessedWeatherData> data)
+        throws IllegalArgumentException, IllegalStateException {
         if(inputEntries == null || inputEntries.get(0).getValue() == null || inputEntries.get(1).getValue() == null) {
             throw new IllegalArgumentException("Invalid Input");
         }
@@ -86,7 +96,7 @@ public class PieChartDisplayPlugin implements DisplayPlugin {
                 getWeatherMetric(inputEntries.get(1).getValue().trim());
 
         // Get metric data
-        SortedMap<OffsetDateTime, WeatherState> metricData =
+        WeatherStateSeries metricData =
                 getMetricData(metric, rawWeatherData);
 
         // Get plot data
@@ -112,10 +122,7 @@ public class PieChartDisplayPlugin implements DisplayPlugin {
             chart.addSeries(entry.getKey(), entry.getValue());
         }
 
-        JPanel resPanel = new JPanel();
-        resPanel.add(new XChartPanel<>(chart), BorderLayout.CENTER);
-
-        return resPanel;
+        return chart;
     }
 
     /**
@@ -174,23 +181,23 @@ public class PieChartDisplayPlugin implements DisplayPlugin {
         inputEntries.add(metricInputEntry);
     }
 
-    private Map<String, Integer> getPlotData(SortedMap<OffsetDateTime, WeatherState> metricData) {
+    private Map<String, Integer> getPlotData(WeatherStateSeries metricData) {
         Map<String, Integer> plotData = new HashMap<>();
-        for (Map.Entry<OffsetDateTime, WeatherState> entry : metricData.entrySet()) {
-            if (!plotData.containsKey(entry.getValue().getDescription())) {
-                plotData.put(entry.getValue().getDescription(), 1);
+        for (int i = 0; i < metricData.size(); i++) {
+            String description = metricData.getState(i).getDescription();
+            if (!plotData.containsKey(description)) {
+                plotData.put(description, 1);
             } else {
-                plotData.put(entry.getValue().getDescription(),
-                        plotData.get(entry.getValue().getDescription()) + 1);
+                plotData.put(description, plotData.get(description) + 1);
             }
         }
         return plotData;
     }
 
 
-    private SortedMap<OffsetDateTime, WeatherState> getMetricData(WeatherMetric metric, RawWeatherData rawWeatherData) throws IllegalArgumentException {
+    private WeatherStateSeries getMetricData(WeatherMetric metric, RawWeatherData rawWeatherData) throws IllegalArgumentException {
         if (rawWeatherData.weatherStateProvided()) {
-            return rawWeatherData.getWeatherState();
+            return rawWeatherData.getWeatherStateSeries();
         } else {
             throw new IllegalArgumentException(METRIC_NOT_FIT_ERROR_MSG);
         }
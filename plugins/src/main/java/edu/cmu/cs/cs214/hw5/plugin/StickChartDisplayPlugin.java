@@ -1,6 +1,5 @@
 package edu.cmu.cs.cs214.hw5.plugin;
 
-import edu.cmu.cs.cs214.hw5.core.DisplayPlugin;
 import edu.cmu.cs.cs214.hw5.core.InputEntry;
 import edu.cmu.cs.cs214.hw5.core.ProcessedWeatherData;
 import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
@@ -12,11 +11,9 @@ import edu.cmu.cs.cs214.hw5.core.WeatherIndexType;
 import org.knowm.xchart.CategoryChart;
 import org.knowm.xchart.CategoryChartBuilder;
 import org.knowm.xchart.CategorySeries;
-import org.knowm.xchart.XChartPanel;
 import org.knowm.xchart.style.Styler;
 
 import javax.swing.JPanel;
-import java.awt.BorderLayout;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -25,7 +22,7 @@ import java.util.Map;
 /**
  * A display plugin to display stick chart
  */
-public class StickChartDisplayPlugin implements DisplayPlugin {
+public class StickChartDisplayPlugin implements ChartDisplayPlugin {
 
     private static final String NAME = "StickChartDisplayPlugin";
 
@@ -64,6 +61,21 @@ public class StickChartDisplayPlugin implements DisplayPlugin {
      */
     @Override
     public JPanel generateGraph(List<InputEntry> inputEntries, List<ProcessedWeatherData> data) throws IllegalArgumentException, IllegalStateException {
+        return ChartDisplayPlugin.chartPanel(generateChart(inputEntries, data));
+    }
+
+    /**
+     * Generate the chart of generateGraph from given data and user input, without any Swing component
+     *
+     * @param inputEntries list of input entries that is specified by getInputEntries with the user input being set.
+     * @param data         list of processed data used by this plugin
+     * @return the chart
+     * @throws IllegalArgumentException if any user input is invalid
+     * @throws IllegalStateException    if any internal error happens during generating the chart
+     */
+    @Override
+    public CategoryChart generateChart(List<InputEntry> inputEntries, List<ProcessedWeatherData> data)
+        throws IllegalArgumentException, IllegalStateException {
         if(inputEntries == null || inputEntries.get(0).getValue() == null || inputEntries.get(1).getValue() == null) {
             throw new IllegalArgumentException("Invalid Input");
         }
@@ -100,10 +112,7 @@ public class StickChartDisplayPlugin implements DisplayPlugin {
         // add series
         chart.addSeries("Index", xdata, ydata);
 
-        JPanel resPanel = new JPanel();
-        resPanel.add(new XChartPanel<>(chart), BorderLayout.CENTER);
-
-        return resPanel;
+        return chart;
     }
 
     /**
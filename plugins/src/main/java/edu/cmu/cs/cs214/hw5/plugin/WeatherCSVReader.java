@@ -0,0 +1,805 @@
+package edu.cmu.cs.cs214.hw5.plugin;
+
+import edu.cmu.cs.cs214.hw5.core.CityInfo;
+import edu.cmu.cs.cs214.hw5.core.DaemonThreadFactory;
+import edu.cmu.cs.cs214.hw5.core.PipelineMetrics;
+import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
+import edu.cmu.cs.cs214.hw5.core.State;
+import edu.cmu.cs.cs214.hw5.core.WeatherDataFile;
+import edu.cmu.cs.cs214.hw5.core.WeatherMetric;
+import edu.cmu.cs.cs214.hw5.core.WeatherState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.DateTimeException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads hourly weather csv files (first column ISO date time, other columns weather metrics) straight from bytes
+ * into a RawWeatherData. Numbers, timestamps and weather states are parsed in place, without creating a string or
+ * a map per row. Quoted fields are supported, line breaks inside quoted fields are not.
+ *
+ * Besides the metric columns, a file may have City and State columns naming the city of the data. All rows must
+ * then name the same city.
+ *
+ * Large files are parsed in chunks on several threads, each chunk into its own RawWeatherData, and the chunks
+ * are then merged in timestamp order (a plain append when the file is already sorted).
+ *
+ * Parsed files are cached in a binary sidecar file (see WeatherDataFile), which is read instead of the csv file
+ * while the size and modification time of the csv file are unchanged.
+ */
+class WeatherCSVReader {
+    /* size of the read buffer, grows if a line is longer */
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int HEADER_BUFFER_SIZE = 1 << 13;
+    /* files of at least this many bytes are parsed in parallel, can be set with -Dcsvreader.parallel.threshold=N */
+    private static final long PARALLEL_THRESHOLD = Long.getLong("csvreader.parallel.threshold", 8L << 20);
+    /* suffix of the binary cache written next to a parsed csv file, disabled with -Dcsvreader.cache=false */
+    static final String CACHE_SUFFIX = ".wdc";
+    private static final boolean CACHE_ENABLED = !"false".equalsIgnoreCase(System.getProperty("csvreader.cache"));
+    /* with -Dcsvreader.cache.mapped=true a cached file is returned as a read-only data set mapped from the cache */
+    private static final boolean CACHE_MAPPED = Boolean.getBoolean("csvreader.cache.mapped");
+    /* data sources in PipelineMetrics of the bytes of parsed csv files and of the cache files read instead */
+    private static final String METRICS_SOURCE = "csv";
+    private static final String CACHE_METRICS_SOURCE = "wdc";
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final long IDLE_THREAD_KEEP_ALIVE_SEC = 30;
+    /* the calling thread parses the first chunk, so parallelism - 1 pooled threads */
+    private static final ExecutorService EXECUTOR;
+    private static final WeatherMetric[] METRICS = WeatherMetric.values();
+    private static final WeatherState[] STATES = WeatherState.values();
+    /* lower case ascii bytes of the weather state descriptions, indexed by ordinal */
+    private static final byte[][] STATE_NAMES = new byte[STATES.length][];
+    /* exact powers of ten, used to parse decimals without rounding error */
+    private static final double[] POWERS_OF_TEN = new double[23];
+    /* largest mantissa that is exactly representable as a double */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private static final String PARSE_ERR_MSG = "Fail to parse csv file";
+    private static final String INVALID_CSV_MSG = "Invalid CSV file";
+    private static final String MIXED_CITY_MSG = "Rows of different cities in csv file";
+    static final String CITY_COLUMN = "City";
+    static final String STATE_COLUMN = "State";
+
+    static {
+        if(PARALLELISM > 1) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(PARALLELISM - 1, PARALLELISM - 1,
+                IDLE_THREAD_KEEP_ALIVE_SEC, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new DaemonThreadFactory("csv-reader"));
+            pool.allowCoreThreadTimeOut(true);
+            EXECUTOR = pool;
+        } else {
+            EXECUTOR = null;
+        }
+        for(WeatherState state: STATES) {
+            STATE_NAMES[state.ordinal()] = state.getDescription().toLowerCase(Locale.ROOT)
+                .getBytes(StandardCharsets.US_ASCII);
+        }
+        POWERS_OF_TEN[0] = 1;
+        for(int i=1; i<POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10;
+        }
+    }
+
+    /* metric of each column, null for the date time, city and state columns */
+    private final WeatherMetric[] columnMetrics;
+    private final Set<WeatherMetric> providedMetrics;
+    /* -1 if the file has no city and state columns */
+    private int cityColumn = -1;
+    private int stateColumn = -1;
+    /* city and state of the first row, every row must match them */
+    private String cityValue;
+    private String stateValue;
+    private byte[] cityBytes;
+    private byte[] stateBytes;
+
+    /* per row state, reused for every row */
+    private final double[] row = new double[METRICS.length];
+    private WeatherState rowState;
+    private long rowEpochSecond;
+    private int rowOffsetSeconds;
+
+    /**
+     * Constructor
+     *
+     * @param headers header of the csv file
+     * @param firstRow fields of the first data row, used to check the city and state of every row,
+     *                 may be null if the file has no city and state columns
+     * @throws IllegalStateException if a header is not a weather metric, City or State
+     */
+    WeatherCSVReader(List<String> headers, List<String> firstRow) {
+        columnMetrics = new WeatherMetric[headers.size()];
+        providedMetrics = new HashSet<>();
+        for(int i=1; i<headers.size(); i++) {
+            if(headers.get(i).equalsIgnoreCase(CITY_COLUMN)) {
+                cityColumn = i;
+            } else if(headers.get(i).equalsIgnoreCase(STATE_COLUMN)) {
+                stateColumn = i;
+            } else if(!WeatherMetric.contains(headers.get(i))) {
+                throw new IllegalStateException("Invalid Metric " + headers.get(i));
+            } else {
+                columnMetrics[i] = WeatherMetric.byDescription(headers.get(i));
+                providedMetrics.add(columnMetrics[i]);
+            }
+        }
+        if(firstRow != null && firstRow.size() == headers.size()) {
+            if(cityColumn >= 0) {
+                cityValue = firstRow.get(cityColumn);
+                cityBytes = cityValue.getBytes(StandardCharsets.UTF_8);
+            }
+            if(stateColumn >= 0) {
+                stateValue = firstRow.get(stateColumn);
+                stateBytes = stateValue.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * @param headers header of a csv file
+     * @return true if the file names its city in City and State columns
+     */
+    static boolean hasCityColumns(List<String> headers) {
+        boolean city = false;
+        boolean state = false;
+        for(String header: headers) {
+            city |= header.equalsIgnoreCase(CITY_COLUMN);
+            state |= header.equalsIgnoreCase(STATE_COLUMN);
+        }
+        return city && state;
+    }
+
+    /**
+     * @return metrics provided by the csv file
+     */
+    Set<WeatherMetric> getProvidedMetrics() {
+        return new HashSet<>(providedMetrics);
+    }
+
+    /**
+     * Read a whole csv file. If the file has City and State columns, the city is taken from them, otherwise
+     * defaultCityInfo is used. Files of at least PARALLEL_THRESHOLD bytes are split at line boundaries into chunks
+     * that are parsed in parallel and then merged in timestamp order, smaller files are parsed on the calling thread.
+     *
+     * @param path path of the csv file
+     * @param defaultCityInfo city of the data if the file has no city columns, may be null if it has
+     * @param metrics metrics the bytes read are recorded in: the csv file if it is parsed, or its cache file
+     * @return data in the file
+     * @throws IOException if the file can not be read
+     * @throws IllegalStateException if the file is not a valid weather csv file or names no city
+     * @throws CancellationException if the calling thread is interrupted while waiting for the chunks
+     */
+    static RawWeatherData read(Path path, CityInfo defaultCityInfo, PipelineMetrics metrics) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long sourceSize = attributes.size();
+        long sourceLastModified = attributes.lastModifiedTime().toMillis();
+        Path cachePath = cachePath(path);
+        if(CACHE_ENABLED) {
+            RawWeatherData cached = readCache(cachePath, defaultCityInfo, sourceSize, sourceLastModified);
+            if(cached != null) {
+                metrics.recordBytesIngested(CACHE_METRICS_SOURCE, Files.size(cachePath));
+                return cached;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<String> headers = new ArrayList<>();
+            long dataStart = readLine(channel, 0, headers);
+            if(dataStart < 0) {
+                throw new IllegalStateException(PARSE_ERR_MSG);
+            }
+            List<String> firstRow = null;
+            CityInfo cityInfo = defaultCityInfo;
+            boolean cityFromColumns = false;
+            if(hasCityColumns(headers)) {
+                firstRow = new ArrayList<>();
+                if(readLine(channel, dataStart, firstRow) >= 0 && firstRow.size() == headers.size()) {
+                    cityInfo = cityInfoOf(firstRow.get(indexOfIgnoreCase(headers, CITY_COLUMN)),
+                        firstRow.get(indexOfIgnoreCase(headers, STATE_COLUMN)));
+                    cityFromColumns = true;
+                }
+            }
+            if(cityInfo == null) {
+                throw new IllegalStateException("No city for csv file " + path);
+            }
+            long size = channel.size();
+            RawWeatherData rawWeatherData;
+            if(PARALLELISM > 1 && size >= PARALLEL_THRESHOLD) {
+                rawWeatherData = readParallel(channel, headers, firstRow, dataStart, size, cityInfo);
+            } else {
+                WeatherCSVReader reader = new WeatherCSVReader(headers, firstRow);
+                rawWeatherData = new RawWeatherData(cityInfo, reader.providedMetrics);
+                reader.readRange(channel, dataStart, size, rawWeatherData);
+            }
+            if(CACHE_ENABLED) {
+                writeCache(cachePath, rawWeatherData, cityFromColumns, sourceSize, sourceLastModified);
+            }
+            metrics.recordBytesIngested(METRICS_SOURCE, size);
+            return rawWeatherData;
+        }
+    }
+
+    /**
+     * @param path path of a csv file
+     * @return path of the binary cache of the file
+     */
+    static Path cachePath(Path path) {
+        return path.resolveSibling(path.getFileName() + CACHE_SUFFIX);
+    }
+
+    /**
+     * @return the cached data, null if there is no usable cache
+     */
+    private static RawWeatherData readCache(Path cachePath, CityInfo defaultCityInfo, long sourceSize,
+                                            long sourceLastModified) {
+        try {
+            if(CACHE_MAPPED) {
+                return WeatherDataFile.map(cachePath, defaultCityInfo, sourceSize, sourceLastModified);
+            }
+            return WeatherDataFile.read(cachePath, defaultCityInfo, sourceSize, sourceLastModified);
+        } catch (IOException | RuntimeException e) {
+            /* a corrupt or unreadable cache is ignored, the csv file is parsed again */
+            return null;
+        }
+    }
+
+    private static void writeCache(Path cachePath, RawWeatherData rawWeatherData, boolean storeCityInfo,
+                                   long sourceSize, long sourceLastModified) {
+        try {
+            WeatherDataFile.write(cachePath, rawWeatherData, storeCityInfo, sourceSize, sourceLastModified);
+        } catch (IOException | RuntimeException e) {
+            /* the cache is only an optimization, e.g. the directory may be read-only */
+        }
+    }
+
+    /**
+     * Read a single line, e.g. the header
+     *
+     * @param channel file to read
+     * @param position start of the line
+     * @param fields list to add the fields of the line to
+     * @return position of the next line, -1 if position is at the end of the file
+     */
+    private static long readLine(FileChannel channel, long position, List<String> fields) throws IOException {
+        byte[] buf = new byte[HEADER_BUFFER_SIZE];
+        int len = 0;
+        int lineEnd;
+        while((lineEnd = indexOf(buf, (byte) '\n', 0, len)) < 0) {
+            if(len == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            int n = channel.read(ByteBuffer.wrap(buf, len, buf.length - len), position + len);
+            if(n < 0) {
+                lineEnd = len;
+                break;
+            }
+            len += n;
+        }
+        if(len == 0) {
+            return -1;
+        }
+        fields.addAll(parseHeader(buf, 0, lineEnd));
+        return position + Math.min(lineEnd + 1, len);
+    }
+
+    private static int indexOfIgnoreCase(List<String> headers, String header) {
+        for(int i=0; i<headers.size(); i++) {
+            if(headers.get(i).equalsIgnoreCase(header)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param cityName city name
+     * @param stateStr state name or abbreviation
+     * @return info of the city
+     * @throws IllegalStateException if the state is invalid
+     */
+    static CityInfo cityInfoOf(String cityName, String stateStr) {
+        String trimmed = stateStr.trim();
+        State state;
+        if(State.containsByName(trimmed)) {
+            state = State.getByName(trimmed);
+        } else if(State.containsByAbbr(trimmed)) {
+            state = State.getByAbbr(trimmed);
+        } else {
+            throw new IllegalStateException("Invalid state " + stateStr);
+        }
+        return new CityInfo(cityName.trim(), state.getName(), state.getAbbr(), 0, 0);
+    }
+
+    /**
+     * Parse the lines in a byte range of a file with positional reads, so several ranges of the same channel
+     * can be read at the same time
+     *
+     * @param channel file to read
+     * @param from start of the first line
+     * @param to end of the range (exclusive), a line boundary or the end of the file
+     * @param target data set to add the records to
+     */
+    private void readRange(FileChannel channel, long from, long to, RawWeatherData target) throws IOException {
+        byte[] buf = new byte[(int) Math.max(1, Math.min(BUFFER_SIZE, to - from))];
+        int len = 0;
+        long position = from;
+        while(true) {
+            if(len == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            int n = position < to
+                ? channel.read(ByteBuffer.wrap(buf, len, (int) Math.min(buf.length - len, to - position)), position)
+                : -1;
+            if(n < 0) {
+                parseLines(buf, 0, len, target);
+                return;
+            }
+            position += n;
+            len += n;
+            int lastLineEnd = lastIndexOf(buf, (byte) '\n', 0, len);
+            if(lastLineEnd >= 0) {
+                parseLines(buf, 0, lastLineEnd + 1, target);
+                /* keep the incomplete last line at the beginning of the buffer */
+                System.arraycopy(buf, lastLineEnd + 1, buf, 0, len - lastLineEnd - 1);
+                len -= lastLineEnd + 1;
+            }
+        }
+    }
+
+    private static RawWeatherData readParallel(FileChannel channel, List<String> headers, List<String> firstRow,
+                                               long dataStart, long size, CityInfo cityInfo) throws IOException {
+        /* chunk boundaries, moved forward to the start of the next line */
+        long[] bounds = new long[PARALLELISM + 1];
+        bounds[0] = dataStart;
+        for(int i=1; i<PARALLELISM; i++) {
+            long bound = dataStart + (size - dataStart) * i / PARALLELISM;
+            bounds[i] = Math.max(bounds[i-1], nextLineStart(channel, bound - 1, size));
+        }
+        bounds[PARALLELISM] = size;
+
+        List<Future<RawWeatherData>> futures = new ArrayList<>();
+        for(int i=1; i<PARALLELISM; i++) {
+            long from = bounds[i];
+            long to = bounds[i+1];
+            futures.add(EXECUTOR.submit(() -> readChunk(channel, headers, firstRow, from, to, cityInfo)));
+        }
+        RawWeatherData rawWeatherData;
+        try {
+            rawWeatherData = readChunk(channel, headers, firstRow, bounds[0], bounds[1], cityInfo);
+            for(Future<RawWeatherData> future: futures) {
+                rawWeatherData.addWeatherRecords(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("CSV loading cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        } finally {
+            for(Future<RawWeatherData> future: futures) {
+                future.cancel(false);
+            }
+        }
+        return rawWeatherData;
+    }
+
+    private static RawWeatherData readChunk(FileChannel channel, List<String> headers, List<String> firstRow,
+                                            long from, long to, CityInfo cityInfo) throws IOException {
+        WeatherCSVReader reader = new WeatherCSVReader(headers, firstRow);
+        RawWeatherData rawWeatherData = new RawWeatherData(cityInfo, reader.providedMetrics);
+        reader.readRange(channel, from, to, rawWeatherData);
+        return rawWeatherData;
+    }
+
+    /**
+     * @return position after the first line break at or after position, or end if there is none
+     */
+    private static long nextLineStart(FileChannel channel, long position, long end) throws IOException {
+        byte[] buf = new byte[HEADER_BUFFER_SIZE];
+        long pos = position;
+        while(pos < end) {
+            int n = channel.read(ByteBuffer.wrap(buf, 0, (int) Math.min(buf.length, end - pos)), pos);
+            if(n < 0) {
+                break;
+            }
+            int lineEnd = indexOf(buf, (byte) '\n', 0, n);
+            if(lineEnd >= 0) {
+                return pos + lineEnd + 1;
+            }
+            pos += n;
+        }
+        return end;
+    }
+
+    /**
+     * Parse the header line of a csv file
+     *
+     * @param buf bytes of the file
+     * @param from start of the header line
+     * @param to end of the header line (exclusive, line break excluded)
+     * @return column names
+     */
+    static List<String> parseHeader(byte[] buf, int from, int to) {
+        String line = new String(buf, from, to - from, StandardCharsets.UTF_8);
+        if(line.startsWith("\uFEFF")) {
+            line = line.substring(1);
+        }
+        if(line.endsWith("\r")) {
+            line = line.substring(0, line.length() - 1);
+        }
+        return splitLine(line);
+    }
+
+    /**
+     * Split a csv line into fields, handling quoted fields
+     *
+     * @param line csv line without the line break
+     * @return fields of the line
+     */
+    static List<String> splitLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for(int i=0; i<line.length(); i++) {
+            char c = line.charAt(i);
+            if(c == '"') {
+                if(quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append(c);
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if(c == ',' && !quoted) {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields;
+    }
+
+    /**
+     * Parse complete lines and add the records to a data set. Empty lines are skipped.
+     *
+     * @param buf bytes of the file
+     * @param from start of the first line
+     * @param to end of the last line (exclusive)
+     * @param target data set to add the records to
+     * @throws IllegalStateException if a line is invalid
+     */
+    void parseLines(byte[] buf, int from, int to, RawWeatherData target) {
+        int pos = from;
+        while(pos < to) {
+            int lineEnd = indexOf(buf, (byte) '\n', pos, to);
+            if(lineEnd < 0) {
+                lineEnd = to;
+            }
+            int end = lineEnd;
+            if(end > pos && buf[end - 1] == '\r') {
+                end--;
+            }
+            if(end > pos) {
+                parseLine(buf, pos, end);
+                target.addWeatherRecord(rowEpochSecond, rowOffsetSeconds, row, rowState);
+            }
+            pos = lineEnd + 1;
+        }
+    }
+
+    private void parseLine(byte[] buf, int from, int to) {
+        int col = 0;
+        int pos = from;
+        while(true) {
+            if(col >= columnMetrics.length) {
+                throw new IllegalStateException(INVALID_CSV_MSG);
+            }
+            int fieldStart = pos;
+            int fieldEnd;
+            boolean escaped = false;
+            if(pos < to && buf[pos] == '"') {
+                fieldStart = pos + 1;
+                int q = fieldStart;
+                while(true) {
+                    q = indexOf(buf, (byte) '"', q, to);
+                    if(q < 0) {
+                        throw new IllegalStateException(INVALID_CSV_MSG);
+                    }
+                    if(q + 1 < to && buf[q + 1] == '"') {
+                        escaped = true;
+                        q += 2;
+                    } else {
+                        break;
+                    }
+                }
+                fieldEnd = q;
+                pos = q + 1;
+                if(pos < to && buf[pos] != ',') {
+                    throw new IllegalStateException(INVALID_CSV_MSG);
+                }
+            } else {
+                fieldEnd = indexOf(buf, (byte) ',', pos, to);
+                if(fieldEnd < 0) {
+                    fieldEnd = to;
+                }
+                pos = fieldEnd;
+            }
+
+            parseField(col, buf, fieldStart, fieldEnd, escaped);
+            col++;
+            if(pos >= to) {
+                break;
+            }
+            /* skip the comma */
+            pos++;
+        }
+        if(col != columnMetrics.length) {
+            throw new IllegalStateException(INVALID_CSV_MSG);
+        }
+    }
+
+    private void parseField(int col, byte[] buf, int from, int to, boolean escaped) {
+        WeatherMetric metric = columnMetrics[col];
+        if(col == 0) {
+            parseDateTime(buf, from, to);
+        } else if(col == cityColumn) {
+            checkSameCity(cityValue, cityBytes, buf, from, to, escaped);
+        } else if(col == stateColumn) {
+            checkSameCity(stateValue, stateBytes, buf, from, to, escaped);
+        } else if(metric == WeatherMetric.WEATHERSTATE) {
+            rowState = escaped ? parseState(new String(buf, from, to - from, StandardCharsets.UTF_8).replace("\"\"", "\""))
+                : parseState(buf, from, to);
+        } else {
+            row[metric.ordinal()] = parseDouble(buf, from, to);
+        }
+    }
+
+    private static void checkSameCity(String expected, byte[] expectedBytes, byte[] buf, int from, int to,
+                                      boolean escaped) {
+        if(expected == null) {
+            return;
+        }
+        boolean same = escaped
+            ? new String(buf, from, to - from, StandardCharsets.UTF_8).replace("\"\"", "\"").equals(expected)
+            : Arrays.equals(expectedBytes, 0, expectedBytes.length, buf, from, to);
+        if(!same) {
+            throw new IllegalStateException(MIXED_CITY_MSG);
+        }
+    }
+
+    /**
+     * Parse a weather state, the state of the previous row is checked first
+     */
+    private WeatherState parseState(byte[] buf, int from, int to) {
+        if(rowState != null && matches(STATE_NAMES[rowState.ordinal()], buf, from, to)) {
+            return rowState;
+        }
+        for(WeatherState state: STATES) {
+            if(matches(STATE_NAMES[state.ordinal()], buf, from, to)) {
+                return state;
+            }
+        }
+        return parseState(new String(buf, from, to - from, StandardCharsets.UTF_8));
+    }
+
+    private static WeatherState parseState(String stateStr) {
+        if(!WeatherState.contains(stateStr)) {
+            throw new IllegalStateException("Invalid weather state " + stateStr);
+        }
+        return WeatherState.byDescription(stateStr);
+    }
+
+    private static boolean matches(byte[] lowerName, byte[] buf, int from, int to) {
+        if(lowerName.length != to - from) {
+            return false;
+        }
+        for(int i=0; i<lowerName.length; i++) {
+            byte b = buf[from + i];
+            if(b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if(b != lowerName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a decimal number. Plain decimals with up to 15 significant digits are parsed in place (exactly, since
+     * both the mantissa and the power of ten are exact doubles), anything else falls back to Double.parseDouble.
+     *
+     * @throws NumberFormatException if the field is not a number
+     */
+    static double parseDouble(byte[] buf, int from, int to) {
+        int start = from;
+        int end = to;
+        while(start < end && buf[start] == ' ') {
+            start++;
+        }
+        while(end > start && buf[end - 1] == ' ') {
+            end--;
+        }
+        int pos = start;
+        boolean negative = false;
+        if(pos < end && (buf[pos] == '-' || buf[pos] == '+')) {
+            negative = buf[pos] == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        for(; pos < end; pos++) {
+            byte b = buf[pos];
+            if(b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if(seenPoint) {
+                    fractionDigits++;
+                }
+            } else if(b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if(pos == end && digits > 0 && digits <= 15 && mantissa < MAX_EXACT_MANTISSA) {
+            double val = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -val : val;
+        }
+        return Double.parseDouble(new String(buf, from, to - from, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Parse an ISO offset date time (e.g. 2020-04-08T23:00-07:00) into rowEpochSecond and rowOffsetSeconds.
+     * Fractions of seconds (up to nanoseconds) are dropped. Unusual formats fall back to OffsetDateTime.parse.
+     */
+    private void parseDateTime(byte[] buf, int from, int to) {
+        /* yyyy-MM-ddTHH:mm */
+        int len = to - from;
+        if(len >= 17 && buf[from + 4] == '-' && buf[from + 7] == '-' && buf[from + 10] == 'T' && buf[from + 13] == ':') {
+            int year = digits(buf, from, 4);
+            int month = digits(buf, from + 5, 2);
+            int day = digits(buf, from + 8, 2);
+            int hour = digits(buf, from + 11, 2);
+            int minute = digits(buf, from + 14, 2);
+            int second = 0;
+            int pos = from + 16;
+            if(pos < to && buf[pos] == ':') {
+                second = pos + 3 <= to ? digits(buf, pos + 1, 2) : -1;
+                pos += 3;
+                if(pos < to && buf[pos] == '.') {
+                    int fractionStart = ++pos;
+                    while(pos < to && buf[pos] >= '0' && buf[pos] <= '9') {
+                        pos++;
+                    }
+                    if(pos == fractionStart || pos - fractionStart > 9) {
+                        second = -1;
+                    }
+                }
+            }
+            int offset = parseOffset(buf, pos, to);
+            if(year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month)
+                && hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59 && second >= 0 && second <= 59
+                && offset != Integer.MIN_VALUE) {
+                rowEpochSecond = daysFromCivil(year, month, day) * 86400L + hour * 3600 + minute * 60 + second - offset;
+                rowOffsetSeconds = offset;
+                return;
+            }
+        }
+        String dateTimeStr = new String(buf, from, len, StandardCharsets.US_ASCII);
+        try {
+            OffsetDateTime dateTime = OffsetDateTime.parse(dateTimeStr);
+            rowEpochSecond = dateTime.toEpochSecond();
+            rowOffsetSeconds = dateTime.getOffset().getTotalSeconds();
+        } catch (DateTimeException e) {
+            throw new IllegalStateException("Invalid date time " + dateTimeStr);
+        }
+    }
+
+    /**
+     * @return offset in seconds, Integer.MIN_VALUE if it is not Z or +HH:mm[:ss]
+     */
+    private static int parseOffset(byte[] buf, int from, int to) {
+        int len = to - from;
+        if(len == 1 && buf[from] == 'Z') {
+            return 0;
+        }
+        if((len != 6 && len != 9) || (buf[from] != '+' && buf[from] != '-') || buf[from + 3] != ':') {
+            return Integer.MIN_VALUE;
+        }
+        int hours = digits(buf, from + 1, 2);
+        int minutes = digits(buf, from + 4, 2);
+        int seconds = 0;
+        if(len == 9) {
+            if(buf[from + 6] != ':') {
+                return Integer.MIN_VALUE;
+            }
+            seconds = digits(buf, from + 7, 2);
+        }
+        if(hours < 0 || hours > 18 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59
+            || (hours == 18 && (minutes | seconds) != 0)) {
+            return Integer.MIN_VALUE;
+        }
+        int offset = hours * 3600 + minutes * 60 + seconds;
+        return buf[from] == '-' ? -offset : offset;
+    }
+
+    /**
+     * @return value of a fixed number of ascii digits, -1 if any of them is not a digit
+     */
+    private static int digits(byte[] buf, int from, int cnt) {
+        int val = 0;
+        for(int i=from; i<from + cnt; i++) {
+            int d = buf[i] - '0';
+            if(d < 0 || d > 9) {
+                return -1;
+            }
+            val = val * 10 + d;
+        }
+        return val;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2: return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4: case 6: case 9: case 11: return 30;
+            default: return 31;
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date (H. Hinnant's days_from_civil)
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    static int indexOf(byte[] buf, byte b, int from, int to) {
+        for(int i=from; i<to; i++) {
+            if(buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int lastIndexOf(byte[] buf, byte b, int from, int to) {
+        for(int i=to - 1; i>=from; i--) {
+            if(buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -3,26 +3,27 @@ package edu.cmu.cs.cs214.hw5.plugin;
 import edu.cmu.cs.cs214.hw5.core.CityInfo;
 import edu.cmu.cs.cs214.hw5.core.DataPlugin;
 import edu.cmu.cs.cs214.hw5.core.InputEntry;
+import edu.cmu.cs.cs214.hw5.core.PipelineMetrics;
 import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
 import edu.cmu.cs.cs214.hw5.core.SelectOneInputEntry;
 import edu.cmu.cs.cs214.hw5.core.State;
 import edu.cmu.cs.cs214.hw5.core.TextInputEntry;
 import edu.cmu.cs.cs214.hw5.core.WeatherIndexFrameworkData;
 import edu.cmu.cs.cs214.hw5.core.WeatherMetric;
-import edu.cmu.cs.cs214.hw5.core.WeatherRecord;
 import edu.cmu.cs.cs214.hw5.core.WeatherState;
+import edu.cmu.cs.cs214.hw5.webclient.JsonStreamReader;
+import edu.cmu.cs.cs214.hw5.webclient.WebClient;
+import edu.cmu.cs.cs214.hw5.webclient.WebClientException;
 import org.json.JSONObject;
 import org.json.JSONArray;
 import org.json.JSONException;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.Reader;
 import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -46,11 +47,11 @@ public class WebAPI12HFutureDataPlugin implements DataPlugin {
   private static final String FORMAT_FORECAST12H_QUERY = "%s/%s?apikey=%s&details=true";
 
   /* Error Message */
-  private static final String URL_ERR_MSG = "Internal Error when querying weather data";
   private static final String CONNECT_ERR_MSG = "Internal Error when connection to web API";
-  private static final String STREAM_ERR_MSG = "Internal Error while getting input stream";
   private static final String JSON_PARSE_ERR_MSG = "Internal Error while parsing json";
-  private static final int RESPONSE_OK = 200;
+
+  /* data source of the responses in PipelineMetrics, counted in bytes received (cached responses are not counted) */
+  private static final String METRICS_SOURCE = "accuweather";
 
   /* entry constant */
   private static final String CITY_ENTRY_LABEL = "City Name";
@@ -108,6 +109,7 @@ public class WebAPI12HFutureDataPlugin implements DataPlugin {
   }
 
   private List<InputEntry> inputEntries;
+  private WeatherIndexFrameworkData framework;
   private static final int ENTRYCNT = 2;
 
   /**
@@ -143,41 +145,31 @@ public class WebAPI12HFutureDataPlugin implements DataPlugin {
   }
 
   private String httpGetRequest(String urlStr) {
-    HttpURLConnection connection;
     try {
-      URL url = new URL(urlStr);
-      connection = (HttpURLConnection) url.openConnection();
-    } catch (MalformedURLException e) {
-      throw new IllegalStateException(URL_ERR_MSG);
-    } catch (IOException e) {
+      return WebClient.shared().get(urlStr, this::recordBytesReceived);
+    } catch (WebClientException e) {
+      if(e.hasResponse()) {
+        throw new IllegalStateException(e.getMessage());
+      }
       throw new IllegalStateException(CONNECT_ERR_MSG);
     }
+  }
 
-    StringBuilder sb = new StringBuilder();
 
-    try {
-      connection.setRequestMethod("GET");
-      int responseCode = connection.getResponseCode();
-      if(responseCode != RESPONSE_OK) {
-        throw new IllegalStateException("HTTP Request Fail " + responseCode);
-      }
-      /* read response body */
-      BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-      String line;
-      while ((line = reader.readLine()) != null) {
-        sb.append(line);
-      }
-      reader.close();
-    } catch (IOException e) {
-      throw new IllegalStateException(STREAM_ERR_MSG);
+  /**
+   * Resolve the location of a city, from the location cache if it was searched before
+   */
+  private QueryInfo queryCityInfo(String cityName, String stateInfo) {
+    AccuWeatherLocationCache.Location cached = AccuWeatherLocationCache.shared().get(cityName, stateInfo);
+    if(cached != null) {
+      return new QueryInfo(cached.getLocationId(), cached.getCityInfo());
     }
-
-    connection.disconnect();
-    return sb.toString();
+    QueryInfo queryInfo = searchCityInfo(cityName, stateInfo);
+    AccuWeatherLocationCache.shared().put(cityName, stateInfo, queryInfo.locationId, queryInfo.cityInfo);
+    return queryInfo;
   }
 
-
-  private QueryInfo queryCityInfo(String cityName, String stateInfo) {
+  private QueryInfo searchCityInfo(String cityName, String stateInfo) {
     String urlStr = String.format(FORMAT_LOCATION_QUERY, LOCATIONSEARCH_URL, API_KEY, cityName);
     String jsonStr = httpGetRequest(urlStr);
 
@@ -220,38 +212,133 @@ public class WebAPI12HFutureDataPlugin implements DataPlugin {
     return new QueryInfo(locationId, cityInfo);
   }
 
+  /**
+   * Query the forecast of the next 12 hours. The response is parsed as it is received, each forecast object is
+   * written straight into the data set without building a json DOM first.
+   */
   private RawWeatherData getWeatherDataNext12H(QueryInfo queryInfo) {
     String urlStr = String.format(FORMAT_FORECAST12H_QUERY, FORECAST12H_URL, queryInfo.locationId, API_KEY);
-    String jsonStr = httpGetRequest(urlStr);
-
     RawWeatherData rawWeatherData = new RawWeatherData(queryInfo.cityInfo, METRICS_PROVIDED);
 
-    try {
-      JSONArray jsonArray = new JSONArray(jsonStr);
-      for(int i=0; i<jsonArray.length(); i++) {
-        JSONObject jsonObject = jsonArray.getJSONObject(i);
-
-        OffsetDateTime offsetDateTime = OffsetDateTime.parse(jsonObject.getString("DateTime"));
-        double temperature = jsonObject.getJSONObject("Temperature").getDouble("Value");
-        double windSpeed = jsonObject.getJSONObject("Wind").getJSONObject("Speed").getDouble("Value");
-        double windDirection = jsonObject.getJSONObject("Wind").getJSONObject("Direction").getDouble("Degrees");
-        double humidity = jsonObject.getDouble("RelativeHumidity");
-        WeatherState weatherState = WEATHER_STATE_MAP.get(jsonObject.getInt("WeatherIcon"));
-        int rainProbability = jsonObject.getInt("RainProbability");
-        int snowProbability = jsonObject.getInt("SnowProbability");
-        int visibility = jsonObject.getJSONObject("Visibility").getInt("Value");
-
-        WeatherRecord weatherRecord = new WeatherRecord(temperature, 0, windSpeed, windDirection,
-                humidity, weatherState, rainProbability, snowProbability, visibility);
-        rawWeatherData.addWeatherRecord(offsetDateTime, weatherRecord);
+    try (JsonStreamReader reader = new JsonStreamReader(openRequest(urlStr))) {
+      reader.beginArray();
+      while(reader.hasNext()) {
+        readForecast(reader, rawWeatherData);
       }
-    } catch (JSONException e) {
+      reader.endArray();
+      /* reads the response to its end, so it is cached */
+      if(reader.peek() != JsonStreamReader.Token.END_DOCUMENT) {
+        throw new JsonStreamReader.MalformedJsonException("Unexpected content after the forecasts");
+      }
+    } catch (IOException | DateTimeParseException e) {
       throw new IllegalStateException(JSON_PARSE_ERR_MSG);
     }
 
     return rawWeatherData;
   }
 
+  private Reader openRequest(String urlStr) {
+    try {
+      return WebClient.shared().open(urlStr, this::recordBytesReceived);
+    } catch (WebClientException e) {
+      if(e.hasResponse()) {
+        throw new IllegalStateException(e.getMessage());
+      }
+      throw new IllegalStateException(CONNECT_ERR_MSG);
+    }
+  }
+
+  /**
+   * Read one forecast object and add it to the data set
+   *
+   * @throws IOException if the object is invalid or misses a field
+   */
+  private static void readForecast(JsonStreamReader reader, RawWeatherData rawWeatherData) throws IOException {
+    double[] values = new double[WeatherMetric.values().length];
+    Set<WeatherMetric> metricsRead = EnumSet.noneOf(WeatherMetric.class);
+    OffsetDateTime dateTime = null;
+    WeatherState weatherState = null;
+
+    reader.beginObject();
+    while(reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "DateTime":
+          dateTime = OffsetDateTime.parse(reader.nextString());
+          break;
+        case "Temperature":
+          setValue(values, metricsRead, WeatherMetric.TEMPERATURE, readField(reader, "Value"));
+          break;
+        case "Wind":
+          reader.beginObject();
+          while(reader.hasNext()) {
+            String name = reader.nextName();
+            if(name.equals("Speed")) {
+              setValue(values, metricsRead, WeatherMetric.WINDSPEED, readField(reader, "Value"));
+            } else if(name.equals("Direction")) {
+              setValue(values, metricsRead, WeatherMetric.WINDDIRECTION, readField(reader, "Degrees"));
+            } else {
+              reader.skipValue();
+            }
+          }
+          reader.endObject();
+          break;
+        case "RelativeHumidity":
+          setValue(values, metricsRead, WeatherMetric.HUMIDITY, reader.nextDouble());
+          break;
+        case "WeatherIcon":
+          weatherState = WEATHER_STATE_MAP.get(reader.nextInt());
+          metricsRead.add(WeatherMetric.WEATHERSTATE);
+          break;
+        case "RainProbability":
+          setValue(values, metricsRead, WeatherMetric.RAINPROBABILITY, reader.nextInt());
+          break;
+        case "SnowProbability":
+          setValue(values, metricsRead, WeatherMetric.SNOWPROBABILITY, reader.nextInt());
+          break;
+        case "Visibility":
+          setValue(values, metricsRead, WeatherMetric.VISIBILITY, (int) readField(reader, "Value"));
+          break;
+        default:
+          reader.skipValue();
+          break;
+      }
+    }
+    reader.endObject();
+
+    if(dateTime == null || !metricsRead.containsAll(METRICS_PROVIDED)) {
+      throw new JsonStreamReader.MalformedJsonException("Missing forecast field");
+    }
+    rawWeatherData.addWeatherRecord(dateTime.toEpochSecond(), dateTime.getOffset().getTotalSeconds(), values,
+        weatherState);
+  }
+
+  private static void setValue(double[] values, Set<WeatherMetric> metricsRead, WeatherMetric metric, double value) {
+    values[metric.ordinal()] = value;
+    metricsRead.add(metric);
+  }
+
+  /**
+   * Read a number field of an object, skipping the other fields
+   */
+  private static double readField(JsonStreamReader reader, String field) throws IOException {
+    double value = Double.NaN;
+    boolean found = false;
+    reader.beginObject();
+    while(reader.hasNext()) {
+      if(reader.nextName().equals(field)) {
+        value = reader.nextDouble();
+        found = true;
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if(!found) {
+      throw new JsonStreamReader.MalformedJsonException("Missing field " + field);
+    }
+    return value;
+  }
+
   @Override
   public String getName() {
     return NAME;
@@ -267,7 +354,8 @@ public class WebAPI12HFutureDataPlugin implements DataPlugin {
    */
   @Override
   public List<RawWeatherData> loadData(List<InputEntry> inputEntries) throws IllegalArgumentException, IllegalStateException {
-    if (API_KEY.equals("")) {
+    /* a replay server answers without a key, captures are keyed by urls without it */
+    if (API_KEY.equals("") && !WebClient.shared().isReplaying()) {
       throw new IllegalStateException("API KEY not set, check readme.md to get a key");
     }
     if(inputEntries.size() != ENTRYCNT) {
@@ -290,6 +378,16 @@ public class WebAPI12HFutureDataPlugin implements DataPlugin {
    */
   @Override
   public void onRegister(WeatherIndexFrameworkData framework) {
+    this.framework = framework;
+  }
+
+  /**
+   * Record the bytes of a response as ingested, in the metrics of the framework that holds this plugin
+   */
+  private void recordBytesReceived(long bytes) {
+    WeatherIndexFrameworkData registeredFramework = framework;
+    PipelineMetrics metrics = registeredFramework == null ? PipelineMetrics.shared() : registeredFramework.getMetrics();
+    metrics.recordBytesIngested(METRICS_SOURCE, bytes);
   }
 
   /**
@@ -2,23 +2,43 @@ package edu.cmu.cs.cs214.hw5.plugin;
 
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import edu.cmu.cs.cs214.hw5.core.CityInfo;
+import edu.cmu.cs.cs214.hw5.core.DaemonThreadFactory;
 import edu.cmu.cs.cs214.hw5.core.DataPlugin;
 import edu.cmu.cs.cs214.hw5.core.InputEntry;
+import edu.cmu.cs.cs214.hw5.core.PipelineMetrics;
 import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
 import edu.cmu.cs.cs214.hw5.core.State;
 import edu.cmu.cs.cs214.hw5.core.TextInputEntry;
 import edu.cmu.cs.cs214.hw5.core.WeatherIndexFrameworkData;
 import edu.cmu.cs.cs214.hw5.core.WeatherMetric;
 import edu.cmu.cs.cs214.hw5.core.WeatherRecord;
+import edu.cmu.cs.cs214.hw5.webclient.RateLimiter;
+import edu.cmu.cs.cs214.hw5.webclient.RequestHedger;
+import edu.cmu.cs.cs214.hw5.webclient.RetryPolicy;
+import edu.cmu.cs.cs214.hw5.webclient.WebClient;
+import org.jsoup.Connection;
 import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -26,7 +46,8 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 /**
- * A data plugin from web crawler
+ * A data plugin from web crawler. Pages of several ZIP codes are fetched concurrently on a bounded pool, with at most
+ * MAX_CONNECTIONS_PER_HOST requests to the same host at a time.
  */
 public class WebCrawlerDataPlugin implements DataPlugin {
   private static final String NAME = "WebCrawlerHourlyForecast";
@@ -39,6 +60,9 @@ public class WebCrawlerDataPlugin implements DataPlugin {
   private static final String INVALID_ZIPCODE_MSG = "Invalid zip code";
   private static final String HTML_PARSE_ERR_MSG = "Internal Error while parsing html";
 
+  /* data source of the pages in PipelineMetrics, counted in bytes received */
+  private static final String METRICS_SOURCE = "webcrawler";
+
   /* entry constant */
   private static final String ZIP_CODE_ENTRY_LABEL = "ZIP Code";
   private static final String ZIP_CODE_HELP_MSG = "Input zip code of the city (If input multiple zip codes, separate them by \",\")";
@@ -49,7 +73,30 @@ public class WebCrawlerDataPlugin implements DataPlugin {
   private static final int HOUR_RANGE = 12;
   private static final int ENTRYCNT = 1;
 
+  /* concurrency limits, can be set with -Dwebcrawler.parallelism=N and -Dwebcrawler.maxPerHost=N */
+  private static final int CRAWL_PARALLELISM = Integer.getInteger("webcrawler.parallelism", 8);
+  private static final int MAX_CONNECTIONS_PER_HOST = Integer.getInteger("webcrawler.maxPerHost", 4);
+  private static final long IDLE_THREAD_KEEP_ALIVE_SEC = 30;
+  private static final ExecutorService EXECUTOR;
+  /* runs the requests of hedged fetches, a fetch waits for its request and possibly a hedge of it */
+  private static final ExecutorService HEDGE_EXECUTOR;
+  private static final Map<String, Semaphore> HOST_PERMITS = new ConcurrentHashMap<>();
+
+  static {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(CRAWL_PARALLELISM, CRAWL_PARALLELISM,
+        IDLE_THREAD_KEEP_ALIVE_SEC, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        new DaemonThreadFactory("web-crawler"));
+    pool.allowCoreThreadTimeOut(true);
+    EXECUTOR = pool;
+    ThreadPoolExecutor hedgePool = new ThreadPoolExecutor(2 * CRAWL_PARALLELISM, 2 * CRAWL_PARALLELISM,
+        IDLE_THREAD_KEEP_ALIVE_SEC, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        new DaemonThreadFactory("web-crawler-hedge"));
+    hedgePool.allowCoreThreadTimeOut(true);
+    HEDGE_EXECUTOR = hedgePool;
+  }
+
   private List<InputEntry> inputEntries;
+  private WeatherIndexFrameworkData framework;
 
   /**
    * Constructor
@@ -123,15 +170,7 @@ public class WebCrawlerDataPlugin implements DataPlugin {
   private RawWeatherData crawlData(String zipCode) {
     String url = String.format(FORECAST_HOURLY_FORMAT, zipCode);
 
-    Document doc;
-    try {
-      doc = Jsoup.connect(url).get();
-    } catch (HttpStatusException e) {
-      throw new IllegalArgumentException(INVALID_ZIPCODE_MSG + " " +zipCode);
-    } catch (IOException e) {
-      e.printStackTrace();
-      throw new IllegalStateException(CONNECT_ERR_MSG);
-    }
+    Document doc = fetch(url, zipCode, metrics());
 
     try {
       return parseDoc(doc);
@@ -141,6 +180,207 @@ public class WebCrawlerDataPlugin implements DataPlugin {
     }
   }
 
+  /**
+   * Get a page, within the connection limit of its host. Requests are rate limited, retried (connection errors
+   * and retryable status codes) and hedged as configured for the host in the shared WebClient. Limits are kept per
+   * host of the original url, even when the page is requested from a replay server.
+   *
+   * @param metrics metrics the bytes of the pages received are recorded in
+   */
+  private static Document fetch(String url, String zipCode, PipelineMetrics metrics) {
+    String host = URI.create(url).getHost();
+    Semaphore hostPermits = HOST_PERMITS.computeIfAbsent(host, h -> new Semaphore(MAX_CONNECTIONS_PER_HOST));
+    RateLimiter rateLimiter = WebClient.shared().getRateLimiter(host);
+    RetryPolicy retryPolicy = WebClient.shared().getRetryPolicy(host);
+    for(int attempt=1; ; attempt++) {
+      try {
+        return get(url, host, hostPermits, rateLimiter, metrics);
+      } catch (HttpStatusException e) {
+        if(!retryPolicy.isRetryable(e.getStatusCode())) {
+          throw new IllegalArgumentException(INVALID_ZIPCODE_MSG + " " +zipCode);
+        }
+        if(attempt >= retryPolicy.getMaxAttempts()) {
+          /* the server still refuses or fails, the ZIP code is not to blame */
+          throw new IllegalStateException(CONNECT_ERR_MSG + ": HTTP " + e.getStatusCode());
+        }
+      } catch (IOException e) {
+        if(attempt >= retryPolicy.getMaxAttempts()) {
+          throw new IllegalStateException(CONNECT_ERR_MSG + ": " + e.getMessage(), e);
+        }
+      }
+      try {
+        Thread.sleep(retryPolicy.backoffMillis(attempt, -1));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CancellationException("Crawling cancelled");
+      }
+    }
+  }
+
+  /**
+   * Get a page once the rate limiter allows it. If the shared WebClient hedges requests, the page is requested on
+   * HEDGE_EXECUTOR and requested once more if it is slower than the hedging percentile of the host, each request
+   * holding its own host permit.
+   */
+  private static Document get(String url, String host, Semaphore hostPermits, RateLimiter rateLimiter,
+                              PipelineMetrics metrics) throws IOException {
+    RequestHedger hedger = WebClient.shared().getHedger();
+    if(hedger == null) {
+      return connect(url, hostPermits, rateLimiter, metrics, () -> { });
+    }
+    CompletableFuture<Document> doc = hedger.send(host, onSend -> CompletableFuture.supplyAsync(() -> {
+      try {
+        return connect(url, hostPermits, rateLimiter, metrics, onSend);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, HEDGE_EXECUTOR), page -> true, loser -> { });
+    try {
+      return doc.get();
+    } catch (InterruptedException e) {
+      doc.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Crawling cancelled");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if(cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      } else if(cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw (Error) cause;
+    }
+  }
+
+  /**
+   * Request a page once a permit of its host is free and the rate limiter allows it
+   *
+   * @param metrics metrics the bytes of the page are recorded in
+   * @param onSend called right before the page is requested
+   */
+  private static Document connect(String url, Semaphore hostPermits, RateLimiter rateLimiter, PipelineMetrics metrics,
+                                  Runnable onSend) throws IOException {
+    try {
+      hostPermits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Crawling cancelled");
+    }
+    try {
+      if(rateLimiter != null) {
+        rateLimiter.acquire();
+      }
+      onSend.run();
+      Connection.Response response = Jsoup.connect(WebClient.shared().route(url)).execute();
+      metrics.recordBytesIngested(METRICS_SOURCE, response.bodyAsBytes().length);
+      return response.parse();
+    } finally {
+      hostPermits.release();
+    }
+  }
+
+  /**
+   * Crawl the data of several ZIP codes concurrently. A failing ZIP code does not affect the others.
+   *
+   * @param zipCodes ZIP codes to crawl
+   * @return one result per ZIP code, in the same order as zipCodes
+   * @throws CancellationException if the calling thread is interrupted
+   */
+  public List<CrawlResult> crawl(List<String> zipCodes) {
+    List<Future<RawWeatherData>> futures = new ArrayList<>();
+    for(String zipCode: zipCodes) {
+      futures.add(EXECUTOR.submit(() -> crawlData(zipCode)));
+    }
+    List<CrawlResult> results = new ArrayList<>();
+    try {
+      for(int i=0; i<futures.size(); i++) {
+        results.add(getResult(zipCodes.get(i), futures.get(i)));
+      }
+    } finally {
+      for(Future<RawWeatherData> future: futures) {
+        future.cancel(true);
+      }
+    }
+    return results;
+  }
+
+  private static CrawlResult getResult(String zipCode, Future<RawWeatherData> future) {
+    try {
+      return new CrawlResult(zipCode, future.get(), null);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Crawling cancelled");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if(cause instanceof RuntimeException) {
+        return new CrawlResult(zipCode, null, (RuntimeException) cause);
+      }
+      throw (Error) cause;
+    }
+  }
+
+  /**
+   * Result of crawling a ZIP code, either its data or the error that happened
+   */
+  public static class CrawlResult {
+    private final String zipCode;
+    private final RawWeatherData rawWeatherData;
+    private final RuntimeException error;
+
+    /**
+     * Constructor
+     *
+     * @param zipCode ZIP code crawled
+     * @param rawWeatherData data of the ZIP code, null if it failed
+     * @param error error of the ZIP code, null if it succeeded
+     */
+    CrawlResult(String zipCode, RawWeatherData rawWeatherData, RuntimeException error) {
+      this.zipCode = zipCode;
+      this.rawWeatherData = rawWeatherData;
+      this.error = error;
+    }
+
+    /**
+     * @return ZIP code crawled
+     */
+    public String getZipCode() {
+      return zipCode;
+    }
+
+    /**
+     * @return data of the ZIP code, null if it failed
+     */
+    public RawWeatherData getRawWeatherData() {
+      return rawWeatherData;
+    }
+
+    /**
+     * @return error of the ZIP code (IllegalArgumentException for an invalid ZIP code, IllegalStateException
+     *         otherwise), null if it succeeded
+     */
+    public RuntimeException getError() {
+      return error;
+    }
+
+    /**
+     * @return true if the ZIP code was crawled successfully
+     */
+    public boolean isSuccess() {
+      return error == null;
+    }
+
+    /**
+     * @return string info of the result
+     */
+    @Override
+    public String toString() {
+      return "CrawlResult{" +
+          "zipCode='" + zipCode + '\'' +
+          ", error=" + (error == null ? null : error.getMessage()) +
+          '}';
+    }
+  }
+
   /**
    * @return the name of this data plugin as a string
    */
@@ -150,12 +390,14 @@ public class WebCrawlerDataPlugin implements DataPlugin {
   }
 
   /**
-   * Load data from its source
+   * Load data from its source. The ZIP codes are crawled concurrently, a ZIP code that fails is left out and its
+   * error is reported to the framework as a warning. The load fails only if every ZIP code fails.
    *
    * @param inputEntries list of input entries that is specified by getInputEntries with the user input being set.
-   * @return raw weather data list (each RawWeatherData represents a series of data for a city)
-   * @throws IllegalArgumentException if any user input is invalid
-   * @throws IllegalStateException    if any internal error happens during loading data
+   * @return raw weather data list (each RawWeatherData represents a series of data for a city), of the ZIP codes
+   *         that succeeded in input order
+   * @throws IllegalArgumentException if every ZIP code fails and all of them are invalid
+   * @throws IllegalStateException    if every ZIP code fails and any of them fails for an internal error
    */
   @Override
   public List<RawWeatherData> loadData(List<InputEntry> inputEntries) throws IllegalArgumentException, IllegalStateException {
@@ -163,11 +405,37 @@ public class WebCrawlerDataPlugin implements DataPlugin {
       throw new IllegalStateException("Frame work did not give enough parameters to plugin");
     }
     String zipCodeRaw = inputEntries.get(0).getValue().trim();
-    String[] zipCodes = zipCodeRaw.split(",");
+    List<String> zipCodes = new ArrayList<>();
+    for(String zipCode: zipCodeRaw.split(",")) {
+      zipCodes.add(zipCode.trim());
+    }
+
     List<RawWeatherData> rawWeatherDataList = new ArrayList<>();
-    for(String zipCode: zipCodes) {
-      RawWeatherData rawWeatherData = crawlData(zipCode.trim());
-      rawWeatherDataList.add(rawWeatherData);
+    List<String> errors = new ArrayList<>();
+    RuntimeException firstError = null;
+    boolean allInvalidInput = true;
+    for(CrawlResult result: crawl(zipCodes)) {
+      if(result.isSuccess()) {
+        rawWeatherDataList.add(result.getRawWeatherData());
+        continue;
+      }
+      if(firstError == null) {
+        firstError = result.getError();
+      }
+      errors.add("ZIP code " + result.getZipCode() + ": " + result.getError().getMessage());
+      allInvalidInput &= result.getError() instanceof IllegalArgumentException;
+    }
+    if(rawWeatherDataList.isEmpty()) {
+      if(allInvalidInput) {
+        throw new IllegalArgumentException(String.join("; ", errors), firstError);
+      }
+      throw new IllegalStateException(String.join("; ", errors), firstError);
+    }
+    WeatherIndexFrameworkData registeredFramework = framework;
+    if(registeredFramework != null) {
+      for(String error: errors) {
+        registeredFramework.reportWarning(error);
+      }
     }
     return rawWeatherDataList;
   }
@@ -179,7 +447,15 @@ public class WebCrawlerDataPlugin implements DataPlugin {
    */
   @Override
   public void onRegister(WeatherIndexFrameworkData framework) {
+    this.framework = framework;
+  }
 
+  /**
+   * @return metrics of the framework that holds this plugin, the shared metrics if it is not registered
+   */
+  private PipelineMetrics metrics() {
+    WeatherIndexFrameworkData registeredFramework = framework;
+    return registeredFramework == null ? PipelineMetrics.shared() : registeredFramework.getMetrics();
   }
 
   /**
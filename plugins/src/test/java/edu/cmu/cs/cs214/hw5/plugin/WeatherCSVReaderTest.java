@@ -0,0 +1,177 @@
+package edu.cmu.cs.cs214.hw5.plugin;
+
+import edu.cmu.cs.cs214.hw5.core.CityInfo;
+import edu.cmu.cs.cs214.hw5.core.MetricSeries;
+import edu.cmu.cs.cs214.hw5.core.RawWeatherData;
+import edu.cmu.cs.cs214.hw5.core.WeatherMetric;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the hand written parsers of WeatherCSVReader against the JDK parsers they replace: every input must give
+ * the same value, or fail in both.
+ */
+public class WeatherCSVReaderTest {
+    private static final CityInfo CITY = new CityInfo("Pittsburgh", "Pennsylvania", "PA", 40.44, -79.99);
+
+    private static final String[] DATE_TIMES = {
+        "2020-04-08T23:00-07:00",
+        "2020-04-08T23:00:59Z",
+        "2020-04-08T23:00:05.123456789+05:30",
+        "2020-04-08T23:00:01.5+00:00",
+        "2020-04-08T23:00+01:02:03",
+        "2020-02-29T00:00+18:00",
+        "2020-02-29T00:00-18:00",
+        "0001-01-01T00:00Z",
+        "9999-12-31T23:59:59Z",
+        "2020-04-08t23:00z",
+        /* invalid */
+        "2020-04-08T23:00+18:30",
+        "2020-04-08T23:00-18:00:01",
+        "2020-04-08T23:00+19:00",
+        "2020-04-08T23:00:00.1234567890Z",
+        "2020-04-08T23:00:00.Z",
+        "2020-04-08T23:00:",
+        "2020-04-08T23:00:1",
+        "2020-04-08T23:00:5Z",
+        "2020-04-08T23:00:60Z",
+        "2020-04-08T23:60Z",
+        "2020-04-08T24:00Z",
+        "2020-04-31T00:00Z",
+        "2019-02-29T00:00Z",
+        "2020-13-01T00:00Z",
+        "2020-04-08T23:00+1:00",
+        "2020-04-08T23:00+01:0",
+        "2020-04-08T23:00",
+        "2020-04-08 23:00Z",
+        "",
+    };
+
+    private static final String[] DOUBLES = {
+        "0", "-0", "+0", "1", "-1", "1.", ".5", "-.5", "0.1", "0.30000000000000004", " 2.5 ", "  -3  ",
+        "123456789012345", "1234567890123456", "9007199254740993", "123456789012345.6", "0.000000000000001",
+        "1e5", "1E-5", "-1.5e+3", "NaN", "-Infinity", "0x1p3", "1d", "1f",
+        /* invalid */
+        "", " ", ".", "-", "+", "1.2.3", "1-", "--1", "1 2", "abc", "1,5",
+    };
+
+    @Test
+    public void parseDateTimeMatchesOffsetDateTime() {
+        for(String dateTime: DATE_TIMES) {
+            checkDateTime(dateTime);
+        }
+    }
+
+    @Test
+    public void parseDateTimeAtEndOfBuffer() {
+        /* a single column file without a trailing newline, the field ends the buffer */
+        for(String dateTime: DATE_TIMES) {
+            WeatherCSVReader reader = new WeatherCSVReader(Collections.singletonList("Time"), null);
+            RawWeatherData target = new RawWeatherData(CITY, Collections.emptySet());
+            byte[] buf = dateTime.getBytes(StandardCharsets.US_ASCII);
+            OffsetDateTime expected = parseOrNull(dateTime);
+            try {
+                reader.parseLines(buf, 0, buf.length, target);
+                if(expected == null && !dateTime.isEmpty()) {
+                    fail("Parsed invalid date time " + dateTime);
+                }
+            } catch (IllegalStateException e) {
+                if(expected != null) {
+                    throw new AssertionError("Fail to parse " + dateTime, e);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parseDoubleMatchesDoubleParseDouble() {
+        for(String value: DOUBLES) {
+            checkDouble(value);
+        }
+    }
+
+    @Test
+    public void parseDoubleMatchesDoubleParseDoubleOnRandomDecimals() {
+        Random random = new Random(214);
+        for(int i=0; i<100000; i++) {
+            StringBuilder sb = new StringBuilder();
+            if(random.nextInt(4) == 0) {
+                sb.append('-');
+            }
+            int intDigits = random.nextInt(12);
+            for(int d=0; d<intDigits; d++) {
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+            if(random.nextBoolean()) {
+                sb.append('.');
+                int fractionDigits = random.nextInt(12);
+                for(int d=0; d<fractionDigits; d++) {
+                    sb.append((char) ('0' + random.nextInt(10)));
+                }
+            }
+            checkDouble(sb.toString());
+        }
+    }
+
+    private static void checkDateTime(String dateTime) {
+        OffsetDateTime expected = parseOrNull(dateTime);
+        WeatherCSVReader reader = new WeatherCSVReader(List.of("Time", WeatherMetric.TEMPERATURE.getDescription()),
+            null);
+        RawWeatherData target = new RawWeatherData(CITY, Collections.singleton(WeatherMetric.TEMPERATURE));
+        byte[] buf = (dateTime + ",1\n").getBytes(StandardCharsets.US_ASCII);
+        try {
+            reader.parseLines(buf, 0, buf.length, target);
+        } catch (IllegalStateException e) {
+            if(expected != null) {
+                throw new AssertionError("Fail to parse " + dateTime, e);
+            }
+            return;
+        }
+        if(expected == null) {
+            fail("Parsed invalid date time " + dateTime);
+        }
+        MetricSeries series = target.getMetricSeries(WeatherMetric.TEMPERATURE);
+        assertEquals(dateTime, expected.toEpochSecond(), series.getEpochSecond(0));
+        assertEquals(dateTime, expected.getOffset(), series.getDateTime(0).getOffset());
+    }
+
+    private static OffsetDateTime parseOrNull(String dateTime) {
+        try {
+            return OffsetDateTime.parse(dateTime);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static void checkDouble(String value) {
+        byte[] buf = value.getBytes(StandardCharsets.US_ASCII);
+        Double expected;
+        try {
+            expected = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            expected = null;
+        }
+        double actual;
+        try {
+            actual = WeatherCSVReader.parseDouble(buf, 0, buf.length);
+        } catch (NumberFormatException e) {
+            if(expected != null) {
+                throw new AssertionError("Fail to parse " + value, e);
+            }
+            return;
+        }
+        if(expected == null) {
+            fail("Parsed invalid double " + value);
+        }
+        assertEquals(value, Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+    }
+}
@@ -0,0 +1,34 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory of the pools of the web client: its threads are daemon threads, so an idle pool does not keep the
+ * JVM alive, and are named NAME-N with N counting the threads of the factory from 1. The web client does not depend
+ * on the framework, the framework and plugins use core.DaemonThreadFactory.
+ */
+final class DaemonThreadFactory implements ThreadFactory {
+    private final String name;
+    private final AtomicInteger threadCnt = new AtomicInteger();
+
+    /**
+     * Constructor
+     *
+     * @param name name of the threads, followed by their number
+     */
+    DaemonThreadFactory(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param runnable task of the thread
+     * @return a new daemon thread
+     */
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, name + "-" + threadCnt.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
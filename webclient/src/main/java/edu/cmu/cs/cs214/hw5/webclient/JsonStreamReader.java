@@ -0,0 +1,473 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Pull parser reading json tokens from a stream, so a response can be converted while it is received, without
+ * building a DOM (e.g. JSONArray) of the whole document first. Values are read in document order with
+ * beginArray/beginObject, nextName, nextString/nextDouble/... and skipValue for values that are not needed.
+ */
+public class JsonStreamReader implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+
+    /* contexts of the stack */
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    /**
+     * Kind of the next token
+     */
+    public enum Token {
+        BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    /**
+     * Error thrown when the stream is not valid json
+     */
+    public static class MalformedJsonException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor
+         *
+         * @param message error message
+         */
+        public MalformedJsonException(String message) {
+            super(message);
+        }
+    }
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    /* number of characters before the buffer, for error messages */
+    private long bufferStart;
+    private int[] stack = new int[16];
+    private int stackSize;
+    /* null if the next token is not peeked yet */
+    private Token peeked;
+    private final StringBuilder sb = new StringBuilder();
+
+    /**
+     * Constructor
+     *
+     * @param in stream of a json document, closed by close()
+     */
+    public JsonStreamReader(Reader in) {
+        this.in = in;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @return kind of the next token, without consuming it
+     * @throws IOException if the stream fails or is not valid json
+     */
+    public Token peek() throws IOException {
+        if(peeked != null) {
+            return peeked;
+        }
+        int top = stack[stackSize - 1];
+        int c = nextNonWhitespace();
+        switch (top) {
+            case EMPTY_ARRAY:
+            case NONEMPTY_ARRAY:
+                if(c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if(top == NONEMPTY_ARRAY) {
+                    expect(c, ',');
+                    c = nextNonWhitespace();
+                }
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                return peeked = valueToken(c);
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                if(c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if(top == NONEMPTY_OBJECT) {
+                    expect(c, ',');
+                    c = nextNonWhitespace();
+                }
+                if(c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                expect(c, ':');
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                return peeked = valueToken(nextNonWhitespace());
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                return peeked = valueToken(c);
+            default:
+                if(c != -1) {
+                    throw syntaxError("Expected the end of the document");
+                }
+                return peeked = Token.END_DOCUMENT;
+        }
+    }
+
+    /**
+     * @return true if the current array or object has another element
+     * @throws IOException if the stream fails or is not valid json
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_ARRAY && token != Token.END_OBJECT && token != Token.END_DOCUMENT;
+    }
+
+    /**
+     * Consume the beginning of an array
+     *
+     * @throws IOException if the next token is not the beginning of an array
+     */
+    public void beginArray() throws IOException {
+        consume(Token.BEGIN_ARRAY);
+        pos++;
+        push(EMPTY_ARRAY);
+    }
+
+    /**
+     * Consume the end of the current array
+     *
+     * @throws IOException if the next token is not the end of an array
+     */
+    public void endArray() throws IOException {
+        consume(Token.END_ARRAY);
+        pos++;
+        stackSize--;
+    }
+
+    /**
+     * Consume the beginning of an object
+     *
+     * @throws IOException if the next token is not the beginning of an object
+     */
+    public void beginObject() throws IOException {
+        consume(Token.BEGIN_OBJECT);
+        pos++;
+        push(EMPTY_OBJECT);
+    }
+
+    /**
+     * Consume the end of the current object
+     *
+     * @throws IOException if the next token is not the end of an object
+     */
+    public void endObject() throws IOException {
+        consume(Token.END_OBJECT);
+        pos++;
+        stackSize--;
+    }
+
+    /**
+     * @return the next property name of the current object
+     * @throws IOException if the next token is not a name
+     */
+    public String nextName() throws IOException {
+        consume(Token.NAME);
+        pos++;
+        String name = readString();
+        stack[stackSize - 1] = DANGLING_NAME;
+        return name;
+    }
+
+    /**
+     * @return the next string value, or the text of the next number
+     * @throws IOException if the next token is not a string or number
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if(token == Token.NUMBER) {
+            peeked = null;
+            return readLiteral();
+        }
+        consume(Token.STRING);
+        pos++;
+        return readString();
+    }
+
+    /**
+     * @return the next number value, or the next string value parsed as a number
+     * @throws IOException if the next token is not a number (or a string holding a number)
+     */
+    public double nextDouble() throws IOException {
+        Token token = peek();
+        String text = token == Token.STRING ? nextString() : null;
+        if(text == null) {
+            consume(Token.NUMBER);
+            text = readLiteral();
+        }
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number but was " + text);
+        }
+    }
+
+    /**
+     * @return the next number value truncated to an int (as JSONObject.getInt does)
+     * @throws IOException if the next token is not a number (or a string holding a number)
+     */
+    public int nextInt() throws IOException {
+        return (int) nextDouble();
+    }
+
+    /**
+     * @return the next boolean value
+     * @throws IOException if the next token is not a boolean
+     */
+    public boolean nextBoolean() throws IOException {
+        consume(Token.BOOLEAN);
+        String literal = readLiteral();
+        if(literal.equals("true")) {
+            return true;
+        } else if(literal.equals("false")) {
+            return false;
+        }
+        throw syntaxError("Unexpected literal " + literal);
+    }
+
+    /**
+     * Consume the next null value
+     *
+     * @throws IOException if the next token is not null
+     */
+    public void nextNull() throws IOException {
+        consume(Token.NULL);
+        String literal = readLiteral();
+        if(!literal.equals("null")) {
+            throw syntaxError("Unexpected literal " + literal);
+        }
+    }
+
+    /**
+     * Skip the next value, with all its nested values if it is an array or object
+     *
+     * @throws IOException if the stream fails or is not valid json
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case STRING:
+                case NUMBER:
+                    nextString();
+                    break;
+                case BOOLEAN:
+                    nextBoolean();
+                    break;
+                case NULL:
+                    nextNull();
+                    break;
+                default:
+                    throw syntaxError("Unexpected end of the document");
+            }
+        } while(depth > 0);
+    }
+
+    /**
+     * Close the underlying stream
+     *
+     * @throws IOException if the stream fails to close
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private Token valueToken(int c) throws IOException {
+        switch (c) {
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                return Token.BOOLEAN;
+            case 'n':
+                return Token.NULL;
+            default:
+                if(c == '-' || (c >= '0' && c <= '9')) {
+                    return Token.NUMBER;
+                }
+                throw syntaxError(c == -1 ? "Unexpected end of the document" : "Unexpected character");
+        }
+    }
+
+    private void consume(Token expected) throws IOException {
+        Token token = peek();
+        if(token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    private void expect(int c, char expected) throws IOException {
+        if(c != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+        pos++;
+    }
+
+    private void push(int context) {
+        if(stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = context;
+    }
+
+    private boolean fill() throws IOException {
+        if(pos < limit) {
+            return true;
+        }
+        bufferStart += limit;
+        pos = 0;
+        limit = 0;
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while(n == 0);
+        if(n < 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    /**
+     * @return the next character that is not whitespace without consuming it, -1 at the end of the stream
+     */
+    private int nextNonWhitespace() throws IOException {
+        while(fill()) {
+            char c = buffer[pos];
+            if(c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * Read a string whose opening quote is consumed, up to and including the closing quote
+     */
+    private String readString() throws IOException {
+        sb.setLength(0);
+        while(true) {
+            if(!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            int start = pos;
+            while(pos < limit) {
+                char c = buffer[pos];
+                if(c == '"') {
+                    sb.append(buffer, start, pos - start);
+                    pos++;
+                    return sb.toString();
+                } else if(c == '\\') {
+                    sb.append(buffer, start, pos - start);
+                    pos++;
+                    sb.append(readEscape());
+                    start = pos;
+                } else {
+                    pos++;
+                }
+            }
+            sb.append(buffer, start, pos - start);
+        }
+    }
+
+    private char readEscape() throws IOException {
+        if(!fill()) {
+            throw syntaxError("Unterminated escape");
+        }
+        char c = buffer[pos++];
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for(int i=0; i<4; i++) {
+                    if(!fill()) {
+                        throw syntaxError("Unterminated escape");
+                    }
+                    int digit = Character.digit(buffer[pos++], 16);
+                    if(digit < 0) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                /* \" \\ \/ */
+                return c;
+        }
+    }
+
+    /**
+     * Read a number, true, false or null literal
+     */
+    private String readLiteral() throws IOException {
+        sb.setLength(0);
+        while(fill()) {
+            int start = pos;
+            while(pos < limit && isLiteralChar(buffer[pos])) {
+                pos++;
+            }
+            sb.append(buffer, start, pos - start);
+            if(pos < limit) {
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isLiteralChar(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+            || c == '-' || c == '+' || c == '.';
+    }
+
+    private MalformedJsonException syntaxError(String message) {
+        return new MalformedJsonException(message + " at character " + (bufferStart + pos));
+    }
+}
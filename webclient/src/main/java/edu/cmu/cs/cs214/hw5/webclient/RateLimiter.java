@@ -0,0 +1,66 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter: tokens are added at a fixed rate up to a burst size, every request takes one token.
+ * When the bucket is empty a request reserves a future token, so concurrent callers are spaced out at the rate
+ * instead of all retrying at once.
+ */
+public class RateLimiter {
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Constructor, the bucket starts full
+     *
+     * @param permitsPerSecond sustained rate of requests
+     * @param burst maximum number of requests sent at once after a quiet period
+     * @throws IllegalArgumentException if the rate is not positive or the burst is less than 1
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if(!(permitsPerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("Invalid rate limit " + permitsPerSecond + "/s, burst " + burst);
+        }
+        this.tokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take a token, reserving the next one if the bucket is empty
+     *
+     * @return milliseconds to wait before sending the request, 0 to send it now
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+        tokens -= 1;
+        if(tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / tokensPerNano / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * Take a token, waiting until one is available
+     *
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public void acquire() {
+        long delay = reserve();
+        if(delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Rate limited request cancelled");
+            }
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the web services of the data plugins, to measure them (concurrency, caching, retries) without
+ * the live services or API keys. Clients are pointed at it with WebClient.setReplayServer (or
+ * -Dwebclient.replay=URL), which sends https://host/path?query to URL/https/host/path?query.
+ *
+ * Each response is served from a capture file of the directory, named by a hash of the original url with its
+ * credentials redacted (see UrlRedactor), so captures are shared by all API keys and replayed without one. A capture
+ * is plain text: the request line ("GET url", redacted), the status code, the headers, an empty line and the body,
+ * so it can be written or edited by hand. In recording mode a missing capture is fetched from the original url
+ * and saved.
+ *
+ * Latency (a base delay, a random jitter and occasional slow responses) and errors (error statuses and dropped
+ * connections) can be injected into the responses, drawn from a random generator that can be seeded to
+ * reproduce a run.
+ *
+ * Run it standalone with: java ReplayServer DIR [PORT], configured by -Dreplay.record=true,
+ * -Dreplay.latencyMs=N, -Dreplay.jitterMs=N, -Dreplay.slowRate=R, -Dreplay.slowMs=N, -Dreplay.errorRate=R,
+ * -Dreplay.errorStatus=N (503), -Dreplay.dropRate=R and -Dreplay.seed=N, where R is a probability between 0 and 1.
+ */
+public class ReplayServer implements Closeable {
+    private static final int RESPONSE_NOT_FOUND = 404;
+    private static final int RESPONSE_BAD_GATEWAY = 502;
+    private static final int DEFAULT_ERROR_STATUS = 503;
+    private static final int DEFAULT_PORT = 8089;
+    private static final String CAPTURE_SUFFIX = ".capture";
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final long IDLE_THREAD_KEEP_ALIVE_SEC = 30;
+    private static final Duration UPSTREAM_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Path dir;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final HttpClient upstream = HttpClient.newBuilder()
+        .connectTimeout(UPSTREAM_TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .build();
+
+    private volatile boolean recording;
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double slowRate;
+    private volatile long slowMillis;
+    private volatile double errorRate;
+    private volatile int errorStatus = DEFAULT_ERROR_STATUS;
+    private volatile double dropRate;
+    /* shared by the handler threads, Random is thread safe */
+    private volatile Random random = new Random();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    /**
+     * Constructor, the server listens on the loopback address once started
+     *
+     * @param dir directory of the capture files
+     * @param port port to listen on, 0 for any free port
+     * @throws IOException if the port can not be bound
+     */
+    public ReplayServer(Path dir, int port) throws IOException {
+        this.dir = dir;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, IDLE_THREAD_KEEP_ALIVE_SEC,
+            TimeUnit.SECONDS, new SynchronousQueue<>(), new DaemonThreadFactory("replay-server"));
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Start serving requests
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop serving requests
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return base url to pass to WebClient.setReplayServer, e.g. http://127.0.0.1:8089
+     */
+    public String getBaseUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    /**
+     * @param recording true to fetch and save the responses that are not captured yet, false to answer them with 404
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Delay every response by latency plus a random time up to jitter
+     *
+     * @param latency delay of every response
+     * @param jitter maximum random delay added
+     */
+    public void setLatency(Duration latency, Duration jitter) {
+        this.latencyMillis = latency.toMillis();
+        this.jitterMillis = jitter.toMillis();
+    }
+
+    /**
+     * Delay some responses much longer, to reproduce a latency tail
+     *
+     * @param rate probability of a response to be slow
+     * @param delay delay added to a slow response
+     */
+    public void setSlowResponses(double rate, Duration delay) {
+        this.slowRate = rate;
+        this.slowMillis = delay.toMillis();
+    }
+
+    /**
+     * Answer some requests with an error status instead of their capture
+     *
+     * @param rate probability of a request to fail
+     * @param statusCode status of the failed requests, e.g. 503
+     */
+    public void setErrors(double rate, int statusCode) {
+        this.errorRate = rate;
+        this.errorStatus = statusCode;
+    }
+
+    /**
+     * Close the connection of some requests without answering them
+     *
+     * @param rate probability of a request to be dropped
+     */
+    public void setDropRate(double rate) {
+        this.dropRate = rate;
+    }
+
+    /**
+     * Seed the random generator of the injected latency and errors, so a run can be reproduced (with requests
+     * received in the same order)
+     *
+     * @param seed seed of the generator
+     */
+    public void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @return number of requests received
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of requests that had no capture
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of requests answered with an injected error or dropped
+     */
+    public long getInjectedErrorCount() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * @param url original url of a request, with or without its credentials
+     * @return path of its capture file
+     */
+    public Path capturePath(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder sb = new StringBuilder();
+            for(byte b: digest.digest(UrlRedactor.redact(url).getBytes(StandardCharsets.UTF_8))) {
+                sb.append(String.format("%02x", b));
+            }
+            return dir.resolve(sb + CAPTURE_SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Save a capture of a url, e.g. to prepare a benchmark without recording
+     *
+     * @param url original url, with or without its credentials
+     * @param statusCode status code to answer
+     * @param contentType content type of the body, null for none
+     * @param body body to answer
+     * @throws IOException if the capture can not be written
+     */
+    public void saveCapture(String url, int statusCode, String contentType, byte[] body) throws IOException {
+        Files.createDirectories(dir);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StringBuilder head = new StringBuilder();
+        head.append("GET ").append(UrlRedactor.redact(url)).append('\n').append(statusCode).append('\n');
+        if(contentType != null) {
+            head.append(CONTENT_TYPE).append(": ").append(contentType).append('\n');
+        }
+        head.append('\n');
+        out.write(head.toString().getBytes(StandardCharsets.UTF_8));
+        out.write(body);
+        Path path = capturePath(url);
+        Path tmp = Files.createTempFile(dir, "capture", ".tmp");
+        Files.write(tmp, out.toByteArray());
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            String url = originalUrl(exchange.getRequestURI());
+            sleep(delayMillis());
+            Random random = this.random;
+            if(random.nextDouble() < dropRate) {
+                injectedErrors.incrementAndGet();
+                return;
+            }
+            if(random.nextDouble() < errorRate) {
+                injectedErrors.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "0");
+                send(exchange, errorStatus, null, new byte[0]);
+                return;
+            }
+            if(url == null) {
+                send(exchange, RESPONSE_NOT_FOUND, null, "Not a replay url".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            Path path = capturePath(url);
+            if(!Files.exists(path)) {
+                misses.incrementAndGet();
+                String redacted = UrlRedactor.redact(url);
+                if(!recording) {
+                    System.err.println("No capture of " + redacted);
+                    send(exchange, RESPONSE_NOT_FOUND, null,
+                        ("No capture of " + redacted).getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                if(!record(url)) {
+                    send(exchange, RESPONSE_BAD_GATEWAY, null,
+                        ("Fail to record " + redacted).getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+            }
+            replay(exchange, path);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return url of the original request of /scheme/host/path?query, null if the path is not of this form
+     */
+    private static String originalUrl(URI requestUri) {
+        String path = requestUri.getRawPath();
+        int schemeEnd = path.indexOf('/', 1);
+        if(schemeEnd < 0) {
+            return null;
+        }
+        String url = path.substring(1, schemeEnd) + "://" + path.substring(schemeEnd + 1);
+        return requestUri.getRawQuery() == null ? url : url + "?" + requestUri.getRawQuery();
+    }
+
+    private long delayMillis() {
+        Random random = this.random;
+        long delay = latencyMillis + (jitterMillis > 0 ? (long) (random.nextDouble() * (jitterMillis + 1)) : 0);
+        if(random.nextDouble() < slowRate) {
+            delay += slowMillis;
+        }
+        return delay;
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if(millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private boolean record(String url) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response;
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(UPSTREAM_TIMEOUT).GET().build();
+            response = upstream.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Fail to record " + UrlRedactor.redact(url) + ": " + e.getMessage());
+            return false;
+        }
+        saveCapture(url, response.statusCode(), response.headers().firstValue(CONTENT_TYPE).orElse(null),
+            response.body());
+        return true;
+    }
+
+    private static void replay(HttpExchange exchange, Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            String requestLine = readLine(in);
+            int statusCode;
+            try {
+                statusCode = Integer.parseInt(readLine(in).trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid capture " + path + " of " + requestLine, e);
+            }
+            String header;
+            while(!(header = readLine(in)).isEmpty()) {
+                int sep = header.indexOf(':');
+                if(sep > 0) {
+                    exchange.getResponseHeaders().add(header.substring(0, sep).trim(),
+                        header.substring(sep + 1).trim());
+                }
+            }
+            send(exchange, statusCode, null, in.readAllBytes());
+        }
+    }
+
+    /**
+     * Read a line of the head of a capture, byte by byte so the body is left unread
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while((b = in.read()) >= 0 && b != '\n') {
+            line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int statusCode, String contentType, byte[] body)
+        throws IOException {
+        if(contentType != null) {
+            exchange.getResponseHeaders().set(CONTENT_TYPE, contentType);
+        }
+        exchange.sendResponseHeaders(statusCode, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Run a replay server until the process is stopped
+     *
+     * @param args capture directory, and optionally the port (8089)
+     * @throws IOException if the port can not be bound
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.err.println("Usage: ReplayServer DIR [PORT]");
+            return;
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        ReplayServer replayServer = new ReplayServer(Paths.get(args[0]), port);
+        replayServer.setRecording(Boolean.getBoolean("replay.record"));
+        replayServer.setLatency(Duration.ofMillis(Long.getLong("replay.latencyMs", 0)),
+            Duration.ofMillis(Long.getLong("replay.jitterMs", 0)));
+        replayServer.setSlowResponses(Double.parseDouble(System.getProperty("replay.slowRate", "0")),
+            Duration.ofMillis(Long.getLong("replay.slowMs", 0)));
+        replayServer.setErrors(Double.parseDouble(System.getProperty("replay.errorRate", "0")),
+            Integer.getInteger("replay.errorStatus", DEFAULT_ERROR_STATUS));
+        replayServer.setDropRate(Double.parseDouble(System.getProperty("replay.dropRate", "0")));
+        Long seed = Long.getLong("replay.seed");
+        if(seed != null) {
+            replayServer.setSeed(seed);
+        }
+        replayServer.start();
+        System.out.println("Replaying " + args[0] + " at " + replayServer.getBaseUrl()
+            + ", run the clients with -Dwebclient.replay=" + replayServer.getBaseUrl());
+    }
+}
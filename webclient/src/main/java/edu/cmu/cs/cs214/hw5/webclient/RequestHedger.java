@@ -0,0 +1,179 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Sends a duplicate (hedge) of a request that has not answered within a latency percentile of its host, and takes
+ * whichever answers first, to cut the tail latency caused by an occasional slow upstream response. The latencies
+ * of the last requests of each host are tracked, from the moment they are actually sent (not while they wait for
+ * a rate limiter), and hedging starts once enough of them are known. An answer to be retried (e.g. 429 or 503)
+ * does not win the race.
+ *
+ * Only idempotent requests (e.g. GET) should be hedged.
+ */
+public class RequestHedger {
+    private static final int WINDOW_SIZE = 256;
+
+    private final double percentile;
+    private final long minDelayMillis;
+    private final int minSamples;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param percentile latency percentile (e.g. 95) after which a request is hedged
+     * @param minDelay minimum wait before hedging a request
+     * @param minSamples number of latencies of a host to know before its requests are hedged
+     * @throws IllegalArgumentException if percentile is not between 0 and 100 or minSamples is less than 1
+     */
+    public RequestHedger(double percentile, Duration minDelay, int minSamples) {
+        if(!(percentile > 0 && percentile <= 100) || minSamples < 1) {
+            throw new IllegalArgumentException("Invalid hedging percentile " + percentile + " or samples " + minSamples);
+        }
+        this.percentile = percentile;
+        this.minDelayMillis = minDelay.toMillis();
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * @return number of hedges sent
+     */
+    public long getHedgesSent() {
+        return hedgesSent.get();
+    }
+
+    /**
+     * @return number of hedges that answered before the request they duplicate
+     */
+    public long getHedgesWon() {
+        return hedgesWon.get();
+    }
+
+    /**
+     * @param host host name
+     * @return wait before a request to the host is hedged in milliseconds, -1 if too few latencies are known
+     */
+    public long hedgeDelayMillis(String host) {
+        LatencyWindow window = latencies.get(host);
+        long delay = window == null ? -1 : window.percentileMillis(percentile, minSamples);
+        return delay < 0 ? -1 : Math.max(delay, minDelayMillis);
+    }
+
+    /**
+     * Send a request, and a hedge of it if it is slow. The result is the first successful answer, or the answer or
+     * error of the last attempt if all fail.
+     *
+     * @param host host the request is sent to, whose latencies decide when to hedge
+     * @param request sends the request (called once more for the hedge)
+     * @param isSuccess tells whether an answer is final, false for an answer to be retried (e.g. status 503)
+     * @param discard releases an answer that lost the race (e.g. closes its body)
+     * @param <T> answer type
+     * @return future of the first successful answer
+     */
+    public <T> CompletableFuture<T> send(String host, Request<T> request, Predicate<T> isSuccess,
+                                         Consumer<T> discard) {
+        LatencyWindow window = latencies.computeIfAbsent(host, h -> new LatencyWindow());
+        long delay = hedgeDelayMillis(host);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        CompletableFuture<T> primary = attempt(request, window, result, pending, isSuccess, discard, false);
+        if(delay >= 0) {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+                if(!result.isDone()) {
+                    pending.incrementAndGet();
+                    hedgesSent.incrementAndGet();
+                    CompletableFuture<T> hedge = attempt(request, window, result, pending, isSuccess, discard, true);
+                    result.whenComplete((value, error) -> hedge.cancel(true));
+                }
+            });
+        }
+        result.whenComplete((value, error) -> primary.cancel(true));
+        return result;
+    }
+
+    private <T> CompletableFuture<T> attempt(Request<T> request, LatencyWindow window, CompletableFuture<T> result,
+                                             AtomicInteger pending, Predicate<T> isSuccess, Consumer<T> discard,
+                                             boolean isHedge) {
+        AtomicLong start = new AtomicLong(System.nanoTime());
+        CompletableFuture<T> sent;
+        try {
+            sent = request.send(() -> start.set(System.nanoTime()));
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((value, error) -> {
+            if(error == null && isSuccess.test(value)) {
+                window.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start.get()));
+                if(result.complete(value)) {
+                    if(isHedge) {
+                        hedgesWon.incrementAndGet();
+                    }
+                } else {
+                    discard.accept(value);
+                }
+            } else if(pending.decrementAndGet() == 0) {
+                if(error != null) {
+                    result.completeExceptionally(error);
+                } else if(!result.complete(value)) {
+                    discard.accept(value);
+                }
+            } else if(error == null) {
+                /* the other attempt may still succeed */
+                discard.accept(value);
+            }
+        });
+        return sent;
+    }
+
+    /**
+     * Sends a request
+     *
+     * @param <T> answer type
+     */
+    @FunctionalInterface
+    public interface Request<T> {
+        /**
+         * @param onSend to call right before the request is sent, after any wait (e.g. for a rate limiter), so
+         *               its latency is measured from then
+         * @return future of the answer
+         */
+        CompletableFuture<T> send(Runnable onSend);
+    }
+
+    /**
+     * Latencies of the last WINDOW_SIZE answers of a host
+     */
+    private static class LatencyWindow {
+        private final long[] millis = new long[WINDOW_SIZE];
+        private int count;
+        private int next;
+
+        synchronized void add(long latency) {
+            millis[next] = latency;
+            next = (next + 1) % WINDOW_SIZE;
+            count = Math.min(count + 1, WINDOW_SIZE);
+        }
+
+        synchronized long percentileMillis(double percentile, int minSamples) {
+            if(count < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(millis, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * count) - 1;
+            return sorted[Math.max(0, Math.min(index, count - 1))];
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Policy to retry failed requests with exponential backoff and full jitter: the n-th retry waits a random time
+ * between 0 and min(maxDelay, baseDelay * 2^(n-1)), so clients throttled at the same time do not retry in lockstep.
+ * Requests that got no response (connection error, timeout) and responses with a retryable status are retried,
+ * a Retry-After header of the response is honored up to maxDelay.
+ */
+public class RetryPolicy {
+    /* 429 Too Many Requests and the transient server errors */
+    private static final Set<Integer> DEFAULT_RETRY_STATUSES = Set.of(429, 500, 502, 503, 504);
+    private static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO);
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Set<Integer> retryStatuses;
+
+    /**
+     * Constructor retrying 429, 500, 502, 503 and 504 responses
+     *
+     * @param maxAttempts maximum number of attempts of a request, including the first one
+     * @param baseDelay maximum wait before the first retry
+     * @param maxDelay maximum wait before any retry
+     * @throws IllegalArgumentException if maxAttempts is less than 1
+     */
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+        this(maxAttempts, baseDelay, maxDelay, DEFAULT_RETRY_STATUSES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxAttempts maximum number of attempts of a request, including the first one
+     * @param baseDelay maximum wait before the first retry
+     * @param maxDelay maximum wait before any retry
+     * @param retryStatuses status codes of the responses to retry
+     * @throws IllegalArgumentException if maxAttempts is less than 1
+     */
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, Set<Integer> retryStatuses) {
+        if(maxAttempts < 1) {
+            throw new IllegalArgumentException("Invalid number of attempts " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelay.toMillis();
+        this.maxDelayMillis = maxDelay.toMillis();
+        this.retryStatuses = Set.copyOf(retryStatuses);
+    }
+
+    /**
+     * @return policy that never retries
+     */
+    public static RetryPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * @return maximum number of attempts of a request, including the first one
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param statusCode status code of a response
+     * @return true if a response with this status is retried
+     */
+    public boolean isRetryable(int statusCode) {
+        return retryStatuses.contains(statusCode);
+    }
+
+    /**
+     * @param attempt number of attempts made so far (1 after the first one)
+     * @param retryAfterMillis wait asked by the server with Retry-After, -1 if none
+     * @return milliseconds to wait before the next attempt
+     */
+    public long backoffMillis(int attempt, long retryAfterMillis) {
+        if(retryAfterMillis >= 0) {
+            return Math.min(retryAfterMillis, maxDelayMillis);
+        }
+        int shift = Math.min(attempt - 1, 62);
+        long exponential = baseDelayMillis << shift;
+        if(exponential >> shift != baseDelayMillis) {
+            exponential = Long.MAX_VALUE;
+        }
+        long ceiling = Math.min(maxDelayMillis, exponential);
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
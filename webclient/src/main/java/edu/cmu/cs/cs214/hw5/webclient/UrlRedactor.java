@@ -0,0 +1,57 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Removes credentials (API keys, tokens) from urls before they are used as cache keys, written to disk or put in
+ * error messages: the value of every credential query parameter is replaced by REDACTED, so urls that only differ
+ * by their key are the same once redacted.
+ */
+public final class UrlRedactor {
+    /** value of a redacted parameter */
+    public static final String REDACTED = "REDACTED";
+
+    private static final Set<String> CREDENTIAL_PARAMS = Set.of("apikey", "api_key", "key", "token", "access_token",
+        "client_secret", "secret", "password", "sig", "signature");
+
+    private UrlRedactor() {
+    }
+
+    /**
+     * @param url url, may be null
+     * @return the url with the values of its credential query parameters redacted
+     */
+    public static String redact(String url) {
+        if(url == null) {
+            return null;
+        }
+        int queryStart = url.indexOf('?');
+        if(queryStart < 0) {
+            return url;
+        }
+        int fragmentStart = url.indexOf('#', queryStart);
+        int queryEnd = fragmentStart < 0 ? url.length() : fragmentStart;
+        StringBuilder sb = new StringBuilder(url.length()).append(url, 0, queryStart + 1);
+        int start = queryStart + 1;
+        while(start <= queryEnd) {
+            int end = url.indexOf('&', start);
+            if(end < 0 || end > queryEnd) {
+                end = queryEnd;
+            }
+            String param = url.substring(start, end);
+            int equals = param.indexOf('=');
+            String name = equals < 0 ? param : param.substring(0, equals);
+            if(equals >= 0 && CREDENTIAL_PARAMS.contains(name.toLowerCase(Locale.ROOT))) {
+                sb.append(name).append('=').append(REDACTED);
+            } else {
+                sb.append(param);
+            }
+            if(end < queryEnd) {
+                sb.append('&');
+            }
+            start = end + 1;
+        }
+        return sb.append(url, queryEnd, url.length()).toString();
+    }
+}
@@ -0,0 +1,763 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP client shared by the web data plugins. It wraps a single java.net.http.HttpClient, so connections (and TLS
+ * sessions) are kept alive and reused across requests and plugins, requests can be sent asynchronously, and gzip
+ * encoded bodies are decoded.
+ *
+ * Responses can be cached (see WebResponseCache): a fresh cached body is returned without a request, an expired one is
+ * revalidated with a conditional request when the server sent an ETag or Last-Modified. Entries expire after the
+ * max-age of the response, or after the default TTL if it has none.
+ *
+ * Timeouts of the shared client can be set with -Dwebclient.connectTimeoutMs=N and -Dwebclient.requestTimeoutMs=N.
+ * Its cache is kept in ~/.weather-index/http-cache (-Dwebclient.cache=dir, or false to disable it) with a default
+ * TTL of -Dwebclient.cacheTtlSec=N (600), at most -Dwebclient.cacheMemoryBytes=N in memory (16M) and
+ * -Dwebclient.cacheDiskBytes=N on disk (64M).
+ *
+ * Requests can be rate limited and retried per host (see RateLimiter, RetryPolicy). The shared client retries
+ * connection errors, timeouts and 429/5xx responses up to -Dwebclient.maxAttempts=N times (3) with a jittered
+ * backoff between -Dwebclient.retryBaseDelayMs=N (200) and -Dwebclient.retryMaxDelayMs=N (5000), and limits the
+ * hosts configured with -Dwebclient.rateLimit.HOST=PERMITS_PER_SECOND[:BURST].
+ *
+ * Requests can be hedged (see RequestHedger): a request that has not answered within a latency percentile of its
+ * host is sent once more and the first response is used. The shared client hedges at -Dwebclient.hedgePercentile=P
+ * (off by default), waiting at least -Dwebclient.hedgeMinDelayMs=N (50) once -Dwebclient.hedgeMinSamples=N (20)
+ * latencies of the host are known.
+ *
+ * With -Dwebclient.replay=URL (or setReplayServer) every request is sent to a ReplayServer at URL instead of its
+ * host, to run the plugins offline against captured responses.
+ */
+public class WebClient {
+    private static final int RESPONSE_OK = 200;
+    private static final int RESPONSE_NOT_MODIFIED = 304;
+    private static final long DEFAULT_CONNECT_TIMEOUT_MS = 10_000;
+    private static final long DEFAULT_REQUEST_TIMEOUT_MS = 30_000;
+    private static final String GZIP = "gzip";
+    private static final String CHARSET_PARAM = "charset=";
+    private static final String MAX_AGE_PARAM = "max-age=";
+    private static final String NO_STORE = "no-store";
+    private static final String DEFAULT_CACHE_DIR = ".weather-index/http-cache";
+    private static final long DEFAULT_CACHE_TTL_SEC = 600;
+    private static final long DEFAULT_CACHE_MEMORY_BYTES = 16L << 20;
+    private static final long DEFAULT_CACHE_DISK_BYTES = 64L << 20;
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_RETRY_BASE_DELAY_MS = 200;
+    private static final long DEFAULT_RETRY_MAX_DELAY_MS = 5_000;
+    private static final String RATE_LIMIT_PROPERTY = "webclient.rateLimit.";
+    private static final long DEFAULT_HEDGE_MIN_DELAY_MS = 50;
+    private static final int DEFAULT_HEDGE_MIN_SAMPLES = 20;
+    private static final LongConsumer NO_BYTES_RECEIVED = bytes -> { };
+
+    private static final WebClient SHARED = new WebClient(
+        Duration.ofMillis(Long.getLong("webclient.connectTimeoutMs", DEFAULT_CONNECT_TIMEOUT_MS)),
+        Duration.ofMillis(Long.getLong("webclient.requestTimeoutMs", DEFAULT_REQUEST_TIMEOUT_MS)),
+        sharedCache(), Duration.ofSeconds(Long.getLong("webclient.cacheTtlSec", DEFAULT_CACHE_TTL_SEC)));
+
+    static {
+        SHARED.setDefaultRetryPolicy(new RetryPolicy(Integer.getInteger("webclient.maxAttempts", DEFAULT_MAX_ATTEMPTS),
+            Duration.ofMillis(Long.getLong("webclient.retryBaseDelayMs", DEFAULT_RETRY_BASE_DELAY_MS)),
+            Duration.ofMillis(Long.getLong("webclient.retryMaxDelayMs", DEFAULT_RETRY_MAX_DELAY_MS))));
+        SHARED.setReplayServer(System.getProperty("webclient.replay"));
+        String hedgePercentile = System.getProperty("webclient.hedgePercentile");
+        if(hedgePercentile != null) {
+            SHARED.setHedger(new RequestHedger(Double.parseDouble(hedgePercentile),
+                Duration.ofMillis(Long.getLong("webclient.hedgeMinDelayMs", DEFAULT_HEDGE_MIN_DELAY_MS)),
+                Integer.getInteger("webclient.hedgeMinSamples", DEFAULT_HEDGE_MIN_SAMPLES)));
+        }
+    }
+
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    /* null if responses are not cached */
+    private final WebResponseCache cache;
+    private final long defaultTtlMillis;
+    private volatile RetryPolicy defaultRetryPolicy = RetryPolicy.none();
+    private final Map<String, RetryPolicy> retryPolicies = new ConcurrentHashMap<>();
+    /* empty if the host is not limited */
+    private final Map<String, Optional<RateLimiter>> rateLimiters = new ConcurrentHashMap<>();
+    /* null if requests are not hedged */
+    private volatile RequestHedger hedger;
+    /* null if requests are sent to their hosts */
+    private volatile String replayServer;
+
+    /**
+     * Constructor of a client without cache
+     *
+     * @param connectTimeout maximum time to open a connection
+     * @param requestTimeout maximum time to wait for a response once the request is sent
+     */
+    public WebClient(Duration connectTimeout, Duration requestTimeout) {
+        this(connectTimeout, requestTimeout, null, Duration.ZERO);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param connectTimeout maximum time to open a connection
+     * @param requestTimeout maximum time to wait for a response once the request is sent
+     * @param cache cache of the responses, null to disable caching
+     * @param defaultTtl time a response without max-age is fresh for
+     */
+    public WebClient(Duration connectTimeout, Duration requestTimeout, WebResponseCache cache, Duration defaultTtl) {
+        this.requestTimeout = requestTimeout;
+        this.cache = cache;
+        this.defaultTtlMillis = defaultTtl.toMillis();
+        httpClient = HttpClient.newBuilder()
+            .connectTimeout(connectTimeout)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    }
+
+    /**
+     * @return client shared by all plugins, configured by system properties
+     */
+    public static WebClient shared() {
+        return SHARED;
+    }
+
+    private static WebResponseCache sharedCache() {
+        String dir = System.getProperty("webclient.cache");
+        if("false".equalsIgnoreCase(dir)) {
+            return null;
+        }
+        Path cacheDir = dir != null ? Paths.get(dir) : Paths.get(System.getProperty("user.home"), DEFAULT_CACHE_DIR);
+        return new WebResponseCache(cacheDir, Long.getLong("webclient.cacheMemoryBytes", DEFAULT_CACHE_MEMORY_BYTES),
+            Long.getLong("webclient.cacheDiskBytes", DEFAULT_CACHE_DISK_BYTES));
+    }
+
+    /**
+     * Send a GET request without blocking, or answer it from the cache
+     *
+     * @param url url to request
+     * @return future of the decoded body, completed exceptionally with a WebClientException if the url is invalid,
+     *         no response is received or the status is not 200
+     */
+    public CompletableFuture<String> getAsync(String url) {
+        return getAsync(url, NO_BYTES_RECEIVED);
+    }
+
+    /**
+     * Send a GET request without blocking, or answer it from the cache
+     *
+     * @param url url to request
+     * @param bytesReceived called with the number of body bytes received from the network (before they are
+     *                      decoded), not called if the request is answered from the cache
+     * @return future of the decoded body, completed exceptionally with a WebClientException if the url is invalid,
+     *         no response is received or the status is not 200
+     */
+    public CompletableFuture<String> getAsync(String url, LongConsumer bytesReceived) {
+        String key = cacheKey(url);
+        return send(url, HttpResponse.BodyHandlers.ofByteArray(), body -> body, response -> {
+            bytesReceived.accept(response.body().length);
+            String body = decodeBody(key, response);
+            store(key, response, body);
+            return body;
+        });
+    }
+
+    /**
+     * Send a GET request and wait for the response
+     *
+     * @param url url to request
+     * @return decoded body
+     * @throws WebClientException if the url is invalid, no response is received or the status is not 200
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public String get(String url) {
+        return await(getAsync(url));
+    }
+
+    /**
+     * Send a GET request and wait for the response
+     *
+     * @param url url to request
+     * @param bytesReceived called with the number of body bytes received from the network, see getAsync
+     * @return decoded body
+     * @throws WebClientException if the url is invalid, no response is received or the status is not 200
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public String get(String url, LongConsumer bytesReceived) {
+        return await(getAsync(url, bytesReceived));
+    }
+
+    /**
+     * Send a GET request without blocking, the body is read as it is received instead of being buffered, e.g. to
+     * parse it with JsonStreamReader. A body read to its end is cached like the ones of getAsync.
+     *
+     * @param url url to request
+     * @return future of a reader of the decoded body, to be closed by the caller, completed exceptionally with a
+     *         WebClientException if the url is invalid, no response is received or the status is not 200
+     */
+    public CompletableFuture<Reader> openAsync(String url) {
+        return openAsync(url, NO_BYTES_RECEIVED);
+    }
+
+    /**
+     * Send a GET request without blocking, the body is read as it is received, see openAsync
+     *
+     * @param url url to request
+     * @param bytesReceived called once the body is read to its end or closed, with the number of body bytes read
+     *                      from the network (before they are decoded), not called if the request is answered from
+     *                      the cache
+     * @return future of a reader of the decoded body, to be closed by the caller, completed exceptionally with a
+     *         WebClientException if the url is invalid, no response is received or the status is not 200
+     */
+    public CompletableFuture<Reader> openAsync(String url, LongConsumer bytesReceived) {
+        String key = cacheKey(url);
+        return send(url, HttpResponse.BodyHandlers.ofInputStream(), StringReader::new,
+            response -> openBody(key, response, bytesReceived));
+    }
+
+    /**
+     * Send a GET request and wait for the response headers, see openAsync
+     *
+     * @param url url to request
+     * @return reader of the decoded body, to be closed by the caller
+     * @throws WebClientException if the url is invalid, no response is received or the status is not 200
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public Reader open(String url) {
+        return await(openAsync(url));
+    }
+
+    /**
+     * Send a GET request and wait for the response headers, see openAsync
+     *
+     * @param url url to request
+     * @param bytesReceived called with the number of body bytes read from the network, see openAsync
+     * @return reader of the decoded body, to be closed by the caller
+     * @throws WebClientException if the url is invalid, no response is received or the status is not 200
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public Reader open(String url, LongConsumer bytesReceived) {
+        return await(openAsync(url, bytesReceived));
+    }
+
+    /**
+     * Send a GET request (conditional if an expired response is cached), or answer it from a fresh cached response
+     *
+     * @param fromCache converts a cached body to the result
+     * @param fromResponse converts a response with status 200 to the result
+     */
+    private <T, R> CompletableFuture<R> send(String originalUrl, HttpResponse.BodyHandler<T> bodyHandler,
+                                             Function<String, R> fromCache, Function<HttpResponse<T>, R> fromResponse) {
+        String url = route(originalUrl);
+        /* the url without credentials, used as cache key and in error messages */
+        String key = UrlRedactor.redact(url);
+        WebResponseCache.Entry cached = cache == null ? null : cache.get(key);
+        if(cached != null && cached.isFresh(System.currentTimeMillis())) {
+            return CompletableFuture.completedFuture(fromCache.apply(cached.getBody()));
+        }
+        HttpRequest request;
+        String host;
+        try {
+            /* rate limits, retries and hedging are per host the request is for, not the replay server */
+            host = URI.create(originalUrl).getHost();
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Accept-Encoding", GZIP)
+                .GET();
+            if(cached != null && cached.getEtag() != null) {
+                builder.header("If-None-Match", cached.getEtag());
+            }
+            if(cached != null && cached.getLastModified() != null) {
+                builder.header("If-Modified-Since", cached.getLastModified());
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(
+                new WebClientException("Invalid url " + key, key, WebClientException.NO_RESPONSE, e));
+        }
+        return sendWithRetry(host, request, bodyHandler, 1)
+            .handle((response, error) -> {
+                if(error != null) {
+                    throw failure(key, error);
+                }
+                if(response.statusCode() == RESPONSE_NOT_MODIFIED && cached != null) {
+                    discardBody(response);
+                    cache.put(key, cached.withExpiry(expiryOf(response)));
+                    return fromCache.apply(cached.getBody());
+                }
+                if(response.statusCode() != RESPONSE_OK) {
+                    discardBody(response);
+                    throw new WebClientException("HTTP Request Fail " + response.statusCode(), key,
+                        response.statusCode(), null);
+                }
+                return fromResponse.apply(response);
+            });
+    }
+
+    /**
+     * @return cache key of a url: its url once routed, with its credentials redacted
+     */
+    private String cacheKey(String url) {
+        return UrlRedactor.redact(route(url));
+    }
+
+    /**
+     * Send a request once its host's rate limiter allows it (hedged if the client hedges), and again (after a
+     * backoff) while it fails in a way the retry policy of its host retries
+     *
+     * @param host host of the original url of the request, null if it has none
+     * @param attempt number of the attempt, from 1
+     * @return future of the last response, or of the error of the last attempt
+     */
+    private <T> CompletableFuture<HttpResponse<T>> sendWithRetry(String host, HttpRequest request,
+                                                               HttpResponse.BodyHandler<T> bodyHandler, int attempt) {
+        RetryPolicy retryPolicy = getRetryPolicy(host);
+        RateLimiter rateLimiter = getRateLimiter(host);
+        RequestHedger.Request<HttpResponse<T>> send = onSend ->
+            afterDelay(rateLimiter == null ? 0 : rateLimiter.reserve())
+                .thenCompose(ignored -> {
+                    onSend.run();
+                    return httpClient.sendAsync(request, bodyHandler);
+                });
+        RequestHedger requestHedger = hedger;
+        CompletableFuture<HttpResponse<T>> sent = requestHedger == null || host == null ? send.send(() -> { })
+            : requestHedger.send(host, send, response -> !retryPolicy.isRetryable(response.statusCode()),
+                WebClient::discardBody);
+        return sent.handle((response, error) -> {
+            if(attempt >= retryPolicy.getMaxAttempts()) {
+                return sent;
+            }
+            long retryAfterMillis = -1;
+            if(error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+                if(!(cause instanceof IOException)) {
+                    return sent;
+                }
+            } else if(retryPolicy.isRetryable(response.statusCode())) {
+                discardBody(response);
+                retryAfterMillis = retryAfterMillis(response);
+            } else {
+                return sent;
+            }
+            return afterDelay(retryPolicy.backoffMillis(attempt, retryAfterMillis))
+                .thenCompose(ignored -> sendWithRetry(host, request, bodyHandler, attempt + 1));
+        }).thenCompose(Function.identity());
+    }
+
+    private static CompletableFuture<Void> afterDelay(long millis) {
+        if(millis <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * @return wait asked by a Retry-After header in seconds, -1 if there is none (or it is a date)
+     */
+    private static long retryAfterMillis(HttpResponse<?> response) {
+        String retryAfter = response.headers().firstValue("Retry-After").orElse("").trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Set the retry policy of the hosts without their own policy
+     *
+     * @param retryPolicy retry policy
+     */
+    public void setDefaultRetryPolicy(RetryPolicy retryPolicy) {
+        defaultRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * Set the retry policy of the requests to a host
+     *
+     * @param host host name, e.g. dataservice.accuweather.com
+     * @param retryPolicy retry policy, null to use the default one
+     */
+    public void setRetryPolicy(String host, RetryPolicy retryPolicy) {
+        if(retryPolicy == null) {
+            retryPolicies.remove(host);
+        } else {
+            retryPolicies.put(host, retryPolicy);
+        }
+    }
+
+    /**
+     * @param host host name
+     * @return retry policy of the requests to the host
+     */
+    public RetryPolicy getRetryPolicy(String host) {
+        return host == null ? defaultRetryPolicy : retryPolicies.getOrDefault(host, defaultRetryPolicy);
+    }
+
+    /**
+     * Limit the rate of the requests to a host, requests over the limit are delayed (not failed)
+     *
+     * @param host host name, e.g. dataservice.accuweather.com
+     * @param rateLimiter rate limiter shared by all requests to the host, null for no limit
+     */
+    public void setRateLimiter(String host, RateLimiter rateLimiter) {
+        rateLimiters.put(host, Optional.ofNullable(rateLimiter));
+    }
+
+    /**
+     * @param host host name
+     * @return rate limiter of the requests to the host, null if they are not limited. Unless set with
+     *         setRateLimiter, it is configured by -Dwebclient.rateLimit.HOST=PERMITS_PER_SECOND[:BURST]
+     */
+    public RateLimiter getRateLimiter(String host) {
+        if(host == null) {
+            return null;
+        }
+        return rateLimiters.computeIfAbsent(host, WebClient::configuredRateLimiter).orElse(null);
+    }
+
+    /**
+     * Hedge the requests of all hosts, the hedger's counters tell how many hedges were sent and won
+     *
+     * @param hedger hedger of the requests, null to not hedge them
+     */
+    public void setHedger(RequestHedger hedger) {
+        this.hedger = hedger;
+    }
+
+    /**
+     * @return hedger of the requests, null if they are not hedged
+     */
+    public RequestHedger getHedger() {
+        return hedger;
+    }
+
+    /**
+     * Send all requests to a ReplayServer instead of their hosts
+     *
+     * @param baseUrl base url of the replay server, e.g. http://127.0.0.1:8089, null to send requests to their hosts
+     */
+    public void setReplayServer(String baseUrl) {
+        replayServer = baseUrl == null ? null : baseUrl.replaceAll("/+$", "");
+    }
+
+    /**
+     * @return true if requests are sent to a ReplayServer, so they need no credentials
+     */
+    public boolean isReplaying() {
+        return replayServer != null;
+    }
+
+    /**
+     * @param url url of a request
+     * @return url the request is sent to: the url itself, or its url on the replay server if one is set
+     *         (https://host/path?query is sent to REPLAY_URL/https/host/path?query)
+     */
+    public String route(String url) {
+        String baseUrl = replayServer;
+        int schemeEnd = url.indexOf("://");
+        if(baseUrl == null || schemeEnd < 0) {
+            return url;
+        }
+        return baseUrl + "/" + url.substring(0, schemeEnd) + "/" + url.substring(schemeEnd + 3);
+    }
+
+    private static Optional<RateLimiter> configuredRateLimiter(String host) {
+        String config = System.getProperty(RATE_LIMIT_PROPERTY + host);
+        if(config == null) {
+            return Optional.empty();
+        }
+        String[] parts = config.split(":");
+        try {
+            int burst = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            return Optional.of(new RateLimiter(Double.parseDouble(parts[0].trim()), burst));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid " + RATE_LIMIT_PROPERTY + host + " " + config, e);
+        }
+    }
+
+    private static void discardBody(HttpResponse<?> response) {
+        if(response.body() instanceof InputStream) {
+            try {
+                ((InputStream) response.body()).close();
+            } catch (IOException e) {
+                /* the connection is dropped */
+            }
+        }
+    }
+
+    private Reader openBody(String key, HttpResponse<InputStream> response, LongConsumer bytesReceived) {
+        InputStream body = new CountingInputStream(response.body(), bytesReceived);
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if(encoding.trim().equalsIgnoreCase(GZIP)) {
+            try {
+                body = new GZIPInputStream(body);
+            } catch (IOException e) {
+                discardBody(response);
+                throw new WebClientException("Invalid gzip body " + key, key, response.statusCode(), e);
+            }
+        }
+        Charset charset = charsetOf(response);
+        /* decided before the body is read, so an uncacheable body is streamed without a copy */
+        long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(0);
+        if(isStorable(key, response) && contentLength <= cache.getMaxBodyBytes()) {
+            body = new CachingInputStream(body, cache.getMaxBodyBytes(),
+                copy -> store(key, response, copy.toString(charset)));
+        }
+        return new InputStreamReader(body, charset);
+    }
+
+    /**
+     * Stream counting the bytes read, passed to a callback once the end of the stream is reached or it is closed
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongConsumer onEnd;
+        private long count;
+        private boolean ended;
+
+        CountingInputStream(InputStream in, LongConsumer onEnd) {
+            super(in);
+            this.onEnd = onEnd;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b < 0) {
+                end();
+            } else {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if(n < 0) {
+                end();
+            } else {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            end();
+            super.close();
+        }
+
+        private void end() {
+            if(!ended) {
+                ended = true;
+                onEnd.accept(count);
+            }
+        }
+    }
+
+    /**
+     * Stream keeping a copy of the bytes read, passed to a callback once the end of the stream is reached. The copy
+     * is dropped (and the callback not called) once it is larger than its limit.
+     */
+    private static class CachingInputStream extends FilterInputStream {
+        private final long maxCopyBytes;
+        private final Consumer<ByteArrayOutputStream> onEnd;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        private boolean ended;
+
+        CachingInputStream(InputStream in, long maxCopyBytes, Consumer<ByteArrayOutputStream> onEnd) {
+            super(in);
+            this.maxCopyBytes = maxCopyBytes;
+            this.onEnd = onEnd;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b < 0) {
+                end();
+            } else if(keepCopy(1)) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if(n < 0) {
+                end();
+            } else if(keepCopy(n)) {
+                copy.write(b, off, n);
+            }
+            return n;
+        }
+
+        /**
+         * @return true if n more bytes are to be copied, false if the copy is (or now is) dropped
+         */
+        private boolean keepCopy(int n) {
+            if(copy != null && copy.size() + (long) n > maxCopyBytes) {
+                copy = null;
+            }
+            return copy != null;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            /* read the skipped bytes, so they are copied */
+            byte[] skipped = new byte[(int) Math.min(n, 8192)];
+            int read = read(skipped, 0, skipped.length);
+            return Math.max(read, 0);
+        }
+
+        private void end() {
+            if(!ended) {
+                ended = true;
+                if(copy != null) {
+                    onEnd.accept(copy);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if a response may be cached, a response that must not be stored removes the cached one
+     */
+    private boolean isStorable(String key, HttpResponse<?> response) {
+        if(cache == null) {
+            return false;
+        }
+        String cacheControl = response.headers().firstValue("Cache-Control").orElse("").toLowerCase(Locale.ROOT);
+        if(cacheControl.contains(NO_STORE)) {
+            cache.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    private void store(String key, HttpResponse<?> response, String body) {
+        if(!isStorable(key, response) || body.length() > cache.getMaxBodyBytes()) {
+            return;
+        }
+        cache.put(key, new WebResponseCache.Entry(body, response.headers().firstValue("ETag").orElse(null),
+            response.headers().firstValue("Last-Modified").orElse(null), expiryOf(response)));
+    }
+
+    /**
+     * @return expiry time of a response, from the max-age of its Cache-Control or the default TTL
+     */
+    private long expiryOf(HttpResponse<?> response) {
+        long ttlMillis = defaultTtlMillis;
+        String cacheControl = response.headers().firstValue("Cache-Control").orElse("").toLowerCase(Locale.ROOT);
+        int index = cacheControl.indexOf(MAX_AGE_PARAM);
+        if(index >= 0) {
+            String value = cacheControl.substring(index + MAX_AGE_PARAM.length()).split("[,;]")[0].trim();
+            try {
+                ttlMillis = Long.parseLong(value) * 1000;
+            } catch (NumberFormatException e) {
+                /* keep the default TTL */
+            }
+        }
+        return System.currentTimeMillis() + ttlMillis;
+    }
+
+    /**
+     * Wait for a future of this client, unwrapping its error
+     *
+     * @param future future returned by this client
+     * @param <T> result type
+     * @return result of the future
+     * @throws RuntimeException error the future completed with
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Request cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static RuntimeException failure(String key, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if(cause instanceof WebClientException) {
+            return (WebClientException) cause;
+        } else if(cause instanceof HttpTimeoutException) {
+            return new WebClientException("Request timed out " + key, key, WebClientException.NO_RESPONSE, cause);
+        }
+        return new WebClientException("Fail to connect to " + key, key, WebClientException.NO_RESPONSE, cause);
+    }
+
+    private static String decodeBody(String key, HttpResponse<byte[]> response) {
+        byte[] body = response.body();
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if(encoding.trim().equalsIgnoreCase(GZIP)) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                body = in.readAllBytes();
+            } catch (IOException e) {
+                throw new WebClientException("Invalid gzip body " + key, key, response.statusCode(), e);
+            }
+        }
+        return new String(body, charsetOf(response));
+    }
+
+    private static Charset charsetOf(HttpResponse<?> response) {
+        String contentType = response.headers().firstValue("Content-Type").orElse("").toLowerCase(Locale.ROOT);
+        int index = contentType.indexOf(CHARSET_PARAM);
+        if(index < 0) {
+            return StandardCharsets.UTF_8;
+        }
+        String name = contentType.substring(index + CHARSET_PARAM.length()).split(";")[0].trim().replace("\"", "");
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+/**
+ * Error of a request sent by WebClient, either a response with an unexpected status or a failure to get a response
+ * (connection, timeout, invalid body)
+ */
+public class WebClientException extends IllegalStateException {
+    /* status code used when there is no response */
+    public static final int NO_RESPONSE = -1;
+
+    private static final long serialVersionUID = 1L;
+
+    private final String url;
+    private final int statusCode;
+
+    /**
+     * Constructor
+     *
+     * @param message error message
+     * @param url url requested, with its credentials redacted (see UrlRedactor)
+     * @param statusCode status code of the response, NO_RESPONSE if there is none
+     * @param cause underlying error, may be null
+     */
+    public WebClientException(String message, String url, int statusCode, Throwable cause) {
+        super(message, cause);
+        this.url = url;
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return url requested, with its credentials redacted
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return status code of the response, NO_RESPONSE if there is none
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return true if a response was received (with an unexpected status)
+     */
+    public boolean hasResponse() {
+        return statusCode != NO_RESPONSE;
+    }
+}
@@ -0,0 +1,310 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Cache of response bodies keyed by url, kept in memory and optionally on disk. Urls should not contain credentials
+ * (see UrlRedactor), only the SHA-256 hash of a url is written to disk, as the name and in the header of its file.
+ * Both levels are bounded in bytes and evict the least recently used entries. An entry is fresh until its expiry
+ * time, after that WebClient revalidates it with a conditional request (If-None-Match / If-Modified-Since) if the
+ * server sent an ETag or Last-Modified.
+ *
+ * Failures to read or write the disk level are ignored, the entry is then only kept in memory.
+ */
+public class WebResponseCache {
+    private static final String FILE_SUFFIX = ".cache";
+    private static final int FILE_VERSION = 2;
+
+    private final Path dir;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    /* access ordered, the first entry is the least recently used */
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    /**
+     * A cached response
+     */
+    public static class Entry {
+        private final String body;
+        private final String etag;
+        private final String lastModified;
+        private final long expiresAt;
+
+        /**
+         * Constructor
+         *
+         * @param body decoded body
+         * @param etag ETag of the response, null if none
+         * @param lastModified Last-Modified of the response, null if none
+         * @param expiresAt time (epoch millis) until which the entry can be used without revalidation
+         */
+        public Entry(String body, String etag, String lastModified, long expiresAt) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @return decoded body
+         */
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * @return ETag of the response, null if none
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return Last-Modified of the response, null if none
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @param now current time in epoch millis
+         * @return true if the entry can be used without revalidation
+         */
+        public boolean isFresh(long now) {
+            return now < expiresAt;
+        }
+
+        /**
+         * @param newExpiresAt new expiry time in epoch millis
+         * @return the same response with a new expiry time
+         */
+        public Entry withExpiry(long newExpiresAt) {
+            return new Entry(body, etag, lastModified, newExpiresAt);
+        }
+
+        private long bytes() {
+            return 2L * body.length();
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param dir directory of the disk level, null to keep entries in memory only
+     * @param maxMemoryBytes maximum size of the bodies kept in memory
+     * @param maxDiskBytes maximum size of the files of the disk level
+     */
+    public WebResponseCache(Path dir, long maxMemoryBytes, long maxDiskBytes) {
+        this.dir = dir;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    /**
+     * @return size of the largest body (in bytes, once decoded) worth caching, a larger one would not stay in memory
+     */
+    public long getMaxBodyBytes() {
+        /* a body is kept in memory as chars, of two bytes each */
+        return maxMemoryBytes / 2;
+    }
+
+    /**
+     * @param url url requested
+     * @return the cached response, fresh or not, null if there is none
+     */
+    public Entry get(String url) {
+        synchronized (this) {
+            Entry entry = memory.get(url);
+            if(entry != null) {
+                return entry;
+            }
+        }
+        Entry entry = readFile(url);
+        if(entry != null) {
+            putInMemory(url, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Cache a response, replacing the previous one of the url
+     *
+     * @param url url requested
+     * @param entry response to cache
+     */
+    public void put(String url, Entry entry) {
+        putInMemory(url, entry);
+        writeFile(url, entry);
+    }
+
+    /**
+     * Remove the response of a url
+     *
+     * @param url url requested
+     */
+    public void remove(String url) {
+        synchronized (this) {
+            Entry entry = memory.remove(url);
+            if(entry != null) {
+                memoryBytes -= entry.bytes();
+            }
+        }
+        if(dir != null) {
+            try {
+                Files.deleteIfExists(fileOf(url));
+            } catch (IOException e) {
+                /* removed from memory at least */
+            }
+        }
+    }
+
+    private synchronized void putInMemory(String url, Entry entry) {
+        Entry old = memory.put(url, entry);
+        if(old != null) {
+            memoryBytes -= old.bytes();
+        }
+        memoryBytes += entry.bytes();
+        Iterator<Entry> it = memory.values().iterator();
+        while(memoryBytes > maxMemoryBytes && it.hasNext()) {
+            memoryBytes -= it.next().bytes();
+            it.remove();
+        }
+    }
+
+    private Path fileOf(String url) {
+        return dir.resolve(hashOf(url) + FILE_SUFFIX);
+    }
+
+    /**
+     * @return hex SHA-256 hash of a url
+     */
+    private static String hashOf(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for(byte b: hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Entry readFile(String url) {
+        if(dir == null) {
+            return null;
+        }
+        Path file = fileOf(url);
+        if(!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if(in.readInt() != FILE_VERSION || !in.readUTF().equals(hashOf(url))) {
+                return null;
+            }
+            String etag = readOptional(in);
+            String lastModified = readOptional(in);
+            long expiresAt = in.readLong();
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            /* the modification time of a file is its last use, for the LRU eviction of the disk level */
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(body, etag, lastModified, expiresAt);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String readOptional(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeOptional(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if(value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private void writeFile(String url, Entry entry) {
+        if(dir == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(FILE_VERSION);
+                out.writeUTF(hashOf(url));
+                writeOptional(out, entry.etag);
+                writeOptional(out, entry.lastModified);
+                out.writeLong(entry.expiresAt);
+                out.write(entry.body.getBytes(StandardCharsets.UTF_8));
+            }
+            Path file = fileOf(url);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tmp, bytes.toByteArray());
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            evictFiles();
+        } catch (IOException | IllegalArgumentException e) {
+            /* the entry stays in memory only (e.g. ETag longer than 64K) */
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the disk level fits in maxDiskBytes
+     */
+    private void evictFiles() throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(dir)) {
+            files = paths.filter(path -> path.getFileName().toString().endsWith(FILE_SUFFIX))
+                .collect(Collectors.toList());
+        }
+        long total = 0;
+        Map<Path, long[]> stats = new LinkedHashMap<>();
+        for(Path file: files) {
+            try {
+                long[] stat = {Files.size(file), Files.getLastModifiedTime(file).toMillis()};
+                stats.put(file, stat);
+                total += stat[0];
+            } catch (IOException e) {
+                /* deleted concurrently */
+            }
+        }
+        if(total <= maxDiskBytes) {
+            return;
+        }
+        List<Path> byAge = new ArrayList<>(stats.keySet());
+        byAge.sort(Comparator.comparingLong(file -> stats.get(file)[1]));
+        for(Path file: byAge) {
+            if(total <= maxDiskBytes) {
+                break;
+            }
+            Files.deleteIfExists(file);
+            total -= stats.get(file)[0];
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import org.junit.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads json documents token by token, including escapes, skipped values, tokens split across reads and
+ * malformed documents.
+ */
+public class JsonStreamReaderTest {
+    private static final String DOCUMENT = "{\"DailyForecasts\": [\n"
+        + "  {\"EpochDate\": 1586440800, \"Temperature\": {\"Minimum\": {\"Value\": -1.5e1, \"Unit\": \"F\"}},"
+        + " \"Day\": {\"HasPrecipitation\": true, \"Icon\": null}, \"Link\": \"a\\\"b\\\\c\\u00e9\\n\"},\n"
+        + "  {\"EpochDate\": \"1586527200\", \"Extra\": [1, [2, {\"x\": [3]}], false], \"Temperature\": {}}\n"
+        + "]}";
+
+    @Test
+    public void readsTokensInDocumentOrder() throws IOException {
+        assertDocument(new JsonStreamReader(new StringReader(DOCUMENT)));
+    }
+
+    @Test
+    public void readsTokensSplitAcrossReads() throws IOException {
+        assertDocument(new JsonStreamReader(new OneCharReader(new StringReader(DOCUMENT))));
+    }
+
+    @Test
+    public void readsStringLongerThanBuffer() throws IOException {
+        String value = "0123456789".repeat(2000);
+        try (JsonStreamReader reader = new JsonStreamReader(new StringReader("[\"" + value + "\", 42]"))) {
+            reader.beginArray();
+            assertEquals(value, reader.nextString());
+            assertEquals(42, reader.nextInt());
+            reader.endArray();
+            assertEquals(JsonStreamReader.Token.END_DOCUMENT, reader.peek());
+        }
+    }
+
+    @Test
+    public void rejectsMalformedDocuments() throws IOException {
+        String[] documents = {"[1 2]", "{\"a\" 1}", "{1: 2}", "[\"abc", "[1] 2", "[tru]", "[1,", "{\"a\": nul}"};
+        for(String document: documents) {
+            try (JsonStreamReader reader = new JsonStreamReader(new StringReader(document))) {
+                reader.skipValue();
+                reader.peek();
+                fail("Accepted " + document);
+            } catch (JsonStreamReader.MalformedJsonException e) {
+                /* expected */
+            } catch (IOException e) {
+                fail("Wrong error for " + document + ": " + e);
+            }
+        }
+    }
+
+    @Test
+    public void rejectsUnexpectedToken() throws IOException {
+        try (JsonStreamReader reader = new JsonStreamReader(new StringReader("{\"a\": 1}"))) {
+            reader.beginArray();
+            fail("Object read as an array");
+        } catch (IOException e) {
+            /* expected */
+        }
+        try (JsonStreamReader reader = new JsonStreamReader(new StringReader("[\"x\"]"))) {
+            reader.beginArray();
+            reader.nextDouble();
+            fail("Non numeric string read as a number");
+        } catch (IOException e) {
+            /* expected */
+        }
+    }
+
+    /**
+     * Read DOCUMENT, skipping the values not needed
+     */
+    private static void assertDocument(JsonStreamReader reader) throws IOException {
+        try (reader) {
+            reader.beginObject();
+            assertEquals("DailyForecasts", reader.nextName());
+            reader.beginArray();
+
+            reader.beginObject();
+            assertEquals("EpochDate", reader.nextName());
+            assertEquals(JsonStreamReader.Token.NUMBER, reader.peek());
+            assertEquals(1586440800, reader.nextInt());
+            assertEquals("Temperature", reader.nextName());
+            reader.beginObject();
+            assertEquals("Minimum", reader.nextName());
+            reader.beginObject();
+            assertEquals("Value", reader.nextName());
+            assertEquals(-15, reader.nextDouble(), 0);
+            assertEquals("Unit", reader.nextName());
+            assertEquals("F", reader.nextString());
+            assertFalse(reader.hasNext());
+            reader.endObject();
+            reader.endObject();
+            assertEquals("Day", reader.nextName());
+            reader.beginObject();
+            assertEquals("HasPrecipitation", reader.nextName());
+            assertTrue(reader.nextBoolean());
+            assertEquals("Icon", reader.nextName());
+            assertEquals(JsonStreamReader.Token.NULL, reader.peek());
+            reader.nextNull();
+            reader.endObject();
+            assertEquals("Link", reader.nextName());
+            assertEquals("a\"b\\c\u00e9\n", reader.nextString());
+            reader.endObject();
+
+            assertTrue(reader.hasNext());
+            reader.beginObject();
+            assertEquals("EpochDate", reader.nextName());
+            assertEquals(1586527200, reader.nextInt());
+            assertEquals("Extra", reader.nextName());
+            reader.skipValue();
+            assertEquals("Temperature", reader.nextName());
+            reader.skipValue();
+            reader.endObject();
+
+            assertFalse(reader.hasNext());
+            reader.endArray();
+            reader.endObject();
+            assertEquals(JsonStreamReader.Token.END_DOCUMENT, reader.peek());
+        }
+    }
+
+    /**
+     * Reader returning at most one character per read, as a slow network stream may
+     */
+    private static class OneCharReader extends FilterReader {
+        OneCharReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, 1));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that a rate limiter lets a burst through and then spaces out reservations at its rate.
+ */
+public class RateLimiterTest {
+    @Test
+    public void burstIsNotDelayed() {
+        RateLimiter limiter = new RateLimiter(1, 3);
+        for(int i=0; i<3; i++) {
+            assertEquals(0, limiter.reserve());
+        }
+    }
+
+    @Test
+    public void reservationsAfterBurstAreSpacedAtRate() {
+        RateLimiter limiter = new RateLimiter(1, 2);
+        limiter.reserve();
+        limiter.reserve();
+        assertDelay(1000, limiter.reserve());
+        assertDelay(2000, limiter.reserve());
+        assertDelay(3000, limiter.reserve());
+    }
+
+    @Test
+    public void acquireWaitsForToken() {
+        RateLimiter limiter = new RateLimiter(20, 1);
+        limiter.acquire();
+        long start = System.nanoTime();
+        limiter.acquire();
+        long waitedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue("waited " + waitedMillis + "ms", waitedMillis >= 40);
+    }
+
+    @Test
+    public void interruptedAcquireIsCancelled() {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        limiter.reserve();
+        Thread.currentThread().interrupt();
+        try {
+            limiter.acquire();
+            fail("Interrupted acquire returned");
+        } catch (CancellationException e) {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test
+    public void invalidRateIsRejected() {
+        for(double rate: new double[] {0, -1, Double.NaN}) {
+            try {
+                new RateLimiter(rate, 1);
+                fail("Rate " + rate + " accepted");
+            } catch (IllegalArgumentException e) {
+                /* expected */
+            }
+        }
+    }
+
+    /**
+     * Check a delay, allowing for the time elapsed since the bucket was created
+     */
+    private static void assertDelay(long expectedMillis, long delayMillis) {
+        assertTrue("delay " + delayMillis + "ms, expected " + expectedMillis + "ms",
+            delayMillis <= expectedMillis && delayMillis > expectedMillis - 100);
+    }
+}
@@ -0,0 +1,156 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Races a request against its hedge with stub requests whose answers are completed by the test, checking which
+ * answer wins and that the losing one is released or cancelled.
+ */
+public class RequestHedgerTest {
+    private static final String HOST = "example.com";
+    private static final long HEDGE_DELAY_MILLIS = 20;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private RequestHedger hedger;
+    private BlockingQueue<CompletableFuture<String>> sent;
+    private List<String> discarded;
+
+    @Before
+    public void setUp() throws Exception {
+        hedger = new RequestHedger(100, Duration.ofMillis(HEDGE_DELAY_MILLIS), 1);
+        sent = new LinkedBlockingQueue<>();
+        discarded = new CopyOnWriteArrayList<>();
+        /* one fast answer, so the next requests of the host are hedged after the minimum delay */
+        CompletableFuture<String> result = send();
+        nextSent().complete("seed");
+        assertEquals("seed", result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(HEDGE_DELAY_MILLIS, hedger.hedgeDelayMillis(HOST));
+    }
+
+    @Test
+    public void noHedgeBeforeLatenciesAreKnown() {
+        assertEquals(-1, hedger.hedgeDelayMillis("unknown.example.com"));
+    }
+
+    @Test
+    public void primaryWins() throws Exception {
+        CompletableFuture<String> result = send();
+        CompletableFuture<String> primary = nextSent();
+        CompletableFuture<String> hedge = nextSent();
+        primary.complete("primary");
+        assertEquals("primary", result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        /* the hedge is cancelled, or its answer released if it comes before the cancellation */
+        if(hedge.complete("hedge")) {
+            assertEquals(List.of("hedge"), discarded);
+        } else {
+            assertTrue(hedge.isCancelled());
+        }
+        assertEquals("primary", result.get());
+        assertEquals(1, hedger.getHedgesSent());
+        assertEquals(0, hedger.getHedgesWon());
+    }
+
+    @Test
+    public void hedgeWins() throws Exception {
+        CompletableFuture<String> result = send();
+        CompletableFuture<String> primary = nextSent();
+        CompletableFuture<String> hedge = nextSent();
+        hedge.complete("hedge");
+        assertEquals("hedge", result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(primary.isCancelled());
+        assertEquals(1, hedger.getHedgesWon());
+    }
+
+    @Test
+    public void bothFail() throws Exception {
+        CompletableFuture<String> result = send();
+        CompletableFuture<String> primary = nextSent();
+        CompletableFuture<String> hedge = nextSent();
+        primary.completeExceptionally(new IllegalStateException("primary"));
+        assertFalse(result.isDone());
+        hedge.completeExceptionally(new IllegalStateException("hedge"));
+        try {
+            result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("Both attempts failed");
+        } catch (ExecutionException e) {
+            assertEquals("hedge", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void retryableAnswerDoesNotWin() throws Exception {
+        CompletableFuture<String> result = send();
+        CompletableFuture<String> primary = nextSent();
+        CompletableFuture<String> hedge = nextSent();
+        primary.complete("retry primary");
+        assertFalse(result.isDone());
+        assertEquals(List.of("retry primary"), discarded);
+        hedge.complete("hedge");
+        assertEquals("hedge", result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, hedger.getHedgesWon());
+    }
+
+    @Test
+    public void lastRetryableAnswerIsReturned() throws Exception {
+        CompletableFuture<String> result = send();
+        CompletableFuture<String> primary = nextSent();
+        CompletableFuture<String> hedge = nextSent();
+        hedge.complete("retry hedge");
+        primary.complete("retry primary");
+        assertEquals("retry primary", result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(List.of("retry hedge"), discarded);
+    }
+
+    @Test
+    public void answerBeforeDelayIsNotHedged() throws Exception {
+        CompletableFuture<String> result = send();
+        nextSent().complete("primary");
+        assertEquals("primary", result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNull(sent.poll(HEDGE_DELAY_MILLIS * 5, TimeUnit.MILLISECONDS));
+        assertEquals(0, hedger.getHedgesSent());
+    }
+
+    private CompletableFuture<String> send() {
+        return hedger.send(HOST, onSend -> {
+            onSend.run();
+            CompletableFuture<String> answer = new CompletableFuture<>();
+            sent.add(answer);
+            return answer;
+        }, answer -> !answer.startsWith("retry"), discarded::add);
+    }
+
+    /**
+     * @return answer of the next request sent, once the hedger waits for it (a hedge is sent from another thread)
+     */
+    private CompletableFuture<String> nextSent() throws InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        CompletableFuture<String> answer = sent.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if(answer == null) {
+            throw new TimeoutException("No request sent");
+        }
+        while(answer.getNumberOfDependents() == 0) {
+            if(System.nanoTime() > deadline) {
+                throw new TimeoutException("Answer not awaited");
+            }
+            Thread.sleep(1);
+        }
+        return answer;
+    }
+}
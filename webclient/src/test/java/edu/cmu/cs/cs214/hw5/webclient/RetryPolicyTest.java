@@ -0,0 +1,86 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the retried statuses and the bounds of the jittered backoff, including Retry-After and large attempts.
+ */
+public class RetryPolicyTest {
+    private static final int SAMPLES = 1000;
+
+    @Test
+    public void defaultStatusesAreRetried() {
+        RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(1));
+        for(int status: new int[] {429, 500, 502, 503, 504}) {
+            assertTrue("status " + status, policy.isRetryable(status));
+        }
+        for(int status: new int[] {200, 304, 400, 404, 501}) {
+            assertFalse("status " + status, policy.isRetryable(status));
+        }
+    }
+
+    @Test
+    public void customStatusesAreRetried() {
+        RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(1), Set.of(408));
+        assertTrue(policy.isRetryable(408));
+        assertFalse(policy.isRetryable(503));
+    }
+
+    @Test
+    public void backoffIsJitteredUpToExponentialCeiling() {
+        RetryPolicy policy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofMillis(350));
+        long[] ceilings = {100, 200, 350, 350};
+        for(int attempt=1; attempt<=ceilings.length; attempt++) {
+            long max = 0;
+            for(int i=0; i<SAMPLES; i++) {
+                long backoff = policy.backoffMillis(attempt, -1);
+                assertTrue("attempt " + attempt + " backoff " + backoff,
+                    backoff >= 0 && backoff <= ceilings[attempt - 1]);
+                max = Math.max(max, backoff);
+            }
+            /* full jitter: the waits spread over the whole range */
+            assertTrue("attempt " + attempt + " max " + max, max > ceilings[attempt - 1] / 2);
+        }
+    }
+
+    @Test
+    public void backoffOfLargeAttemptDoesNotOverflow() {
+        RetryPolicy policy = new RetryPolicy(100, Duration.ofMillis(100), Duration.ofSeconds(5));
+        for(int attempt: new int[] {63, 64, 100, Integer.MAX_VALUE}) {
+            long backoff = policy.backoffMillis(attempt, -1);
+            assertTrue("attempt " + attempt + " backoff " + backoff, backoff >= 0 && backoff <= 5000);
+        }
+    }
+
+    @Test
+    public void retryAfterIsHonoredUpToMaxDelay() {
+        RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(1));
+        assertEquals(0, policy.backoffMillis(1, 0));
+        assertEquals(700, policy.backoffMillis(1, 700));
+        assertEquals(1000, policy.backoffMillis(1, 60000));
+    }
+
+    @Test
+    public void noneMakesOneAttempt() {
+        assertEquals(1, RetryPolicy.none().getMaxAttempts());
+        assertEquals(0, RetryPolicy.none().backoffMillis(1, -1));
+    }
+
+    @Test
+    public void invalidAttemptsAreRejected() {
+        try {
+            new RetryPolicy(0, Duration.ofMillis(100), Duration.ofSeconds(1));
+            fail("0 attempts accepted");
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package edu.cmu.cs.cs214.hw5.webclient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Caches responses in memory and on disk, checking that both levels are read back, evict their least recently used
+ * entries and ignore files they can not read.
+ */
+public class WebResponseCacheTest {
+    private static final String URL_A = "https://example.com/a?q=1";
+    private static final String URL_B = "https://example.com/b";
+    private static final String URL_C = "https://example.com/c";
+    private static final long NOW = 1586400000000L;
+    private static final long LARGE = 1 << 20;
+    /* non ASCII, written to disk as UTF-8 */
+    private static final String BODY = "temp\u00e9rature \u2603";
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("web-response-cache");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void memoryLevelReturnsPutEntry() {
+        WebResponseCache cache = new WebResponseCache(null, LARGE, 0);
+        assertNull(cache.get(URL_A));
+        cache.put(URL_A, new WebResponseCache.Entry("body", "\"v1\"", null, NOW));
+        WebResponseCache.Entry entry = cache.get(URL_A);
+        assertNotNull(entry);
+        assertEquals("body", entry.getBody());
+        assertEquals("\"v1\"", entry.getEtag());
+        assertNull(entry.getLastModified());
+        cache.remove(URL_A);
+        assertNull(cache.get(URL_A));
+    }
+
+    @Test
+    public void entryIsFreshUntilExpiry() {
+        WebResponseCache.Entry entry = new WebResponseCache.Entry("body", null, null, NOW);
+        assertTrue(entry.isFresh(NOW - 1));
+        assertFalse(entry.isFresh(NOW));
+        WebResponseCache.Entry renewed = entry.withExpiry(NOW + 1000);
+        assertTrue(renewed.isFresh(NOW));
+        assertEquals("body", renewed.getBody());
+    }
+
+    @Test
+    public void memoryLevelEvictsLeastRecentlyUsed() {
+        /* room for two bodies of 10 chars */
+        WebResponseCache cache = new WebResponseCache(null, 40, 0);
+        assertEquals(20, cache.getMaxBodyBytes());
+        cache.put(URL_A, entry("aaaaaaaaaa"));
+        cache.put(URL_B, entry("bbbbbbbbbb"));
+        cache.get(URL_A);
+        cache.put(URL_C, entry("cccccccccc"));
+        assertNotNull(cache.get(URL_A));
+        assertNull(cache.get(URL_B));
+        assertNotNull(cache.get(URL_C));
+    }
+
+    @Test
+    public void diskLevelOutlivesCache() {
+        new WebResponseCache(dir, LARGE, LARGE).put(URL_A,
+            new WebResponseCache.Entry(BODY, "\"v1\"", "Thu, 09 Apr 2020 00:00:00 GMT", NOW));
+        WebResponseCache.Entry entry = new WebResponseCache(dir, LARGE, LARGE).get(URL_A);
+        assertNotNull(entry);
+        assertEquals(BODY, entry.getBody());
+        assertEquals("\"v1\"", entry.getEtag());
+        assertEquals("Thu, 09 Apr 2020 00:00:00 GMT", entry.getLastModified());
+        assertTrue(entry.isFresh(NOW - 1));
+        assertFalse(entry.isFresh(NOW));
+    }
+
+    @Test
+    public void diskLevelStoresNoUrl() throws IOException {
+        new WebResponseCache(dir, LARGE, LARGE).put(URL_A, entry("body"));
+        for(Path file: files()) {
+            assertFalse(file.getFileName().toString().contains("example"));
+            assertFalse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).contains("example.com"));
+        }
+    }
+
+    @Test
+    public void diskLevelEvictsLeastRecentlyUsed() throws IOException {
+        /* room for one file: a header of 80 bytes and a body of 100 */
+        WebResponseCache cache = new WebResponseCache(dir, LARGE, 250);
+        cache.put(URL_A, entry("a".repeat(100)));
+        for(Path file: files()) {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(NOW));
+        }
+        cache.put(URL_B, entry("b".repeat(100)));
+        assertEquals(1, files().size());
+        WebResponseCache reopened = new WebResponseCache(dir, LARGE, 250);
+        assertNull(reopened.get(URL_A));
+        assertNotNull(reopened.get(URL_B));
+    }
+
+    @Test
+    public void removeDeletesFile() throws IOException {
+        WebResponseCache cache = new WebResponseCache(dir, LARGE, LARGE);
+        cache.put(URL_A, entry("body"));
+        cache.remove(URL_A);
+        assertTrue(files().isEmpty());
+        assertNull(new WebResponseCache(dir, LARGE, LARGE).get(URL_A));
+    }
+
+    @Test
+    public void unreadableFileIsIgnored() throws IOException {
+        new WebResponseCache(dir, LARGE, LARGE).put(URL_A, entry("body"));
+        for(Path file: files()) {
+            Files.write(file, new byte[] {0, 0, 0, 2, 0});
+        }
+        assertNull(new WebResponseCache(dir, LARGE, LARGE).get(URL_A));
+    }
+
+    private static WebResponseCache.Entry entry(String body) {
+        return new WebResponseCache.Entry(body, null, null, NOW);
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> paths = Files.list(dir)) {
+            return paths.collect(Collectors.toList());
+        }
+    }
+}